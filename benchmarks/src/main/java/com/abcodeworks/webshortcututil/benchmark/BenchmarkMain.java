@@ -0,0 +1,63 @@
+/**
+ * Copyright 2014 by Andre Beckus
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+
+ *   http://www.apache.org/licenses/LICENSE-2.0
+
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.abcodeworks.webshortcututil.benchmark;
+
+import java.io.IOException;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs the benchmarks with the GC profiler enabled, so that the allocation rate
+ * (gc.alloc.rate and gc.alloc.rate.norm, i.e. bytes per operation) is reported alongside the throughput.
+ * 
+ * <p>
+ * Accepts the usual JMH command line options, e.g. a regular expression to select benchmarks:
+ * <pre>
+ * java -jar target/benchmarks.jar ReaderBenchmark
+ * </pre>
+ * </p>
+ */
+public class BenchmarkMain {
+    public static void main(String[] args)
+            throws CommandLineOptionException,
+                   RunnerException,
+                   IOException {
+        CommandLineOptions commandLine = new CommandLineOptions(args);
+        if(commandLine.shouldHelp() || commandLine.shouldList() || commandLine.shouldListProfilers()) {
+            // Let the standard launcher handle the informational options.
+            org.openjdk.jmh.Main.main(args);
+            return;
+        }
+        
+        Options options = new OptionsBuilder()
+                .parent(commandLine)
+                .addProfiler(GCProfiler.class)
+                .build();
+        new Runner(options).run();
+    }
+}
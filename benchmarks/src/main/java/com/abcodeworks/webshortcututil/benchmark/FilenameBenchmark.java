@@ -0,0 +1,65 @@
+/**
+ * Copyright 2014 by Andre Beckus
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+
+ *   http://www.apache.org/licenses/LICENSE-2.0
+
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.abcodeworks.webshortcututil.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.abcodeworks.webshortcututil.write.ShortcutWriter;
+import com.abcodeworks.webshortcututil.write.UrlShortcutWriter;
+
+/**
+ * Measures the file name generation in {@link ShortcutWriter}, which removes characters
+ * that are not allowed in file names and truncates long names.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FilenameBenchmark {
+    @Param
+    public ShortcutContent content;
+    
+    final ShortcutWriter writer = new UrlShortcutWriter();
+    
+    @Benchmark
+    public String createBaseFilename() {
+        return writer.createBaseFilename(content.name);
+    }
+    
+    @Benchmark
+    public String createFullFilename() {
+        return writer.createFullFilename(content.name);
+    }
+}
@@ -0,0 +1,114 @@
+/**
+ * Copyright 2014 by Andre Beckus
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+
+ *   http://www.apache.org/licenses/LICENSE-2.0
+
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.abcodeworks.webshortcututil.benchmark;
+
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.abcodeworks.webshortcututil.read.ReadResult;
+import com.abcodeworks.webshortcututil.read.ShortcutReadLimits;
+import com.abcodeworks.webshortcututil.read.ShortcutReader;
+import com.abcodeworks.webshortcututil.read.UrlShortcutReader;
+
+/**
+ * Measures how long a single .url line crafted to cause backtracking takes to parse, at several lengths.
+ * The time per character should stay the same as the length grows.
+ * 
+ * <p>
+ * The key/value pattern which the readers used to apply to every line is included for comparison
+ * (it is quadratic on a long run of spaces, so keep the lengths modest when running it).
+ * </p>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PathologicalInputBenchmark {
+    public enum Shape {
+        SPACES_IN_VALUE("URL=a", " ", "x"),
+        EQUALS("URL=", "=", ""),
+        OPEN_BRACKETS("URL[", "[", "]=x");
+        
+        final String prefix, unit, suffix;
+        
+        private Shape(String prefix, String unit, String suffix) {
+            this.prefix = prefix;
+            this.unit = unit;
+            this.suffix = suffix;
+        }
+        
+        String line(int length) {
+            StringBuilder line = new StringBuilder(prefix);
+            while(line.length() < length - suffix.length()) {
+                line.append(unit);
+            }
+            return line.append(suffix).toString();
+        }
+    }
+    
+    static final Pattern OLD_KEY_VALUE = Pattern.compile("^\\s*([A-Za-z0-9-]*)(\\[([^\\[\\]]*)\\])?\\s*=\\s*([^\\n\\r]*?)\\s*$"),
+                         KEY_VALUE = Pattern.compile("^\\s*+([A-Za-z0-9-]*+)(\\[([^\\[\\]]*+)\\])?+\\s*+=\\s*+((?:\\S++|[^\\S\\n\\r]++(?=\\S))*+)\\s*+$");
+    
+    @Param
+    public Shape shape;
+    
+    @Param({ "1024", "4096", "16384" })
+    public int length;
+    
+    final ShortcutReader reader = new UrlShortcutReader(ShortcutReadLimits.UNLIMITED);
+    String line;
+    byte[] contents;
+    
+    @Setup
+    public void setUp() {
+        line = shape.line(length);
+        contents = ("[InternetShortcut]\r\n" + line + "\r\n").getBytes();
+    }
+    
+    @Benchmark
+    public ReadResult readResult() {
+        return reader.readResult(contents, 0, contents.length);
+    }
+    
+    @Benchmark
+    public boolean keyValuePattern() {
+        return KEY_VALUE.matcher(line).matches();
+    }
+    
+    @Benchmark
+    public boolean oldKeyValuePattern() {
+        return OLD_KEY_VALUE.matcher(line).matches();
+    }
+}
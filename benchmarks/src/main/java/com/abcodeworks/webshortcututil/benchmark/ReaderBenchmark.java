@@ -0,0 +1,144 @@
+/**
+ * Copyright 2014 by Andre Beckus
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+
+ *   http://www.apache.org/licenses/LICENSE-2.0
+
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.abcodeworks.webshortcututil.benchmark;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import com.abcodeworks.webshortcututil.read.DesktopShortcutReader;
+import com.abcodeworks.webshortcututil.read.ShortcutReadException;
+import com.abcodeworks.webshortcututil.read.ShortcutReadLimits;
+import com.abcodeworks.webshortcututil.read.ShortcutReader;
+import com.abcodeworks.webshortcututil.read.UrlShortcutReader;
+import com.abcodeworks.webshortcututil.read.WeblocShortcutReader;
+import com.abcodeworks.webshortcututil.read.WebsiteShortcutReader;
+
+/**
+ * Measures each reader against the real samples of its type.
+ * 
+ * <p>
+ * One operation reads every sample of the type once (e.g. all of the .url files),
+ * from an InputStream or from a ByteBuffer depending on the "source" parameter.
+ * </p>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ReaderBenchmark {
+    public enum Source {
+        STREAM,
+        BUFFER
+    }
+    
+    @Param
+    public Source source;
+    
+    final ShortcutReader urlReader = new UrlShortcutReader(),
+                         websiteReader = new WebsiteShortcutReader(),
+                         desktopReader = new DesktopShortcutReader(),
+                         weblocReader = new WeblocShortcutReader(),
+                         urlFirstUrlReader = new UrlShortcutReader(ShortcutReadLimits.DEFAULT, UrlShortcutReader.Mode.FIRST_AUTHORITATIVE_URL),
+                         websiteFirstUrlReader = new WebsiteShortcutReader(ShortcutReadLimits.DEFAULT, UrlShortcutReader.Mode.FIRST_AUTHORITATIVE_URL);
+    
+    byte[][] url, website, desktop, weblocXml, weblocBinary;
+    
+    @Setup
+    public void setUp()
+            throws IOException {
+        url = Samples.load("url", "url");
+        website = Samples.load("website", "website");
+        desktop = Samples.load("desktop", "desktop");
+        weblocXml = Samples.load("webloc/xml", "webloc");
+        weblocBinary = Samples.load("webloc/binary", "webloc");
+    }
+    
+    void read(ShortcutReader reader, byte[][] samples, Blackhole blackhole)
+            throws ShortcutReadException {
+        for(byte[] sample : samples) {
+            if(source == Source.BUFFER) {
+                blackhole.consume(reader.readUrlString(ByteBuffer.wrap(sample)));
+            } else {
+                blackhole.consume(reader.readUrlString(new ByteArrayInputStream(sample)));
+            }
+        }
+    }
+    
+    @Benchmark
+    public void url(Blackhole blackhole)
+            throws ShortcutReadException {
+        read(urlReader, url, blackhole);
+    }
+    
+    @Benchmark
+    public void website(Blackhole blackhole)
+            throws ShortcutReadException {
+        read(websiteReader, website, blackhole);
+    }
+    
+    @Benchmark
+    public void urlFirstUrl(Blackhole blackhole)
+            throws ShortcutReadException {
+        read(urlFirstUrlReader, url, blackhole);
+    }
+    
+    @Benchmark
+    public void websiteFirstUrl(Blackhole blackhole)
+            throws ShortcutReadException {
+        read(websiteFirstUrlReader, website, blackhole);
+    }
+    
+    @Benchmark
+    public void desktop(Blackhole blackhole)
+            throws ShortcutReadException {
+        read(desktopReader, desktop, blackhole);
+    }
+    
+    @Benchmark
+    public void weblocXml(Blackhole blackhole)
+            throws ShortcutReadException {
+        read(weblocReader, weblocXml, blackhole);
+    }
+    
+    @Benchmark
+    public void weblocBinary(Blackhole blackhole)
+            throws ShortcutReadException {
+        read(weblocReader, weblocBinary, blackhole);
+    }
+}
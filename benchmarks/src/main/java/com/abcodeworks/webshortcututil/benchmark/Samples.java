@@ -0,0 +1,111 @@
+/**
+ * Copyright 2014 by Andre Beckus
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+
+ *   http://www.apache.org/licenses/LICENSE-2.0
+
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.abcodeworks.webshortcututil.benchmark;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Loads the real shortcut samples (src/test/resources/samples/real in the library project) into memory,
+ * so that the benchmarks measure parsing rather than disk access.
+ * 
+ * <p>
+ * The samples folder is found relative to the working directory (either the library project
+ * or this benchmarks project).  It can also be set with the system property
+ * {@value #SAMPLES_PROPERTY}.
+ * </p>
+ */
+final class Samples {
+    static final String SAMPLES_PROPERTY = "webshortcututil.samples";
+    
+    private static final String[] SEARCH_PATHS = {
+        "src/test/resources/samples/real",
+        "../src/test/resources/samples/real"
+    };
+    
+    private Samples() {
+    }
+    
+    static Path getSamplesDir()
+            throws FileNotFoundException {
+        String property = System.getProperty(SAMPLES_PROPERTY);
+        if(property != null) {
+            return Paths.get(property);
+        }
+        for(String searchPath : SEARCH_PATHS) {
+            Path path = Paths.get(searchPath);
+            if(Files.isDirectory(path)) {
+                return path;
+            }
+        }
+        throw new FileNotFoundException("Samples folder not found; run from the project folder or set -D" + SAMPLES_PROPERTY);
+    }
+    
+    /**
+     * Loads the contents of every file with the specified extension (case-insensitive) under a samples sub-folder.
+     * Apple "._" resource fork files are skipped.  Files are returned in path order, so runs are repeatable.
+     */
+    static byte[][] load(String folder, final String extension)
+            throws IOException {
+        final List<Path> files = new ArrayList<Path>();
+        final String suffix = "." + extension.toLowerCase(Locale.ROOT);
+        Files.walkFileTree(getSamplesDir().resolve(folder), new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+                String name = file.getFileName().toString();
+                if(!name.startsWith("._") && name.toLowerCase(Locale.ROOT).endsWith(suffix)) {
+                    files.add(file);
+                }
+                return FileVisitResult.CONTINUE;
+            }
+        });
+        if(files.isEmpty()) {
+            throw new FileNotFoundException("No ." + extension + " samples in " + folder);
+        }
+        Collections.sort(files);
+        
+        byte[][] contents = new byte[files.size()][];
+        for(int i = 0; i < contents.length; i++) {
+            contents[i] = Files.readAllBytes(files.get(i));
+        }
+        return contents;
+    }
+    
+    /* Joins several sets of samples. */
+    static byte[][] concat(byte[][]... sets) {
+        List<byte[]> all = new ArrayList<byte[]>();
+        for(byte[][] set : sets) {
+            Collections.addAll(all, set);
+        }
+        return all.toArray(new byte[all.size()][]);
+    }
+}
@@ -0,0 +1,51 @@
+/**
+ * Copyright 2014 by Andre Beckus
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+
+ *   http://www.apache.org/licenses/LICENSE-2.0
+
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.abcodeworks.webshortcututil.benchmark;
+
+/**
+ * Shortcut names and URLs used by the writer benchmarks.
+ */
+public enum ShortcutContent {
+    /** A typical shortcut with only ASCII characters. */
+    ASCII("Google", "https://www.google.com/"),
+    /** Unicode in the name and in the URL (an internationalized domain name that was not converted to ASCII). */
+    UNICODE("百度一下，你就知道 - 中国政府.政务", "http://www.中国政府.政务.cn/导航?q=中国雅虎首页"),
+    /** A long name (longer than the default maximum file name length, with some invalid file name characters) and a long URL. */
+    LONG_NAME(repeat("Microsoft Sverige: Enheter och tjänster | ", 8),
+              "http://www.google.se/#sclient=tablet-gws&hl=sv&tbo=d&q=sverige&oq=sveri&gs_l=tablet-gws.1.1.0l3.13058.15637.28.17682.5.2.2.1.1.0.143.243.0j2.2.0...0.0...1ac.1.xX8iu4i9hYM&pbx=1&fp=1&bpcl=40096503&biw=1280&bih=800&bav=on.2,or.r_gc.r_pw.r_qf.&cad=b");
+    
+    final String name,
+                 url;
+    
+    private ShortcutContent(String name, String url) {
+        this.name = name;
+        this.url = url;
+    }
+    
+    private static String repeat(String str, int count) {
+        StringBuilder builder = new StringBuilder();
+        for(int i = 0; i < count; i++) {
+            builder.append(str);
+        }
+        return builder.toString();
+    }
+}
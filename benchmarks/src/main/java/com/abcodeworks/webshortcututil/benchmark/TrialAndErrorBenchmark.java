@@ -0,0 +1,108 @@
+/**
+ * Copyright 2014 by Andre Beckus
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+
+ *   http://www.apache.org/licenses/LICENSE-2.0
+
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.abcodeworks.webshortcututil.benchmark;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import com.abcodeworks.webshortcututil.read.ShortcutReadException;
+import com.abcodeworks.webshortcututil.read.ShortcutReadUtil;
+
+/**
+ * Measures {@link ShortcutReadUtil#readUrlStringTrialAndError(java.io.InputStream)}, which has to
+ * work out the type of each shortcut before reading it.
+ * 
+ * <p>
+ * One operation reads every real sample of the given type once.  "all" mixes every type,
+ * in path order.
+ * </p>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TrialAndErrorBenchmark {
+    byte[][] url, website, desktop, webloc, all;
+    
+    @Setup
+    public void setUp()
+            throws IOException {
+        url = Samples.load("url", "url");
+        website = Samples.load("website", "website");
+        desktop = Samples.load("desktop", "desktop");
+        webloc = Samples.concat(Samples.load("webloc/xml", "webloc"),
+                                Samples.load("webloc/binary", "webloc"));
+        all = Samples.concat(url, website, desktop, webloc);
+    }
+    
+    void read(byte[][] samples, Blackhole blackhole)
+            throws ShortcutReadException {
+        for(byte[] sample : samples) {
+            blackhole.consume(ShortcutReadUtil.readUrlStringTrialAndError(new ByteArrayInputStream(sample)));
+        }
+    }
+    
+    @Benchmark
+    public void url(Blackhole blackhole)
+            throws ShortcutReadException {
+        read(url, blackhole);
+    }
+    
+    @Benchmark
+    public void website(Blackhole blackhole)
+            throws ShortcutReadException {
+        read(website, blackhole);
+    }
+    
+    @Benchmark
+    public void desktop(Blackhole blackhole)
+            throws ShortcutReadException {
+        read(desktop, blackhole);
+    }
+    
+    @Benchmark
+    public void webloc(Blackhole blackhole)
+            throws ShortcutReadException {
+        read(webloc, blackhole);
+    }
+    
+    @Benchmark
+    public void all(Blackhole blackhole)
+            throws ShortcutReadException {
+        read(all, blackhole);
+    }
+}
@@ -0,0 +1,148 @@
+/**
+ * Copyright 2014 by Andre Beckus
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+
+ *   http://www.apache.org/licenses/LICENSE-2.0
+
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.abcodeworks.webshortcututil.benchmark;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.abcodeworks.webshortcututil.write.DesktopShortcutWriter;
+import com.abcodeworks.webshortcututil.write.FileAlreadyExistsException;
+import com.abcodeworks.webshortcututil.write.ShortcutWriteException;
+import com.abcodeworks.webshortcututil.write.ShortcutWriter;
+import com.abcodeworks.webshortcututil.write.UrlShortcutWriter;
+import com.abcodeworks.webshortcututil.write.WeblocBinaryShortcutWriter;
+import com.abcodeworks.webshortcututil.write.WeblocXmlShortcutWriter;
+
+/**
+ * Measures each writer, writing one shortcut per operation either to an in-memory stream
+ * or to a new file in a temporary folder.
+ * 
+ * <p>
+ * The "content" parameter selects an ASCII shortcut, a Unicode shortcut (which makes
+ * UrlShortcutWriter add the UTF-7 section) or a shortcut with a long name and URL.
+ * The files written during an iteration are deleted after the iteration.
+ * </p>
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class WriterBenchmark {
+    public enum WriterType {
+        URL {
+            ShortcutWriter create() {
+                return new UrlShortcutWriter();
+            }
+        },
+        DESKTOP {
+            ShortcutWriter create() {
+                return new DesktopShortcutWriter();
+            }
+        },
+        WEBLOC_BINARY {
+            ShortcutWriter create() {
+                return new WeblocBinaryShortcutWriter();
+            }
+        },
+        WEBLOC_XML {
+            ShortcutWriter create() {
+                return new WeblocXmlShortcutWriter();
+            }
+        };
+        
+        abstract ShortcutWriter create();
+    }
+    
+    @Param
+    public WriterType writerType;
+    
+    @Param
+    public ShortcutContent content;
+    
+    ShortcutWriter writer;
+    ByteArrayOutputStream memory;
+    
+    File folder;
+    String filename;
+    int fileCount;
+    
+    @Setup
+    public void setUp()
+            throws IOException {
+        writer = writerType.create();
+        memory = new ByteArrayOutputStream(1024);
+        folder = Files.createTempDirectory("webshortcututil-bench").toFile();
+        filename = writer.createBaseFilename(content.name);
+    }
+    
+    @TearDown(Level.Iteration)
+    public void deleteFiles() {
+        File[] files = folder.listFiles();
+        if(files != null) {
+            for(File file : files) {
+                file.delete();
+            }
+        }
+    }
+    
+    @TearDown
+    public void tearDown() {
+        deleteFiles();
+        folder.delete();
+    }
+    
+    @Benchmark
+    public int writeToMemory()
+            throws ShortcutWriteException {
+        memory.reset();
+        writer.write(memory, content.name, content.url);
+        return memory.size();
+    }
+    
+    @Benchmark
+    public File writeToFile()
+            throws FileAlreadyExistsException,
+                   ShortcutWriteException {
+        File file = new File(folder, filename + " " + (fileCount++) + "." + writer.defaultExtension());
+        writer.write(file, content.name, content.url);
+        return file;
+    }
+}
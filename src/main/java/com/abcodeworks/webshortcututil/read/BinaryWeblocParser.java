@@ -0,0 +1,264 @@
+/**
+ * Copyright 2014 by Andre Beckus
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+
+ *   http://www.apache.org/licenses/LICENSE-2.0
+
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.abcodeworks.webshortcututil.read;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Extracts the URL from a binary property list (bplist00) without building the whole object graph.
+ * 
+ * <p>
+ * A binary webloc consists of a header, the objects, an offset table and a trailer.  The trailer gives
+ * the position of the offset table and the index of the top object, which for a webloc is a dictionary.
+ * Only the dictionary keys and the value of the "URL" key are decoded.
+ * </p>
+ * 
+ * <p>
+ * Anything unexpected (e.g. a top object which is not a dictionary, a URL stored as something other than an
+ * ASCII or UTF-16 string, or offsets that do not fit in the contents) makes {@link #readResult(ByteBuffer)}
+ * return null, so that the caller can fall back to the full plist parser and get the same result
+ * (or error) as before.
+ * </p>
+ * 
+ * See <a href="http://opensource.apple.com/source/CF/CF-550/CFBinaryPList.c">CFBinaryPList.c</a> for the format.
+ */
+final class BinaryWeblocParser {
+    private static final byte[] MAGIC = { 'b', 'p', 'l', 'i', 's', 't', '0', '0' };
+    
+    private static final int TRAILER_SIZE = 32;
+    
+    // Object types (the high nibble of the marker byte)
+    private static final int TYPE_INT = 0x1,
+                             TYPE_ASCII_STRING = 0x5,
+                             TYPE_UNICODE_STRING = 0x6,
+                             TYPE_DICT = 0xD;
+    
+    private static final String URL_KEY = "URL";
+    
+    private final ByteBuffer buffer;
+    // Absolute index of the first byte, and the number of bytes.
+    private final int base,
+                      length;
+    
+    // Trailer fields
+    private int offsetIntSize,
+                objectRefSize;
+    private long numObjects,
+                 offsetTableOffset;
+    
+    private BinaryWeblocParser(ByteBuffer buffer) {
+        this.buffer = buffer;
+        this.base = buffer.position();
+        this.length = buffer.remaining();
+    }
+    
+    /**
+     * Checks for the bplist00 magic number.  The buffer's position is not changed.
+     */
+    static boolean isBinaryPlist(ByteBuffer buffer) {
+        if(buffer.remaining() < MAGIC.length) {
+            return false;
+        }
+        int start = buffer.position();
+        for(int i = 0; i < MAGIC.length; i++) {
+            if(buffer.get(start + i) != MAGIC[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+    
+    /**
+     * Reads the URL from a binary webloc.  The buffer's position is not changed.
+     * 
+     * @return The URL (or a failure if the plist is a dictionary without a URL), or null if the plist
+     *         is not laid out as expected (in which case it should be read with the full parser).
+     */
+    static ReadResult readResult(ByteBuffer buffer) {
+        return new BinaryWeblocParser(buffer).readResult();
+    }
+    
+    private ReadResult readResult() {
+        if(length < MAGIC.length + TRAILER_SIZE) {
+            return null;
+        }
+        
+        int trailer = length - TRAILER_SIZE;
+        offsetIntSize = byteAt(trailer + 6);
+        objectRefSize = byteAt(trailer + 7);
+        numObjects = readLong(trailer + 8, 8);
+        long topObject = readLong(trailer + 16, 8);
+        offsetTableOffset = readLong(trailer + 24, 8);
+        
+        // The offset table must fit between the objects and the trailer.  Bound it by subtraction,
+        // since a huge offset would overflow when added to the table size.
+        if(offsetIntSize < 1 || offsetIntSize > 8 || objectRefSize < 1 || objectRefSize > 8
+                || offsetTableOffset < MAGIC.length || offsetTableOffset >= trailer
+                || numObjects < 1 || numObjects > (trailer - offsetTableOffset) / offsetIntSize
+                || topObject < 0 || topObject >= numObjects) {
+            return null;
+        }
+        
+        int dict = objectOffset(topObject);
+        if(dict < 0 || (byteAt(dict) >> 4) != TYPE_DICT) {
+            return null;
+        }
+        long[] countAndStart = readCount(dict);
+        if(countAndStart == null) {
+            return null;
+        }
+        long count = countAndStart[0],
+             keysStart = countAndStart[1],
+             valuesStart = keysStart + count * objectRefSize;
+        if(valuesStart + count * objectRefSize > offsetTableOffset) {
+            return null;
+        }
+        
+        for(long i = 0; i < count; i++) {
+            int keyIndex = toIndex(keysStart + i * objectRefSize, objectRefSize);
+            if(keyIndex < 0) {
+                return null;
+            }
+            String key = readString(readLong(keyIndex, objectRefSize));
+            if(key == null) {
+                // Keys should always be strings.
+                return null;
+            }
+            if(key.equals(URL_KEY)) {
+                int valueIndex = toIndex(valuesStart + i * objectRefSize, objectRefSize);
+                if(valueIndex < 0) {
+                    return null;
+                }
+                long valueRef = readLong(valueIndex, objectRefSize);
+                String url = readString(valueRef);
+                return (url == null) ? null : ReadResult.success(url);
+            }
+        }
+        
+        return WeblocShortcutReader.URL_NOT_FOUND;
+    }
+    
+    /* Checks that size bytes starting at a computed index lie before the trailer.
+     * Returns the index, or -1 if it is out of range. */
+    private int toIndex(long index, int size) {
+        if(index < 0 || index > length - TRAILER_SIZE - size) {
+            return -1;
+        }
+        return (int)index;
+    }
+    
+    private int byteAt(int index) {
+        return buffer.get(base + index) & 0xFF;
+    }
+    
+    /* Reads a big-endian unsigned integer.  Values which do not fit in a long come out
+     * negative, and the callers treat them as invalid. */
+    private long readLong(int index, int size) {
+        long value = 0;
+        for(int i = 0; i < size; i++) {
+            value = (value << 8) | byteAt(index + i);
+        }
+        return value;
+    }
+    
+    /* Looks up an object in the offset table.  Returns -1 if the offset is invalid. */
+    private int objectOffset(long ref) {
+        if(ref < 0 || ref >= numObjects) {
+            return -1;
+        }
+        int index = toIndex(offsetTableOffset + ref * offsetIntSize, offsetIntSize);
+        if(index < 0) {
+            return -1;
+        }
+        long offset = readLong(index, offsetIntSize);
+        if(offset < MAGIC.length || offset >= offsetTableOffset) {
+            return -1;
+        }
+        return (int)offset;
+    }
+    
+    /* Reads the element count of the object at the specified offset.
+     * Counts of 15 or more are stored in an integer object after the marker.
+     * Returns the count and the offset of the contents, or null if invalid. */
+    private long[] readCount(int offset) {
+        long count = byteAt(offset) & 0x0F;
+        int start = offset + 1;
+        if(count == 0x0F) {
+            if(start >= offsetTableOffset) {
+                return null;
+            }
+            int intMarker = byteAt(start);
+            if((intMarker >> 4) != TYPE_INT || (intMarker & 0x0F) > 3) {
+                return null;
+            }
+            int size = 1 << (intMarker & 0x0F);
+            if(start + 1 + size > offsetTableOffset) {
+                return null;
+            }
+            count = readLong(start + 1, size);
+            if(count < 0 || count > length) {
+                return null;
+            }
+            start += 1 + size;
+        }
+        return new long[] { count, start };
+    }
+    
+    /* Decodes an ASCII or UTF-16 string object.  Returns null for any other type of object,
+     * and for ASCII strings containing non-ASCII bytes (which the full parser replaces). */
+    private String readString(long ref) {
+        int offset = objectOffset(ref);
+        if(offset < 0) {
+            return null;
+        }
+        int type = byteAt(offset) >> 4;
+        if(type != TYPE_ASCII_STRING && type != TYPE_UNICODE_STRING) {
+            return null;
+        }
+        long[] countAndStart = readCount(offset);
+        if(countAndStart == null) {
+            return null;
+        }
+        long count = countAndStart[0];
+        long byteCount = (type == TYPE_ASCII_STRING) ? count : count * 2;
+        if(countAndStart[1] + byteCount > offsetTableOffset) {
+            return null;
+        }
+        int start = (int)countAndStart[1];
+        
+        char[] chars = new char[(int)count];
+        if(type == TYPE_ASCII_STRING) {
+            for(int i = 0; i < chars.length; i++) {
+                int b = byteAt(start + i);
+                if(b >= 0x80) {
+                    return null;
+                }
+                chars[i] = (char)b;
+            }
+        } else {
+            for(int i = 0; i < chars.length; i++) {
+                chars[i] = (char)((byteAt(start + i * 2) << 8) | byteAt(start + i * 2 + 1));
+            }
+        }
+        return new String(chars);
+    }
+}
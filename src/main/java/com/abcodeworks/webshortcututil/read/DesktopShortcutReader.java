@@ -21,13 +21,12 @@
 
 package com.abcodeworks.webshortcututil.read;
 
-import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
-import java.io.UnsupportedEncodingException;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
 
 /**
  * Reads Desktop shortcuts (FreeDesktop shortcuts with a .desktop extension - used by Linux, etc.).
@@ -35,60 +34,109 @@ import java.util.regex.Pattern;
  */
 public class DesktopShortcutReader extends ShortcutReader {
 
-    // Pattern for a blank line (i.e. only whitespace) or a comment (e.g. #My Comment)
-    Pattern blank_or_comment = Pattern.compile("^\\s*(#.*)?$");
+    // Comments start with a hash (e.g. #My Comment)
+    static final char COMMENT_CHAR = '#';
 
-    // Pattern a for a desktop entry header e.g. [Desktop Entry] or [KDE Desktop Entry].
+    // Names of the desktop entry header e.g. [Desktop Entry] or [KDE Desktop Entry].
     // Per the Desktop Entry specifications, [KDE Desktop Entry] was used at one time...
-    Pattern desktopEntryHeader = Pattern.compile("^\\s*\\[(KDE )?Desktop Entry\\]\\s*$");
+    static final String DESKTOP_ENTRY_HEADER = "Desktop Entry",
+                        KDE_DESKTOP_ENTRY_HEADER = "KDE Desktop Entry";
+    
+    // Note that Desktop Entry files use UTF8
+    static final Charset CHARSET = Charset.forName("UTF-8");
+    
+    // Expected failures
+    static final ReadResult INVALID_START = ReadResult.failure(ReadResult.Reason.INVALID_START, "Shortcut file is invalid"),
+                            DESKTOP_ENTRY_NOT_FOUND = ReadResult.failure(ReadResult.Reason.MISSING_SECTION, "Desktop Entry group not found in desktop file"),
+                            URL_NOT_FOUND = ReadResult.failure(ReadResult.Reason.MISSING_URL, "URL not found in file");
+    
+    private final ShortcutReadLimits limits;
+    
+    /**
+     * Creates a reader with the {@link ShortcutReadLimits#DEFAULT default} limits.
+     */
+    public DesktopShortcutReader() {
+        this(ShortcutReadLimits.DEFAULT);
+    }
+    
+    /**
+     * Creates a reader which stops with a {@link ReadResult.Reason#LIMIT_EXCEEDED} result
+     * when the input exceeds the specified limits.
+     * 
+     * @param limits The limits.  Use {@link ShortcutReadLimits#UNLIMITED} to read any input to the end.
+     */
+    public DesktopShortcutReader(ShortcutReadLimits limits) {
+        if(limits == null) {
+            throw new NullPointerException("limits");
+        }
+        this.limits = limits;
+    }
+    
+    public ShortcutReadLimits getLimits() {
+        return limits;
+    }
+    
+    @Override
+    long getMaxContentLength() {
+        return limits.getMaxBytes();
+    }
     
     @Override
     public String readUrlString(InputStream stream)
             throws ShortcutReadException {
-        // Open a buffered reader for efficiency and so that we can do a reset to the start of the stream.
-        BufferedReader reader;
-        try {
-            // Note that Desktop Entry files use UTF8
-            reader = new BufferedReader(new InputStreamReader(stream, "UTF-8"));
-        } catch (UnsupportedEncodingException e) {
-            throw new ShortcutReadException(e);
+        return readResult(stream).getUrlStringOrThrow();
+    }
+    
+    @Override
+    public ReadResult readResult(InputStream stream) {
+        // The scanner does its own buffering, so there is no need for a buffered reader.
+        return readResult(new IniLineScanner(new InputStreamReader(new LimitedInputStream(stream, limits.getMaxBytes()), CHARSET),
+                                             COMMENT_CHAR, limits));
+    }
+    
+    @Override
+    public ReadResult readResult(ByteBuffer buffer) {
+        if(buffer.remaining() > limits.getMaxBytes()) {
+            return ReadLimitException.tooManyBytes(limits.getMaxBytes()).toResult();
         }
-        
+        // Decode everything in one go and scan the characters in place.
+        CharBuffer chars = CHARSET.decode(buffer.duplicate());
+        return readResult(new IniLineScanner(chars.array(), chars.arrayOffset() + chars.position(), chars.remaining(), COMMENT_CHAR, limits));
+    }
+    
+    ReadResult readResult(IniLineScanner scanner) {
         // Let's check and see if this is really a desktop shortcut before we start.
         // We want to fail fast, especially if we are not sure if this is a shortcut.
-        // Peek at the first character
-        assert(reader.markSupported());
+        // Peek at the first character: it should either be whitespace or should start a comment or a header
         try {
-            // We only need to read 1 character, but let's use a bigger buffer just in case.
-            reader.mark(16); 
-            // Assume that it is OK to cast the int return value to a char.
-            char firstChar = (char)reader.read();
-            // The first character should either be whitespace or should start a comment or a header
-            if(firstChar != '#' && firstChar != '[' && !Character.isWhitespace(firstChar)) {
-                throw new ShortcutReadException("Shortcut file is invalid");
+            if(!scanner.startsLikeIni()) {
+                return INVALID_START;
             }
-            reader.reset();
+        } catch (ReadLimitException e) {
+            return e.toResult();
         } catch (IOException ioe) {
-            throw new ShortcutReadException("Error checking first character", ioe);
+            return ReadResult.failure(ReadResult.Reason.IO_ERROR, "Error checking first character", ioe);
         }
         
         // There should be a Desktop Entry Header first - go find it
         Boolean desktopEntryFound = false;
         while(true) {
-            String nextline;
+            IniLineScanner.LineType lineType;
 
             try {
-                nextline = reader.readLine();
+                lineType = scanner.next();
+            } catch (ReadLimitException e) {
+                return e.toResult();
             } catch (IOException e) {
-                throw new ShortcutReadException(e);
+                return ReadResult.failure(ReadResult.Reason.IO_ERROR, e.toString(), e);
             }
             
-            if(nextline == null) {
+            if(lineType == null) {
                 // If we reached the end of the file, exit
                 break;
-            } else if(matches(desktopEntryHeader, nextline)) {
+            } else if(scanner.isHeader(DESKTOP_ENTRY_HEADER) || scanner.isHeader(KDE_DESKTOP_ENTRY_HEADER)) {
                 desktopEntryFound = true;
-            } else if(matches(blank_or_comment, nextline)) {
+            } else if(lineType == IniLineScanner.LineType.BLANK || lineType == IniLineScanner.LineType.COMMENT) {
                 // Ignore this line it is OK to have blank line or comments before the header
             } else {
                 // When we find a line that does not match the above criteria, stop looping.
@@ -98,53 +146,41 @@ public class DesktopShortcutReader extends ShortcutReader {
         }
 
         if(!desktopEntryFound) {
-            throw new ShortcutReadException("Desktop Entry group not found in desktop file");
+            return DESKTOP_ENTRY_NOT_FOUND;
         }
         
         String url = null;
         
         while(true) {
-            String nextline;
+            IniLineScanner.LineType lineType;
 
             try {
-                nextline = reader.readLine();
+                lineType = scanner.next();
+            } catch (ReadLimitException e) {
+                return e.toResult();
             } catch (IOException e) {
-                throw new ShortcutReadException(e);
+                return ReadResult.failure(ReadResult.Reason.IO_ERROR, e.toString(), e);
             }
             
-            if(nextline == null) {
+            if(lineType == null) {
                 // If we reached the end of the file, exit
                 break;
-            } else if(matches(header, nextline)) {
+            } else if(lineType == IniLineScanner.LineType.HEADER) {
                 // We shouldn't find any headers.  If we do, exit.
                 break;
-            } else if(matches(blank_or_comment, nextline)) {
-                // Ignore this line
-            } else {
-                // If we find a Key/Value pair, check it for a URL
-                Matcher key_value_matcher = key_value_pattern.matcher(nextline);
-                if(key_value_matcher.matches()) {
-                    assert(key_value_matcher.groupCount() == 4);
-                    String key = key_value_matcher.group(1);
-                    String value = key_value_matcher.group(4);
-                    if(key == null) {
-                        // The fact that we are here suggests that either the file
-                        // is corrupt or this algorithm is incorrect.  Either way
-                        // we will just ignore the issue and move on to the next line.
-                    } else if(key.equals("URL")) {
-                        // We find a URL - capture it and exit.
-                        url = value;
-                        break;
-                    }
-                }
+            } else if(scanner.isKey("URL")) {
+                // We find a URL - capture it and exit.
+                url = scanner.getValue();
+                break;
             }
+            // Otherwise ignore the line (blank lines, comments, other keys and garbled lines)
         }
         
         if(url == null) {
-            throw new ShortcutReadException("URL not found in file");
+            return URL_NOT_FOUND;
         }
         
-        return url;
+        return ReadResult.success(url);
     }
 
 }
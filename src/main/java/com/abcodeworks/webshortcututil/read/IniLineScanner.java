@@ -0,0 +1,381 @@
+/**
+ * Copyright 2014 by Andre Beckus
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+
+ *   http://www.apache.org/licenses/LICENSE-2.0
+
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.abcodeworks.webshortcututil.read;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.charset.MalformedInputException;
+
+/**
+ * Splits INI-style shortcut contents (.url, .website and .desktop files) into lines
+ * and classifies each line as a header, key/value pair, comment or blank line.
+ *
+ * <p>
+ * This replaces the regular expressions that used to be applied to every line.
+ * Lines are scanned in place inside a character buffer, and strings are only created
+ * for the parts a reader actually asks for (e.g. the value of a URL key), so lines
+ * which are skipped do not allocate anything.
+ * </p>
+ *
+ * <p>
+ * The rules are relaxed in the same way as the old patterns.  Whitespace is the
+ * same set of characters as the regular expression {@code \s}, and lines are terminated
+ * by "\n", "\r" or "\r\n" (the same as {@link java.io.BufferedReader#readLine()}).
+ * </p>
+ *
+ * <p>
+ * The line length and number of lines are checked against the {@link ShortcutReadLimits}, and a
+ * {@link ReadLimitException} is thrown as soon as either is exceeded.  Since a line can never be
+ * longer than the maximum, the buffer does not grow much beyond it either.
+ * </p>
+ */
+final class IniLineScanner {
+    enum LineType {
+        /** Only whitespace. */
+        BLANK,
+        /** Starts with the comment character (after optional whitespace). */
+        COMMENT,
+        /** A section header e.g. [MyHeader] */
+        HEADER,
+        /** A key/value pair e.g. MyKey=MyValue or MyKey[locale]=MyValue */
+        KEY_VALUE,
+        /** Anything else (i.e. a garbled line). */
+        OTHER
+    }
+
+    static final int DEFAULT_BUFFER_SIZE = 8192;
+
+    // Source of additional characters, or null if the whole input is already in the buffer.
+    private final Reader reader;
+    private final char commentChar;
+    private final int maxLineLength,
+                      maxLines;
+    private int lines;
+
+    private char[] buf;
+    // The unread characters are buf[pos] to buf[limit - 1]
+    private int pos, limit;
+    private boolean eof;
+    // Set when the previous line ended with '\r', in which case a following '\n' is skipped.
+    private boolean skipLF;
+
+    // Parts of the current line (indices into buf).
+    private LineType type;
+    private int nameStart, nameEnd,
+                valueStart, valueEnd;
+
+    /**
+     * Creates a scanner which pulls characters from a reader as needed.
+     *
+     * @param reader The reader to scan.  It is not closed.
+     * @param commentChar The character which starts a comment line (e.g. ';' or '#').
+     */
+    IniLineScanner(Reader reader, char commentChar) {
+        this(reader, commentChar, ShortcutReadLimits.UNLIMITED);
+    }
+
+    /**
+     * Creates a scanner which pulls characters from a reader as needed.
+     *
+     * @param reader The reader to scan.  It is not closed.
+     * @param commentChar The character which starts a comment line (e.g. ';' or '#').
+     * @param limits The maximum line length and number of lines.  The number of bytes is not checked here.
+     */
+    IniLineScanner(Reader reader, char commentChar, ShortcutReadLimits limits) {
+        this.reader = reader;
+        this.commentChar = commentChar;
+        this.maxLineLength = limits.getMaxLineLength();
+        this.maxLines = limits.getMaxLines();
+        this.buf = new char[DEFAULT_BUFFER_SIZE];
+    }
+
+    /**
+     * Creates a scanner over characters which are already in memory.
+     * The array is not copied, so it must not be modified while scanning.
+     */
+    IniLineScanner(char[] chars, int offset, int length, char commentChar) {
+        this(chars, offset, length, commentChar, ShortcutReadLimits.UNLIMITED);
+    }
+
+    /**
+     * Creates a scanner over characters which are already in memory, checking the specified limits.
+     */
+    IniLineScanner(char[] chars, int offset, int length, char commentChar, ShortcutReadLimits limits) {
+        this.reader = null;
+        this.commentChar = commentChar;
+        this.maxLineLength = limits.getMaxLineLength();
+        this.maxLines = limits.getMaxLines();
+        this.buf = chars;
+        this.pos = offset;
+        this.limit = offset + length;
+        this.eof = true;
+    }
+
+    /* Whitespace as defined by the \s regular expression character class. */
+    static boolean isSpace(char c) {
+        return c == ' ' || c == '\t' || c == '\n' || c == '\u000B' || c == '\f' || c == '\r';
+    }
+
+    private static boolean isKeyChar(char c) {
+        return (c >= 'A' && c <= 'Z') || (c >= 'a' && c <= 'z') || (c >= '0' && c <= '9') || c == '-';
+    }
+
+    /* Reads more characters into the buffer.  The unread characters (i.e. the current line)
+     * are moved to the start of the buffer first, and the buffer grows if the line fills it.
+     * Returns false if the end of the input was reached.
+     */
+    private boolean fill() throws IOException {
+        if(eof) {
+            return false;
+        }
+
+        int kept = limit - pos;
+        if(kept == buf.length) {
+            // The current line fills the whole buffer - make room for it to grow.
+            char[] bigger = new char[buf.length * 2];
+            System.arraycopy(buf, pos, bigger, 0, kept);
+            buf = bigger;
+        } else if(pos > 0) {
+            System.arraycopy(buf, pos, buf, 0, kept);
+        }
+        pos = 0;
+        limit = kept;
+
+        int count = reader.read(buf, limit, buf.length - limit);
+        if(count < 0) {
+            eof = true;
+            return false;
+        }
+        limit += count;
+        return true;
+    }
+
+    /**
+     * Returns the first character of the input without consuming it.
+     * Only meaningful before the first call to {@link #next()}.
+     *
+     * @return The character, or -1 if the input is empty.
+     */
+    int peek() throws IOException {
+        while(pos == limit) {
+            if(!fill()) {
+                return -1;
+            }
+        }
+        return buf[pos];
+    }
+
+    /**
+     * Checks that the input could be an INI file: the first character must be whitespace,
+     * the comment character, or the start of a header.  This lets readers fail fast when
+     * the input is not a shortcut of the expected type.
+     */
+    boolean startsLikeIni() throws IOException {
+        int first = peek();
+        if(first < 0) {
+            return false;
+        }
+        char c = (char)first;
+        return c == commentChar || c == '[' || Character.isWhitespace(c);
+    }
+
+    /**
+     * Advances to the next line and classifies it.
+     *
+     * @return The type of the line, or null if there are no more lines.
+     */
+    LineType next() throws IOException {
+        // Find the end of the line, reading more characters if necessary.
+        int scan = pos;
+        while(true) {
+            if(scan == limit) {
+                // The scanned part of the line may be moved by fill()
+                int scanned = scan - pos;
+                checkLineLength(scanned);
+                boolean more = fill();
+                scan = pos + scanned;
+                if(!more) {
+                    break;
+                }
+                continue;
+            }
+
+            char c = buf[scan];
+            if(skipLF) {
+                skipLF = false;
+                if(c == '\n') {
+                    pos++;
+                    scan++;
+                    continue;
+                }
+            }
+            if(c == '\n' || c == '\r') {
+                break;
+            }
+            scan++;
+        }
+
+        if(scan == limit && pos == limit) {
+            // Nothing left (the last line has already been returned).
+            type = null;
+            return null;
+        }
+
+        int lineStart = pos,
+            lineEnd = scan;
+        checkLineLength(lineEnd - lineStart);
+        if(++lines > maxLines) {
+            throw new ReadLimitException("Shortcut has more than " + maxLines + " lines");
+        }
+
+        // Consume the line terminator
+        if(scan < limit) {
+            skipLF = (buf[scan] == '\r');
+            pos = scan + 1;
+        } else {
+            pos = scan;
+        }
+
+        type = classify(lineStart, lineEnd);
+        return type;
+    }
+
+    private void checkLineLength(int length) throws ReadLimitException {
+        if(length > maxLineLength) {
+            throw new ReadLimitException("Line is longer than " + maxLineLength + " characters");
+        }
+    }
+
+    private LineType classify(int start, int end) {
+        int first = start;
+        while(first < end && isSpace(buf[first])) {
+            first++;
+        }
+        if(first == end) {
+            return LineType.BLANK;
+        }
+
+        char c = buf[first];
+        if(c == commentChar) {
+            return LineType.COMMENT;
+        }
+
+        if(c == '[') {
+            int last = end - 1;
+            while(isSpace(buf[last])) {
+                last--;
+            }
+            if(last > first && buf[last] == ']') {
+                nameStart = first + 1;
+                nameEnd = last;
+                return LineType.HEADER;
+            }
+        }
+
+        // Key (may be empty)
+        int i = first;
+        while(i < end && isKeyChar(buf[i])) {
+            i++;
+        }
+        nameStart = first;
+        nameEnd = i;
+
+        // Optional locale e.g. Name[en_US]
+        if(i < end && buf[i] == '[') {
+            i++;
+            while(i < end && buf[i] != ']' && buf[i] != '[') {
+                i++;
+            }
+            if(i == end || buf[i] != ']') {
+                return LineType.OTHER;
+            }
+            i++;
+        }
+
+        while(i < end && isSpace(buf[i])) {
+            i++;
+        }
+        if(i == end || buf[i] != '=') {
+            return LineType.OTHER;
+        }
+        i++;
+
+        // The value has the surrounding whitespace removed.
+        while(i < end && isSpace(buf[i])) {
+            i++;
+        }
+        int last = end;
+        while(last > i && isSpace(buf[last - 1])) {
+            last--;
+        }
+        valueStart = i;
+        valueEnd = last;
+        return LineType.KEY_VALUE;
+    }
+
+    private boolean regionEquals(int start, int end, String str) {
+        int length = end - start;
+        if(length != str.length()) {
+            return false;
+        }
+        for(int i = 0; i < length; i++) {
+            if(buf[start + i] != str.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Checks if the current line is a header with the specified name
+     * (e.g. "InternetShortcut" for the line [InternetShortcut]).
+     */
+    boolean isHeader(String name) {
+        return type == LineType.HEADER && regionEquals(nameStart, nameEnd, name);
+    }
+
+    /**
+     * Checks if the current line is a key/value pair with the specified key.
+     * Any locale suffix (e.g. [en_US]) is ignored.
+     */
+    boolean isKey(String key) {
+        return type == LineType.KEY_VALUE && regionEquals(nameStart, nameEnd, key);
+    }
+
+    /**
+     * Returns the value of the current key/value line.
+     */
+    String getValue() {
+        assert(type == LineType.KEY_VALUE);
+        return new String(buf, valueStart, valueEnd - valueStart);
+    }
+
+    /**
+     * Returns the value of the current key/value line, decoded from UTF-7.
+     *
+     * @throws MalformedInputException If the value is not valid UTF-7.
+     */
+    String getUtf7Value() throws MalformedInputException {
+        assert(type == LineType.KEY_VALUE);
+        return Utf7Decoder.decode(buf, valueStart, valueEnd - valueStart);
+    }
+}
@@ -0,0 +1,94 @@
+/**
+ * Copyright 2014 by Andre Beckus
+ * 
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+
+ *   http://www.apache.org/licenses/LICENSE-2.0
+
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.abcodeworks.webshortcututil.read;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Passes on at most a fixed number of bytes from a stream.  If the stream has more bytes than
+ * that, a {@link ReadLimitException} is thrown instead of returning them.  At most one byte
+ * beyond the limit is read from the underlying stream.
+ */
+final class LimitedInputStream extends FilterInputStream {
+    private final long maxBytes;
+    private long remaining;
+
+    LimitedInputStream(InputStream stream, long maxBytes) {
+        super(stream);
+        this.maxBytes = maxBytes;
+        this.remaining = maxBytes;
+    }
+
+    /* Called when the limit has been reached.  Returns -1 if the stream has ended
+     * (so the input was exactly the maximum size), otherwise throws. */
+    private int checkEnd() throws IOException {
+        if(in.read() < 0) {
+            return -1;
+        }
+        throw ReadLimitException.tooManyBytes(maxBytes);
+    }
+
+    @Override
+    public int read() throws IOException {
+        if(remaining == 0) {
+            return checkEnd();
+        }
+        int b = in.read();
+        if(b >= 0) {
+            remaining--;
+        }
+        return b;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if(len == 0) {
+            return 0;
+        }
+        if(remaining == 0) {
+            return checkEnd();
+        }
+        int count = in.read(b, off, (int)Math.min(len, remaining));
+        if(count > 0) {
+            remaining -= count;
+        }
+        return count;
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+        long skipped = in.skip(Math.min(n, remaining));
+        remaining -= skipped;
+        return skipped;
+    }
+
+    @Override
+    public int available() throws IOException {
+        return (int)Math.min(in.available(), remaining);
+    }
+
+    @Override
+    public boolean markSupported() {
+        return false;
+    }
+}
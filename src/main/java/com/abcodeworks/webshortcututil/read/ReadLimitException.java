@@ -0,0 +1,43 @@
+/**
+ * Copyright 2014 by Andre Beckus
+ * 
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+
+ *   http://www.apache.org/licenses/LICENSE-2.0
+
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.abcodeworks.webshortcututil.read;
+
+import java.io.IOException;
+
+/**
+ * Used inside the readers to stop reading as soon as a {@link ShortcutReadLimits} limit is exceeded.
+ * It is an IOException so it can be thrown from streams, and the readers turn it into a
+ * {@link ReadResult.Reason#LIMIT_EXCEEDED} result.
+ */
+final class ReadLimitException extends IOException {
+    ReadLimitException(String message) {
+        super(message);
+    }
+    
+    static ReadLimitException tooManyBytes(long maxBytes) {
+        return new ReadLimitException("Shortcut is larger than " + maxBytes + " bytes");
+    }
+    
+    /* Creates the result which the readers return. */
+    ReadResult toResult() {
+        return ReadResult.failure(ReadResult.Reason.LIMIT_EXCEEDED, getMessage());
+    }
+}
@@ -0,0 +1,233 @@
+/**
+ * Copyright 2014 by Andre Beckus
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+
+ *   http://www.apache.org/licenses/LICENSE-2.0
+
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.abcodeworks.webshortcututil.read;
+
+import java.io.FileNotFoundException;
+
+/**
+ * The outcome of reading a shortcut without exceptions (see e.g.
+ * {@link ShortcutReader#readResult(java.io.InputStream)} and {@link ShortcutReadUtil#readResult(java.io.File)}).
+ * 
+ * <p>
+ * Expected failures, such as a file which is not a shortcut or which does not contain a URL, are
+ * reported through the status and reason code instead of an exception.  This makes reading large numbers
+ * of files (many of which may be garbage) much cheaper, since no exception or stack trace is created.
+ * Results for these failures carry no per-call state and may be shared.
+ * </p>
+ * 
+ * <p>
+ * The exception-based methods are wrappers around the result-based methods: when a result is not successful
+ * they throw {@link #toException()}, so the message is the same either way.
+ * </p>
+ * 
+ */
+public final class ReadResult {
+    /** The overall outcome. */
+    public enum Status {
+        /** The URL was read. */
+        SUCCESS,
+        /** The contents are not a shortcut of the expected type (or of any known type). */
+        NOT_A_SHORTCUT,
+        /** The contents look like a shortcut, but the URL could not be read from them. */
+        CORRUPT,
+        /** The contents could not be read (e.g. the file does not exist). */
+        IO_ERROR
+    }
+    
+    /** The specific reason for the outcome.  Each reason always has the same {@link Status}. */
+    // New reasons go at the end, since ShortcutIndex stores the ordinal.
+    public enum Reason {
+        /** The URL was read. */
+        NONE(Status.SUCCESS),
+        /** The file name does not have a shortcut extension. */
+        INVALID_EXTENSION(Status.NOT_A_SHORTCUT),
+        /** The type of shortcut could not be detected from the contents. */
+        UNKNOWN_FORMAT(Status.NOT_A_SHORTCUT),
+        /** The start of the contents does not match the shortcut type. */
+        INVALID_START(Status.NOT_A_SHORTCUT),
+        /** A required section is missing (e.g. [Desktop Entry]). */
+        MISSING_SECTION(Status.CORRUPT),
+        /** There is no URL in the shortcut. */
+        MISSING_URL(Status.CORRUPT),
+        /** The URL could not be decoded (e.g. invalid UTF-7). */
+        INVALID_ENCODING(Status.CORRUPT),
+        /** The contents could not be parsed (e.g. a damaged plist). */
+        MALFORMED(Status.CORRUPT),
+        /** An error occurred while reading the contents.  The cause is available from {@link ReadResult#getCause()}. */
+        IO_ERROR(Status.IO_ERROR),
+        /** The contents are larger than the reader's {@link ShortcutReadLimits}, so reading was stopped. */
+        LIMIT_EXCEEDED(Status.CORRUPT);
+        
+        private final Status status;
+        
+        private Reason(Status status) {
+            this.status = status;
+        }
+        
+        public Status getStatus() {
+            return status;
+        }
+    }
+    
+    private final Reason reason;
+    private final String urlString,
+                         name,
+                         message;
+    private final Throwable cause;
+    
+    private ReadResult(Reason reason, String urlString, String name, String message, Throwable cause) {
+        this.reason = reason;
+        this.urlString = urlString;
+        this.name = name;
+        this.message = message;
+        this.cause = cause;
+    }
+    
+    static ReadResult success(String urlString) {
+        return new ReadResult(Reason.NONE, urlString, null, null, null);
+    }
+    
+    /* Results are immutable, so a failure without a cause can be created once
+     * (e.g. in a static field) and returned by every call that hits it. */
+    static ReadResult failure(Reason reason, String message) {
+        return failure(reason, message, null);
+    }
+    
+    static ReadResult failure(Reason reason, String message, Throwable cause) {
+        assert(reason != Reason.NONE);
+        return new ReadResult(reason, null, null, message, cause);
+    }
+    
+    /* Adds the shortcut name to a successful result.  Failures are returned unchanged. */
+    ReadResult withName(String name) {
+        if(!isSuccess()) {
+            return this;
+        }
+        return new ReadResult(reason, urlString, name, message, cause);
+    }
+    
+    /* Used by the exception-based methods. */
+    String getUrlStringOrThrow()
+            throws ShortcutReadException {
+        if(!isSuccess()) {
+            throw toException();
+        }
+        return urlString;
+    }
+    
+    /* Used by the file-based exception methods, which report a missing file as a FileNotFoundException. */
+    void rethrowFileNotFound()
+            throws FileNotFoundException {
+        if(cause instanceof FileNotFoundException) {
+            throw (FileNotFoundException)cause;
+        }
+    }
+    
+    /**
+     * Indicates whether the URL was read.
+     */
+    public boolean isSuccess() {
+        return reason == Reason.NONE;
+    }
+    
+    public Status getStatus() {
+        return reason.getStatus();
+    }
+    
+    public Reason getReason() {
+        return reason;
+    }
+    
+    /**
+     * Returns the URL.
+     * 
+     * @return The URL, or null if the read was not successful.
+     */
+    public String getUrlString() {
+        return urlString;
+    }
+    
+    /**
+     * Returns the name of the shortcut.  See
+     * {@link com.abcodeworks.webshortcututil.read.ShortcutReadUtil#read(java.io.File) ShortcutReadUtil.read} for details.
+     * 
+     * @return The name, or null if the read was not successful or if the shortcut was not read from a file.
+     */
+    public String getName() {
+        return name;
+    }
+    
+    /**
+     * Returns the name and URL.
+     * 
+     * @return The contents, or null if the read was not successful.
+     */
+    public ShortcutContents getContents() {
+        if(!isSuccess()) {
+            return null;
+        }
+        return new ShortcutContents(name, urlString);
+    }
+    
+    /**
+     * Returns a description of the failure, which is the message of the equivalent exception.
+     * 
+     * @return The message, or null if the read was successful.
+     */
+    public String getMessage() {
+        return message;
+    }
+    
+    /**
+     * Returns the exception which caused the failure, if any (e.g. for {@link Reason#IO_ERROR}).
+     * 
+     * @return The cause, or null.
+     */
+    public Throwable getCause() {
+        return cause;
+    }
+    
+    /**
+     * Creates the exception which the exception-based methods throw for this result.
+     * 
+     * @return A new exception with the failure message and cause.  A {@link ShortcutLimitExceededException}
+     *         for {@link Reason#LIMIT_EXCEEDED}.
+     * @throws IllegalStateException If the result is a success.
+     */
+    public ShortcutReadException toException() {
+        if(isSuccess()) {
+            throw new IllegalStateException("The read was successful");
+        }
+        if(reason == Reason.LIMIT_EXCEEDED) {
+            return new ShortcutLimitExceededException(message);
+        }
+        return new ShortcutReadException(message, cause);
+    }
+    
+    @Override
+    public String toString() {
+        if(isSuccess()) {
+            return "ReadResult[SUCCESS, " + urlString + "]";
+        }
+        return "ReadResult[" + getStatus() + ", " + reason + ", " + message + "]";
+    }
+}
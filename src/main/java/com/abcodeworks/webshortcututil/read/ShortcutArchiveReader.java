@@ -0,0 +1,285 @@
+/**
+ * Copyright 2014 by Andre Beckus
+ * 
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+
+ *   http://www.apache.org/licenses/LICENSE-2.0
+
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.abcodeworks.webshortcututil.read;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipInputStream;
+
+/**
+ * Reads the shortcuts stored in a ZIP (or JAR) archive without extracting them to disk.
+ * 
+ * <p>
+ * The reader for each entry is chosen from the extension of the entry name, using the same
+ * rules as {@link ShortcutReadUtil#getShortcutReader(File)} (including any registered readers).
+ * Entries without a shortcut extension and directory entries are skipped, as are the resource
+ * fork entries which the Mac OS X archiver adds under "__MACOSX/".  Each entry is parsed
+ * from memory, and the name of each shortcut is taken from the entry name.
+ * </p>
+ * 
+ * <p>
+ * Archives stored in a file are opened with {@link ZipFile}, which allows the entries to be read
+ * in parallel when the reader is created with more than one thread.  Archives which are only available
+ * as a stream are read sequentially with {@link ZipInputStream}.
+ * </p>
+ * 
+ * <p>
+ * No entry is inflated beyond {@link #MAX_ENTRY_BYTES}, whatever limits the entry's reader has,
+ * so a small, highly compressed entry cannot fill the memory.  Larger entries give a
+ * {@link ReadResult.Reason#LIMIT_EXCEEDED} result.
+ * </p>
+ * 
+ * <p>
+ * Results are keyed by the full entry name (e.g. "Bookmarks/Search/Google.url"), in the order the
+ * entries appear in the archive.
+ * </p>
+ * 
+ */
+public class ShortcutArchiveReader {
+    /* The prefix of the entries the Mac OS X archiver uses for resource forks (e.g. __MACOSX/._Google.webloc). */
+    static final String MACOSX_RESOURCE_PREFIX = "__MACOSX/";
+    
+    /** The largest entry which is inflated: 256 KB, the same as {@link ShortcutReadLimits#DEFAULT_MAX_BYTES}. */
+    public static final long MAX_ENTRY_BYTES = ShortcutReadLimits.DEFAULT_MAX_BYTES;
+    
+    private final int threads;
+    
+    /**
+     * Creates a reader which reads the entries one at a time on the calling thread.
+     */
+    public ShortcutArchiveReader() {
+        this(1);
+    }
+    
+    /**
+     * Creates a reader which reads the entries of archive files using the specified number of threads.
+     * A new thread pool is created for each archive file and shut down when it has been read.
+     * 
+     * @param threads The number of threads.  If this is 1, entries are read on the calling thread.
+     */
+    public ShortcutArchiveReader(int threads) {
+        if(threads < 1) {
+            throw new IllegalArgumentException("threads must be at least 1");
+        }
+        this.threads = threads;
+    }
+    
+    /**
+     * Reads all of the shortcuts in an archive file.  Entries which cannot be read as shortcuts are left out.
+     * 
+     * @param archive The archive file.
+     * @return The contents of each shortcut, keyed by entry name.  Non-null.
+     * @throws IOException If the archive cannot be read.
+     */
+    public Map<String, ShortcutContents> read(File archive)
+            throws IOException {
+        return successful(readResults(archive));
+    }
+    
+    /**
+     * Reads all of the shortcuts in an archive stream.  Entries which cannot be read as shortcuts are left out.
+     * 
+     * @param stream The archive.  The stream is not closed.
+     * @return The contents of each shortcut, keyed by entry name.  Non-null.
+     * @throws IOException If the archive cannot be read.
+     */
+    public Map<String, ShortcutContents> read(InputStream stream)
+            throws IOException {
+        return successful(readResults(stream));
+    }
+    
+    /**
+     * Reads all of the shortcuts in an archive file, including the entries which could not be read.
+     * 
+     * @param archive The archive file.
+     * @return The result for each entry with a shortcut extension, keyed by entry name.  Non-null.
+     * @throws IOException If the archive cannot be read.
+     */
+    public Map<String, ReadResult> readResults(File archive)
+            throws IOException {
+        final ZipFile zipFile = new ZipFile(archive);
+        try {
+            Map<String, ReadResult> results = new LinkedHashMap<String, ReadResult>();
+            if(threads == 1) {
+                Enumeration<? extends ZipEntry> entries = zipFile.entries();
+                while(entries.hasMoreElements()) {
+                    ZipEntry entry = entries.nextElement();
+                    ShortcutReader reader = getShortcutReader(entry);
+                    if(reader != null) {
+                        results.put(entry.getName(), readEntry(reader, zipFile, entry));
+                    }
+                }
+                return results;
+            }
+            
+            // ZipFile allows several entries to be read at once.
+            ExecutorService executor = Executors.newFixedThreadPool(threads);
+            try {
+                List<String> names = new ArrayList<String>();
+                List<Future<ReadResult>> futures = new ArrayList<Future<ReadResult>>();
+                Enumeration<? extends ZipEntry> entries = zipFile.entries();
+                while(entries.hasMoreElements()) {
+                    final ZipEntry entry = entries.nextElement();
+                    final ShortcutReader reader = getShortcutReader(entry);
+                    if(reader != null) {
+                        names.add(entry.getName());
+                        futures.add(executor.submit(new Callable<ReadResult>() {
+                            public ReadResult call()
+                                    throws IOException {
+                                return readEntry(reader, zipFile, entry);
+                            }
+                        }));
+                    }
+                }
+                
+                for(int i = 0; i < futures.size(); i++) {
+                    results.put(names.get(i), getResult(futures.get(i)));
+                }
+                return results;
+            } finally {
+                executor.shutdownNow();
+            }
+        } finally {
+            zipFile.close();
+        }
+    }
+    
+    /**
+     * Reads all of the shortcuts in an archive stream, including the entries which could not be read.
+     * The entries are read sequentially.
+     * 
+     * @param stream The archive.  The stream is not closed.
+     * @return The result for each entry with a shortcut extension, keyed by entry name.  Non-null.
+     * @throws IOException If the archive cannot be read.
+     */
+    public Map<String, ReadResult> readResults(InputStream stream)
+            throws IOException {
+        Map<String, ReadResult> results = new LinkedHashMap<String, ReadResult>();
+        ZipInputStream zipStream = new ZipInputStream(stream);
+        ZipEntry entry;
+        while((entry = zipStream.getNextEntry()) != null) {
+            ShortcutReader reader = getShortcutReader(entry);
+            if(reader != null) {
+                results.put(entry.getName(), readEntry(reader, entry, zipStream));
+            }
+        }
+        // Not closed, as that would close the caller's stream.
+        return results;
+    }
+    
+    /* Returns the reader for an entry, or null if the entry should be skipped. */
+    static ShortcutReader getShortcutReader(ZipEntry entry) {
+        String name = entry.getName();
+        if(entry.isDirectory() || name.startsWith(MACOSX_RESOURCE_PREFIX)) {
+            return null;
+        }
+        return ShortcutReadUtil.getShortcutReader(getFileName(name));
+    }
+    
+    /* Returns the last part of an entry name (entry names always use "/"). */
+    static String getFileName(String entryName) {
+        return entryName.substring(entryName.lastIndexOf('/') + 1);
+    }
+    
+    /* Reads an entry of an archive file. */
+    static ReadResult readEntry(ShortcutReader reader, ZipFile zipFile, ZipEntry entry)
+            throws IOException {
+        InputStream stream = zipFile.getInputStream(entry);
+        try {
+            return readEntry(reader, entry, stream);
+        } finally {
+            stream.close();
+        }
+    }
+    
+    /* Reads an entry into memory and parses it.  The stream is not closed. */
+    static ReadResult readEntry(ShortcutReader reader, ZipEntry entry, InputStream stream) {
+        // Do not inflate more than the reader would parse, and never more than the fixed
+        // entry limit (the size in the archive may be wrong).
+        long size = entry.getSize(),
+             maxLength = Math.min(reader.getMaxContentLength(), MAX_ENTRY_BYTES);
+        if(size > maxLength) {
+            return ReadLimitException.tooManyBytes(maxLength).toResult();
+        }
+        ByteArrayOutputStream contents = new ByteArrayOutputStream((size > 0 && size < Integer.MAX_VALUE) ? (int)size : 512);
+        try {
+            InputStream limited = new LimitedInputStream(stream, maxLength);
+            byte[] chunk = new byte[4096];
+            int count;
+            while((count = limited.read(chunk)) >= 0) {
+                contents.write(chunk, 0, count);
+            }
+        } catch (ReadLimitException e) {
+            return e.toResult();
+        } catch (IOException e) {
+            return ReadResult.failure(ReadResult.Reason.IO_ERROR, e.toString(), e);
+        }
+        
+        byte[] bytes = contents.toByteArray();
+        return reader.readResult(bytes, 0, bytes.length).withName(reader.getShortcutName(getFileName(entry.getName())));
+    }
+    
+    private static ReadResult getResult(Future<ReadResult> future)
+            throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Archive read interrupted");
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if(cause instanceof IOException) {
+                throw (IOException)cause;
+            } else if(cause instanceof RuntimeException) {
+                throw (RuntimeException)cause;
+            } else if(cause instanceof Error) {
+                throw (Error)cause;
+            }
+            throw new IOException(cause);
+        }
+    }
+    
+    private static Map<String, ShortcutContents> successful(Map<String, ReadResult> results) {
+        Map<String, ShortcutContents> contents = new LinkedHashMap<String, ShortcutContents>();
+        for(Map.Entry<String, ReadResult> entry : results.entrySet()) {
+            if(entry.getValue().isSuccess()) {
+                contents.put(entry.getKey(), entry.getValue().getContents());
+            }
+        }
+        return contents;
+    }
+}
@@ -0,0 +1,267 @@
+/**
+ * Copyright 2014 by Andre Beckus
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+
+ *   http://www.apache.org/licenses/LICENSE-2.0
+
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.abcodeworks.webshortcututil.read;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.AsynchronousFileChannel;
+import java.nio.channels.CompletionHandler;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Reads shortcut files without blocking the calling thread.
+ * 
+ * <p>
+ * Each file is read with an {@link AsynchronousFileChannel}, so no thread waits for the I/O, and is then
+ * parsed on the executor supplied by the caller.  The reader is picked by the file extension (see
+ * {@link ShortcutReadUtil#getShortcutReader(Path)}).  The number of files being read or parsed at any one
+ * time is limited; further reads are queued (without blocking the caller) and started as earlier ones
+ * finish, so thousands of files can be submitted at once.
+ * </p>
+ * 
+ * <p>
+ * The futures complete with the same contents as {@link ShortcutReadUtil#read(Path)}, or exceptionally with
+ * the exception it would throw ({@link FileNotFoundException} or {@link ShortcutReadException}).
+ * </p>
+ * 
+ * <p>
+ * Example:
+ * <pre>
+ * ShortcutAsyncReader reader = new ShortcutAsyncReader(ForkJoinPool.commonPool(), 64);
+ * reader.readAsync(Paths.get("Google.url")).thenAccept(contents -&gt; System.out.println(contents.getUrlString()));
+ * </pre>
+ * </p>
+ * 
+ * <p>
+ * A reader may be shared by any number of threads.  The limit applies to all of the reads it has been given.
+ * </p>
+ * 
+ */
+public class ShortcutAsyncReader {
+    private final Executor executor;
+    private final int maxInFlight;
+    
+    // Reads waiting for a free slot, and the number of slots in use.
+    private final Queue<Read> pending = new ConcurrentLinkedQueue<Read>();
+    private final AtomicInteger inFlight = new AtomicInteger();
+    
+    /**
+     * Creates a reader.
+     * 
+     * @param executor The executor used to parse the files.
+     * @param maxInFlight The maximum number of files which may be read or parsed at the same time.
+     */
+    public ShortcutAsyncReader(Executor executor, int maxInFlight) {
+        if(executor == null) {
+            throw new NullPointerException("executor");
+        }
+        if(maxInFlight < 1) {
+            throw new IllegalArgumentException("maxInFlight must be at least 1");
+        }
+        this.executor = executor;
+        this.maxInFlight = maxInFlight;
+    }
+    
+    /**
+     * Reads the specified file.  This method does not block.
+     * 
+     * @param path The file to read.
+     * @return A future for the contents.  Non-null.
+     */
+    public CompletableFuture<ShortcutContents> readAsync(Path path) {
+        CompletableFuture<ShortcutContents> future = new CompletableFuture<ShortcutContents>();
+        ShortcutReader reader = ShortcutReadUtil.getShortcutReader(path);
+        if(reader == null) {
+            future.completeExceptionally(ShortcutReadUtil.INVALID_EXTENSION.toException());
+            return future;
+        }
+        
+        pending.add(new Read(path, reader, future));
+        startPending();
+        return future;
+    }
+    
+    /**
+     * Reads the specified files.  This method does not block.  Use e.g. {@link CompletableFuture#allOf}
+     * to wait for all of them.  A failure only affects the future for that file.
+     * 
+     * @param paths The files to read.
+     * @return The futures for the contents, in the same order as the files.  Non-null.
+     */
+    public List<CompletableFuture<ShortcutContents>> readAllAsync(Collection<? extends Path> paths) {
+        List<CompletableFuture<ShortcutContents>> futures = new ArrayList<CompletableFuture<ShortcutContents>>(paths.size());
+        for(Path path : paths) {
+            futures.add(readAsync(path));
+        }
+        return futures;
+    }
+    
+    /* Starts queued reads while there are free slots. */
+    private void startPending() {
+        while(true) {
+            int count = inFlight.get();
+            if(count >= maxInFlight) {
+                return;
+            }
+            if(!inFlight.compareAndSet(count, count + 1)) {
+                continue;
+            }
+            Read read = pending.poll();
+            if(read == null) {
+                inFlight.decrementAndGet();
+                // A read may have been queued after the poll but before the slot was given back.
+                if(pending.isEmpty()) {
+                    return;
+                }
+                continue;
+            }
+            if(!read.start()) {
+                // Failed straight away (e.g. the file does not exist), so the slot is free again.
+                inFlight.decrementAndGet();
+            }
+        }
+    }
+    
+    /* Called when a read has finished, successfully or not. */
+    private void finished() {
+        inFlight.decrementAndGet();
+        startPending();
+    }
+    
+    /* A single file.  Holds the channel and buffer while it is being read. */
+    private class Read
+            implements CompletionHandler<Integer, Void>, Runnable {
+        private final Path path;
+        private final ShortcutReader reader;
+        private final CompletableFuture<ShortcutContents> future;
+        private AsynchronousFileChannel channel;
+        private ByteBuffer buffer;
+        
+        Read(Path path, ShortcutReader reader, CompletableFuture<ShortcutContents> future) {
+            this.path = path;
+            this.reader = reader;
+            this.future = future;
+        }
+        
+        /* Opens the file and starts reading it.  Returns false if the read has already failed,
+         * in which case the future is complete and finished() is not called. */
+        boolean start() {
+            try {
+                channel = AsynchronousFileChannel.open(path, StandardOpenOption.READ);
+            } catch (IOException e) {
+                // The same as ShortcutReader.openChannel
+                FileNotFoundException fnfe = new FileNotFoundException(path.toString());
+                fnfe.initCause(e);
+                fail(fnfe);
+                return false;
+            }
+            
+            try {
+                long size = channel.size();
+                if(size > reader.getMaxContentLength()) {
+                    fail(ReadLimitException.tooManyBytes(reader.getMaxContentLength()).toResult().toException());
+                    return false;
+                }
+                if(size > Integer.MAX_VALUE) {
+                    throw new IOException("File is too large");
+                }
+                buffer = ByteBuffer.allocate((int)size);
+                channel.read(buffer, 0, null, this);
+                return true;
+            } catch (IOException e) {
+                fail(ioError(e));
+                return false;
+            }
+        }
+        
+        /* I/O completion: read again until the buffer is full or the file ends, then parse. */
+        public void completed(Integer count, Void attachment) {
+            if(count >= 0 && buffer.hasRemaining()) {
+                channel.read(buffer, buffer.position(), null, this);
+                return;
+            }
+            buffer.flip();
+            closeChannel();
+            try {
+                executor.execute(this);
+            } catch (RejectedExecutionException e) {
+                fail(e);
+                finished();
+            }
+        }
+        
+        public void failed(Throwable e, Void attachment) {
+            fail((e instanceof IOException) ? ioError((IOException)e) : e);
+            finished();
+        }
+        
+        /* The exception which ShortcutReadUtil.read(Path) throws for an I/O error. */
+        private ShortcutReadException ioError(IOException e) {
+            return ReadResult.failure(ReadResult.Reason.IO_ERROR, e.toString(), e).toException();
+        }
+        
+        /* Parses the contents on the executor. */
+        public void run() {
+            try {
+                ReadResult result = reader.readResult(buffer).withName(reader.getShortcutName(path.getFileName().toString()));
+                if(result.isSuccess()) {
+                    future.complete(result.getContents());
+                } else {
+                    future.completeExceptionally(result.toException());
+                }
+            } catch (RuntimeException e) {
+                // e.g. a bug in a registered reader
+                future.completeExceptionally(e);
+            } finally {
+                buffer = null;
+                finished();
+            }
+        }
+        
+        private void fail(Throwable e) {
+            closeChannel();
+            buffer = null;
+            future.completeExceptionally(e);
+        }
+        
+        private void closeChannel() {
+            if(channel != null) {
+                try {
+                    channel.close();
+                } catch (IOException e) {
+                    // The contents have already been read (or have failed).
+                }
+                channel = null;
+            }
+        }
+    }
+}
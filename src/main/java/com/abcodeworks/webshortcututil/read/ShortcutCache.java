@@ -0,0 +1,325 @@
+/**
+ * Copyright 2014 by Andre Beckus
+ * 
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+
+ *   http://www.apache.org/licenses/LICENSE-2.0
+
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.abcodeworks.webshortcututil.read;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Caches the results of reading shortcut files, so that reading the same file again only costs
+ * a single file status lookup (no open and no parse) as long as the file has not changed.
+ * 
+ * <p>
+ * Entries are keyed by the absolute path of the file and are only used while the size, last-modified
+ * time and file key (e.g. the inode on Unix systems) of the file are the same as when it was read.
+ * Otherwise the file is read again.  A change which keeps the same size within the resolution of the
+ * file system's timestamps cannot be detected.
+ * </p>
+ * 
+ * <p>
+ * The cache holds at most a fixed number of entries, and the least recently used entries are evicted
+ * when it is full.  It is split into independently locked segments, so it can be used by many threads
+ * at once (e.g. from a {@link ShortcutScanListener}).  Failures such as a file which is not a valid
+ * shortcut are cached as well, but errors reading a file are not.
+ * </p>
+ * 
+ * <p>
+ * Example:
+ * <pre>
+ * ShortcutCache cache = new ShortcutCache(10000);
+ * ShortcutContents contents = cache.read(myFile);
+ * </pre>
+ * </p>
+ * 
+ */
+public class ShortcutCache {
+    /** The maximum number of independently locked segments. */
+    static final int MAX_SEGMENTS = 16;
+    
+    // The reader used for every file, or null to choose one by extension.
+    private final ShortcutReader reader;
+    private final int maximumSize;
+    private final Segment[] segments;
+    
+    private final AtomicLong hits = new AtomicLong(),
+                             misses = new AtomicLong(),
+                             evictions = new AtomicLong();
+    
+    /**
+     * Creates a cache which picks the reader for each file by extension
+     * (see {@link ShortcutReadUtil#getShortcutReader(Path)}).
+     * 
+     * @param maximumSize The maximum number of files in the cache.
+     */
+    public ShortcutCache(int maximumSize) {
+        this(null, maximumSize);
+    }
+    
+    /**
+     * Creates a cache which reads every file with the specified reader.
+     * 
+     * @param reader The reader to use, or null to pick the reader for each file by extension.
+     * @param maximumSize The maximum number of files in the cache.
+     */
+    public ShortcutCache(ShortcutReader reader, int maximumSize) {
+        if(maximumSize < 1) {
+            throw new IllegalArgumentException("maximumSize must be at least 1");
+        }
+        this.reader = reader;
+        this.maximumSize = maximumSize;
+        
+        // Use fewer segments for tiny caches so that every segment can hold at least one entry.
+        int count = 1;
+        while(count < MAX_SEGMENTS && count * 2 <= maximumSize) {
+            count *= 2;
+        }
+        segments = new Segment[count];
+        for(int i = 0; i < count; i++) {
+            segments[i] = new Segment(maximumSize / count + (i < maximumSize % count ? 1 : 0));
+        }
+    }
+    
+    /**
+     * Reads the specified file, using the cached contents if the file has not changed.
+     * See {@link ShortcutReadUtil#read(File)} for details.
+     * 
+     * @param file The file to read
+     * @return A ShortcutContents class containing the name and URL of the shortcut.  Non-null.
+     * @throws FileNotFoundException If the file does not exist or cannot be accessed.
+     * @throws ShortcutReadException If any error occurs while reading the file.
+     */
+    public ShortcutContents read(File file)
+            throws FileNotFoundException,
+                   ShortcutReadException {
+        return read(file.toPath());
+    }
+    
+    /**
+     * Reads the specified file, using the cached contents if the file has not changed.
+     * See {@link ShortcutReadUtil#read(Path)} for details.
+     * 
+     * @param path The file to read
+     * @return A ShortcutContents class containing the name and URL of the shortcut.  Non-null.
+     * @throws FileNotFoundException If the file does not exist or cannot be accessed.
+     * @throws ShortcutReadException If any error occurs while reading the file.
+     */
+    public ShortcutContents read(Path path)
+            throws FileNotFoundException,
+                   ShortcutReadException {
+        ReadResult result = readResult(path);
+        result.rethrowFileNotFound();
+        result.getUrlStringOrThrow();
+        return result.getContents();
+    }
+    
+    /**
+     * Reads the specified file, using the cached result if the file has not changed.
+     * See {@link ShortcutReadUtil#readResult(File)} for details.
+     * 
+     * @param file The file to read
+     * @return The result.  Non-null.
+     */
+    public ReadResult readResult(File file) {
+        return readResult(file.toPath());
+    }
+    
+    /**
+     * Reads the specified file, using the cached result if the file has not changed.
+     * See {@link ShortcutReadUtil#readResult(Path)} for details.
+     * 
+     * @param path The file to read
+     * @return The result.  Non-null.
+     */
+    public ReadResult readResult(Path path) {
+        ShortcutReader fileReader = (reader != null) ? reader : ShortcutReadUtil.getShortcutReader(path);
+        if(fileReader == null) {
+            return ShortcutReadUtil.INVALID_EXTENSION;
+        }
+        
+        Path key = path.toAbsolutePath().normalize();
+        Segment segment = segmentFor(key);
+        
+        // The status is taken before reading, so a change while the file is being read
+        // makes the entry out of date rather than hiding the change.
+        BasicFileAttributes attrs;
+        try {
+            attrs = Files.readAttributes(path, BasicFileAttributes.class);
+        } catch (IOException e) {
+            segment.remove(key);
+            FileNotFoundException fnfe = new FileNotFoundException(path.toString());
+            fnfe.initCause(e);
+            return ReadResult.failure(ReadResult.Reason.IO_ERROR, fnfe.toString(), fnfe);
+        }
+        
+        Entry entry = segment.get(key);
+        if(entry != null && entry.matches(attrs)) {
+            hits.incrementAndGet();
+            return entry.result;
+        }
+        misses.incrementAndGet();
+        
+        ReadResult result = fileReader.readResult(path);
+        if(result.getStatus() == ReadResult.Status.IO_ERROR) {
+            // The error may be temporary, so try again next time.
+            segment.remove(key);
+        } else {
+            segment.put(key, new Entry(attrs, result));
+        }
+        return result;
+    }
+    
+    /**
+     * Removes the entry for the specified file, if there is one.
+     * 
+     * @param path The file.
+     */
+    public void invalidate(Path path) {
+        Path key = path.toAbsolutePath().normalize();
+        segmentFor(key).remove(key);
+    }
+    
+    /**
+     * Removes all entries.  The counters are not reset.
+     */
+    public void clear() {
+        for(Segment segment : segments) {
+            segment.clear();
+        }
+    }
+    
+    /**
+     * Returns the number of files in the cache.
+     */
+    public int size() {
+        int size = 0;
+        for(Segment segment : segments) {
+            size += segment.size();
+        }
+        return size;
+    }
+    
+    /**
+     * Returns the maximum number of files in the cache.
+     */
+    public int getMaximumSize() {
+        return maximumSize;
+    }
+    
+    /**
+     * Returns the number of reads which used a cached result.
+     */
+    public long getHitCount() {
+        return hits.get();
+    }
+    
+    /**
+     * Returns the number of reads which had to read the file (because it was not
+     * in the cache or had changed).
+     */
+    public long getMissCount() {
+        return misses.get();
+    }
+    
+    /**
+     * Returns the number of entries which have been evicted to make room for others.
+     */
+    public long getEvictionCount() {
+        return evictions.get();
+    }
+    
+    private Segment segmentFor(Path key) {
+        int hash = key.hashCode();
+        hash ^= (hash >>> 16);
+        return segments[hash & (segments.length - 1)];
+    }
+    
+    /* A cached result, along with the status of the file when it was read. */
+    private static class Entry {
+        final long size;
+        final FileTime lastModifiedTime;
+        final Object fileKey;
+        final ReadResult result;
+        
+        Entry(BasicFileAttributes attrs, ReadResult result) {
+            this.size = attrs.size();
+            this.lastModifiedTime = attrs.lastModifiedTime();
+            this.fileKey = attrs.fileKey();
+            this.result = result;
+        }
+        
+        boolean matches(BasicFileAttributes attrs) {
+            return size == attrs.size()
+                    && lastModifiedTime.equals(attrs.lastModifiedTime())
+                    && (fileKey == null ? attrs.fileKey() == null : fileKey.equals(attrs.fileKey()));
+        }
+    }
+    
+    /* One independently locked part of the cache, kept in access order. */
+    private class Segment {
+        private final int capacity;
+        private final LinkedHashMap<Path, Entry> entries;
+        
+        Segment(int capacity) {
+            this.capacity = capacity;
+            this.entries = new LinkedHashMap<Path, Entry>(16, 0.75f, true) {
+                private static final long serialVersionUID = 1L;
+                
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<Path, Entry> eldest) {
+                    if(size() > Segment.this.capacity) {
+                        evictions.incrementAndGet();
+                        return true;
+                    }
+                    return false;
+                }
+            };
+        }
+        
+        synchronized Entry get(Path key) {
+            return entries.get(key);
+        }
+        
+        synchronized void put(Path key, Entry entry) {
+            entries.put(key, entry);
+        }
+        
+        synchronized void remove(Path key) {
+            entries.remove(key);
+        }
+        
+        synchronized void clear() {
+            entries.clear();
+        }
+        
+        synchronized int size() {
+            return entries.size();
+        }
+    }
+}
@@ -0,0 +1,53 @@
+/**
+ * Copyright 2014 by Andre Beckus
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+
+ *   http://www.apache.org/licenses/LICENSE-2.0
+
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.abcodeworks.webshortcututil.read;
+
+/**
+ * The types of shortcut that can be recognized by looking at the contents of a shortcut
+ * (see {@link com.abcodeworks.webshortcututil.read.ShortcutReadUtil#detectFormat(java.io.InputStream) ShortcutReadUtil.detectFormat}).
+ *
+ */
+public enum ShortcutFormat {
+    /** Windows shortcut with a .url extension. */
+    URL("url"),
+    /** Windows shortcut with a .website extension. */
+    WEBSITE("website"),
+    /** FreeDesktop shortcut with a .desktop extension. */
+    DESKTOP("desktop"),
+    /** Apple shortcut with a .webloc extension (binary or XML). */
+    WEBLOC("webloc");
+
+    private final String extension;
+
+    private ShortcutFormat(String extension) {
+        this.extension = extension;
+    }
+
+    /**
+     * Indicates the standard extension used for this type of shortcut.
+     *
+     * @return The extension, without a period (e.g. "url", "desktop", "webloc").  Non-null.
+     */
+    public String getExtension() {
+        return extension;
+    }
+}
@@ -0,0 +1,152 @@
+/**
+ * Copyright 2014 by Andre Beckus
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+
+ *   http://www.apache.org/licenses/LICENSE-2.0
+
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.abcodeworks.webshortcututil.read;
+
+/**
+ * Works out the type of a shortcut by looking at the first few bytes of its contents.
+ *
+ * <p>
+ * The rules follow what the readers themselves accept, so that the detected reader is
+ * the same one the old trial-and-error approach would have ended up using:
+ * <ul>
+ * <li>"bplist" magic - a binary webloc.</li>
+ * <li>"&lt;" (e.g. &lt;?xml or &lt;plist), "{" or "(" - an XML or ASCII webloc.</li>
+ * <li>Otherwise the contents are treated as an INI file and the first section header decides:
+ *     [Desktop Entry] or [KDE Desktop Entry] is a .desktop file, a GUID section (e.g. [{000214A0-...}])
+ *     is a .website file, and anything else (e.g. [InternetShortcut] or [DEFAULT]) is a .url file.
+ *     The exception is a file starting with a comment: one starting with ';' can only be read
+ *     as a .url file and one starting with '#' can only be read as a .desktop file.</li>
+ * </ul>
+ * </p>
+ */
+final class ShortcutFormatDetector {
+    private static final byte[] BPLIST_MAGIC = { 'b', 'p', 'l', 'i', 's', 't' };
+
+    private static final byte[] DESKTOP_ENTRY_HEADER = { 'D', 'e', 's', 'k', 't', 'o', 'p', ' ', 'E', 'n', 't', 'r', 'y' },
+                                KDE_DESKTOP_ENTRY_HEADER = { 'K', 'D', 'E', ' ', 'D', 'e', 's', 'k', 't', 'o', 'p', ' ', 'E', 'n', 't', 'r', 'y' };
+
+    private ShortcutFormatDetector() {
+    }
+
+    private static boolean isSpace(byte b) {
+        return b == ' ' || b == '\t' || b == '\n' || b == '\u000B' || b == '\f' || b == '\r';
+    }
+
+    private static boolean regionEquals(byte[] bytes, int start, int end, byte[] expected) {
+        if(end - start != expected.length) {
+            return false;
+        }
+        for(int i = 0; i < expected.length; i++) {
+            if(bytes[start + i] != expected[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Detects the shortcut type.
+     *
+     * @param bytes The start of the shortcut contents.
+     * @param offset Offset of the first byte.
+     * @param length Number of bytes available.
+     * @param complete True if the bytes are the entire contents, false if they are only a prefix.
+     * @return The type of shortcut, or null if the contents are not recognized.
+     */
+    static ShortcutFormat detect(byte[] bytes, int offset, int length, boolean complete) {
+        int end = offset + length;
+        if(length == 0) {
+            return null;
+        }
+
+        if(length >= BPLIST_MAGIC.length && regionEquals(bytes, offset, offset + BPLIST_MAGIC.length, BPLIST_MAGIC)) {
+            return ShortcutFormat.WEBLOC;
+        }
+
+        // Skip a UTF-8 byte order mark and any whitespace to look for a plist.
+        int i = offset;
+        if(length >= 3 && bytes[i] == (byte)0xEF && bytes[i + 1] == (byte)0xBB && bytes[i + 2] == (byte)0xBF) {
+            i += 3;
+        }
+        while(i < end && isSpace(bytes[i])) {
+            i++;
+        }
+        if(i < end && (bytes[i] == '<' || bytes[i] == '{' || bytes[i] == '(')) {
+            return ShortcutFormat.WEBLOC;
+        }
+
+        // From here on, it must be an INI file.  The readers only accept files
+        // that start with whitespace, a comment or a header.
+        byte first = bytes[offset];
+        if(first != ';' && first != '#' && first != '[' && !isSpace(first)) {
+            return null;
+        }
+
+        // Find the first header.
+        i = offset;
+        while(i < end) {
+            int lineEnd = i;
+            while(lineEnd < end && bytes[lineEnd] != '\n' && bytes[lineEnd] != '\r') {
+                lineEnd++;
+            }
+            if(lineEnd == end && !complete) {
+                // This line may be cut off - stop here.
+                break;
+            }
+
+            int start = i,
+                last = lineEnd - 1;
+            while(start < lineEnd && isSpace(bytes[start])) {
+                start++;
+            }
+            while(last > start && isSpace(bytes[last])) {
+                last--;
+            }
+            if(start < lineEnd && bytes[start] == '[' && last > start && bytes[last] == ']') {
+                // A file starting with a comment can only be read by one of the readers.
+                if(first == ';') {
+                    return ShortcutFormat.URL;
+                } else if(first == '#') {
+                    return ShortcutFormat.DESKTOP;
+                } else if(regionEquals(bytes, start + 1, last, DESKTOP_ENTRY_HEADER)
+                        || regionEquals(bytes, start + 1, last, KDE_DESKTOP_ENTRY_HEADER)) {
+                    return ShortcutFormat.DESKTOP;
+                } else if(last > start + 1 && bytes[start + 1] == '{') {
+                    return ShortcutFormat.WEBSITE;
+                } else {
+                    return ShortcutFormat.URL;
+                }
+            }
+
+            i = lineEnd + 1;
+        }
+
+        if(complete) {
+            // An INI file without any sections cannot contain a URL.
+            return null;
+        }
+
+        // No header in the prefix (e.g. a long list of comments).  Only the .url
+        // reader tolerates arbitrary lines before the first header.
+        return (first == '#') ? ShortcutFormat.DESKTOP : ShortcutFormat.URL;
+    }
+}
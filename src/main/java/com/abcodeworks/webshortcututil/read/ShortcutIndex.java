@@ -0,0 +1,642 @@
+/**
+ * Copyright 2014 by Andre Beckus
+ * 
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+
+ *   http://www.apache.org/licenses/LICENSE-2.0
+
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.abcodeworks.webshortcututil.read;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+
+/**
+ * A persistent index of the shortcuts in one or more directory trees, so that a tree can be
+ * rescanned after a restart without reading every shortcut again.
+ * 
+ * <p>
+ * For each shortcut (any file with a shortcut extension, see {@link ShortcutReadUtil#hasValidExtension(Path)}),
+ * the index records the path, size, last-modified time, detected format (see {@link ShortcutReadUtil#detectFormat(byte[], int, int)})
+ * and the result of reading it (the name and URL, or the reason it could not be read).  When a tree is rescanned
+ * ({@link #rescan(Path)}), only files which are new or whose size or last-modified time has changed are read,
+ * so the time taken is mostly spent listing the directories.
+ * </p>
+ * 
+ * <p>
+ * The index file is append-only: each change is written as a record at the end of the file, and the whole
+ * file is loaded with a single sequential read when the index is opened.  Each record carries a checksum,
+ * so a record which was only partly written (e.g. because of a crash) is detected and discarded.  Records
+ * which have been superseded are removed by {@link #compact()}, which rewrites the file.  This is done
+ * automatically after a rescan once superseded records outnumber the live ones.
+ * </p>
+ * 
+ * <p>
+ * The entries may be read from any thread.  Changes to the index are serialized.
+ * </p>
+ * 
+ * <p>
+ * Example:
+ * <pre>
+ * ShortcutIndex index = ShortcutIndex.open(Paths.get("bookmarks.idx"));
+ * try {
+ *     index.rescan(Paths.get("/home/me/bookmarks"));
+ *     for(ShortcutIndex.Entry entry : index.getEntries()) {
+ *         System.out.println(entry.getPath() + ": " + entry.getUrlString());
+ *     }
+ * } finally {
+ *     index.close();
+ * }
+ * </pre>
+ * </p>
+ * 
+ */
+public class ShortcutIndex
+        implements Closeable {
+    private static final byte[] MAGIC = { 'W', 'S', 'U', 'I', 'N', 'D', 'E', 'X' };
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = MAGIC.length + 4;
+    
+    private static final byte RECORD_PUT = 1,
+                              RECORD_REMOVE = 2;
+    
+    /* Compaction is not worthwhile until there are at least this many superseded records. */
+    static final int MIN_COMPACTION_GARBAGE = 1024;
+    
+    private static final int IO_BUFFER_SIZE = 64 * 1024;
+    
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+    
+    /**
+     * The indexed information about one shortcut file.
+     */
+    public static final class Entry {
+        private final Path path;
+        private final long size,
+                           lastModifiedNanos;
+        private final ShortcutFormat format;
+        private final ReadResult result;
+        
+        Entry(Path path, long size, long lastModifiedNanos, ShortcutFormat format, ReadResult result) {
+            this.path = path;
+            this.size = size;
+            this.lastModifiedNanos = lastModifiedNanos;
+            this.format = format;
+            this.result = result;
+        }
+        
+        /**
+         * Returns the absolute path of the file.
+         */
+        public Path getPath() {
+            return path;
+        }
+        
+        /**
+         * Returns the size of the file when it was read.
+         */
+        public long getSize() {
+            return size;
+        }
+        
+        /**
+         * Returns the last-modified time of the file when it was read, in milliseconds since the epoch.
+         */
+        public long getLastModifiedTime() {
+            return TimeUnit.NANOSECONDS.toMillis(lastModifiedNanos);
+        }
+        
+        /**
+         * Returns the format detected from the contents of the file.
+         * 
+         * @return The format, or null if it was not recognized.
+         */
+        public ShortcutFormat getFormat() {
+            return format;
+        }
+        
+        /**
+         * Returns the result of reading the file.
+         * 
+         * @return The result.  Non-null.  If successful, the name is set.
+         */
+        public ReadResult getResult() {
+            return result;
+        }
+        
+        /**
+         * Returns the name of the shortcut, or null if the file could not be read.
+         */
+        public String getName() {
+            return result.getName();
+        }
+        
+        /**
+         * Returns the URL of the shortcut, or null if the file could not be read.
+         */
+        public String getUrlString() {
+            return result.getUrlString();
+        }
+        
+        boolean matches(BasicFileAttributes attrs) {
+            return size == attrs.size() && lastModifiedNanos == attrs.lastModifiedTime().to(TimeUnit.NANOSECONDS);
+        }
+    }
+    
+    private final Path indexFile;
+    private final ConcurrentMap<Path, Entry> entries = new ConcurrentHashMap<Path, Entry>();
+    private DataOutputStream out;
+    // The number of records in the index file (live or superseded).
+    private long recordCount;
+    
+    private ShortcutIndex(Path indexFile) {
+        this.indexFile = indexFile;
+    }
+    
+    /**
+     * Opens an index, loading the existing entries if the index file exists.
+     * 
+     * @param indexFile The index file.  It is created if it does not exist.
+     * @return The index.  It should be closed when no longer needed.
+     * @throws IOException If the file cannot be read or written, or is not an index file.
+     */
+    public static ShortcutIndex open(Path indexFile)
+            throws IOException {
+        ShortcutIndex index = new ShortcutIndex(indexFile);
+        long validLength = Files.exists(indexFile) ? index.load() : -1;
+        
+        if(validLength < 0) {
+            index.rewrite();
+        } else {
+            if(validLength < Files.size(indexFile)) {
+                // Discard a partly written record at the end.
+                FileChannel channel = FileChannel.open(indexFile, StandardOpenOption.WRITE);
+                try {
+                    channel.truncate(validLength);
+                } finally {
+                    channel.close();
+                }
+            }
+            index.out = newOutput(indexFile, true);
+        }
+        return index;
+    }
+    
+    private static DataOutputStream newOutput(Path file, boolean append)
+            throws IOException {
+        return new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file.toFile(), append), IO_BUFFER_SIZE));
+    }
+    
+    /* Loads the records from the index file.  Returns the length of the valid part of the file. */
+    private long load()
+            throws IOException {
+        InputStream stream = Files.newInputStream(indexFile);
+        try {
+            long fileLength = Files.size(indexFile);
+            DataInputStream in = new DataInputStream(new BufferedInputStream(stream, IO_BUFFER_SIZE));
+            
+            byte[] magic = new byte[MAGIC.length];
+            int version;
+            try {
+                in.readFully(magic);
+                version = in.readInt();
+            } catch (EOFException e) {
+                // Never got as far as writing the header.
+                return -1;
+            }
+            if(!Arrays.equals(magic, MAGIC) || version != VERSION) {
+                throw new IOException("Not a shortcut index: " + indexFile);
+            }
+            
+            long validLength = HEADER_SIZE;
+            CRC32 crc = new CRC32();
+            byte[] record = new byte[256];
+            while(true) {
+                int length;
+                long checksum;
+                try {
+                    length = in.readInt();
+                    checksum = in.readInt() & 0xFFFFFFFFL;
+                    // A length which is negative or runs past the end of the file is a torn
+                    // or corrupted record, and must not be used to size the buffer.
+                    if(length < 0 || length > fileLength - validLength - 8) {
+                        break;
+                    }
+                    if(record.length < length) {
+                        record = new byte[Math.max(length, record.length * 2)];
+                    }
+                    in.readFully(record, 0, length);
+                } catch (EOFException e) {
+                    break;
+                }
+                
+                crc.reset();
+                crc.update(record, 0, length);
+                if(crc.getValue() != checksum) {
+                    break;
+                }
+                
+                try {
+                    apply(new DataInputStream(new ByteArrayInputStream(record, 0, length)));
+                } catch (IOException e) {
+                    // The record is framed correctly but its contents make no sense, so it is dropped.
+                }
+                recordCount++;
+                validLength += 8 + length;
+            }
+            return validLength;
+        } finally {
+            stream.close();
+        }
+    }
+    
+    /* Applies one record read from the index file.  Throws an IOException if the record is invalid. */
+    private void apply(DataInputStream in)
+            throws IOException {
+        byte type = in.readByte();
+        Path path = indexFile.getFileSystem().getPath(readString(in));
+        if(type == RECORD_REMOVE) {
+            entries.remove(path);
+            return;
+        }
+        
+        long size = in.readLong(),
+             lastModifiedNanos = in.readLong();
+        int format = in.readByte(),
+            reason = in.readByte();
+        String name = readString(in),
+               url = readString(in),
+               message = readString(in);
+        
+        ReadResult.Reason[] reasons = ReadResult.Reason.values();
+        ShortcutFormat[] formats = ShortcutFormat.values();
+        if(reason < 0 || reason >= reasons.length || format < -1 || format >= formats.length) {
+            throw new IOException("Invalid index record");
+        }
+        
+        ReadResult result;
+        if(reason == ReadResult.Reason.NONE.ordinal()) {
+            result = ReadResult.success(url).withName(name);
+        } else {
+            result = ReadResult.failure(reasons[reason], message);
+        }
+        entries.put(path, new Entry(path, size, lastModifiedNanos, (format == -1) ? null : formats[format], result));
+    }
+    
+    private static String readString(DataInputStream in)
+            throws IOException {
+        int length = in.readInt();
+        if(length < 0) {
+            return null;
+        }
+        // The record is in memory, so available() is exact.
+        if(length > in.available()) {
+            throw new EOFException();
+        }
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, UTF8);
+    }
+    
+    private static void writeString(DataOutputStream out, String str)
+            throws IOException {
+        if(str == null) {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] bytes = str.getBytes(UTF8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+    
+    /* Writes one record, framed by its length and checksum. */
+    private static void writeRecord(DataOutputStream out, byte type, Entry entry, Path path)
+            throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(256);
+        DataOutputStream record = new DataOutputStream(bytes);
+        record.writeByte(type);
+        writeString(record, path.toString());
+        if(type == RECORD_PUT) {
+            ReadResult result = entry.getResult();
+            record.writeLong(entry.size);
+            record.writeLong(entry.lastModifiedNanos);
+            record.writeByte((entry.format == null) ? -1 : entry.format.ordinal());
+            record.writeByte(result.getReason().ordinal());
+            writeString(record, result.getName());
+            writeString(record, result.getUrlString());
+            writeString(record, result.getMessage());
+        }
+        record.flush();
+        
+        CRC32 crc = new CRC32();
+        byte[] payload = bytes.toByteArray();
+        crc.update(payload);
+        out.writeInt(payload.length);
+        out.writeInt((int)crc.getValue());
+        out.write(payload);
+    }
+    
+    private void append(byte type, Entry entry, Path path)
+            throws IOException {
+        if(out == null) {
+            throw new IOException("The index is closed");
+        }
+        writeRecord(out, type, entry, path);
+        recordCount++;
+    }
+    
+    /**
+     * Returns the entry for the specified file.
+     * 
+     * @param path The file.
+     * @return The entry, or null if the file is not in the index.
+     */
+    public Entry get(Path path) {
+        return entries.get(path.toAbsolutePath().normalize());
+    }
+    
+    /**
+     * Returns all of the entries.  The collection reflects later changes to the index.
+     */
+    public Collection<Entry> getEntries() {
+        return Collections.unmodifiableCollection(entries.values());
+    }
+    
+    /**
+     * Returns the number of files in the index.
+     */
+    public int size() {
+        return entries.size();
+    }
+    
+    /**
+     * Brings the index up to date with a single file: the file is read if it is new or has changed,
+     * and removed from the index if it no longer exists.
+     * 
+     * @param path The file.
+     * @return The entry for the file, or null if it does not exist or is not a shortcut.
+     * @throws IOException If the index file cannot be written.
+     */
+    public synchronized Entry update(Path path)
+            throws IOException {
+        Path key = path.toAbsolutePath().normalize();
+        BasicFileAttributes attrs;
+        try {
+            attrs = Files.readAttributes(key, BasicFileAttributes.class);
+        } catch (IOException e) {
+            remove(key);
+            return null;
+        }
+        return update(key, attrs);
+    }
+    
+    /* Updates the entry for a file which has just been stat'ed. */
+    private Entry update(Path key, BasicFileAttributes attrs)
+            throws IOException {
+        ShortcutReader reader = ShortcutReadUtil.getShortcutReader(key);
+        if(reader == null || !attrs.isRegularFile()) {
+            remove(key);
+            return null;
+        }
+        
+        Entry entry = entries.get(key);
+        if(entry != null && entry.matches(attrs)) {
+            return entry;
+        }
+        
+        // The status was taken before reading, so a change while reading is picked up next time.
+        ByteBuffer contents;
+        try {
+            contents = ShortcutReader.readContents(key);
+        } catch (IOException e) {
+            // Probably deleted or locked - leave the entry (if any) alone until the next scan.
+            return entry;
+        }
+        
+        ReadResult result = reader.readResult(contents).withName(reader.getShortcutName(key.getFileName().toString()));
+        entry = new Entry(key, attrs.size(), attrs.lastModifiedTime().to(TimeUnit.NANOSECONDS), detectFormat(contents), result);
+        append(RECORD_PUT, entry, key);
+        entries.put(key, entry);
+        return entry;
+    }
+    
+    private static ShortcutFormat detectFormat(ByteBuffer contents) {
+        if(contents.hasArray()) {
+            return ShortcutReadUtil.detectFormat(contents.array(), contents.arrayOffset() + contents.position(), contents.remaining());
+        }
+        byte[] prefix = new byte[Math.min(contents.remaining(), ShortcutReadUtil.FORMAT_DETECTION_PREFIX_SIZE + 1)];
+        contents.duplicate().get(prefix);
+        return ShortcutReadUtil.detectFormat(prefix, 0, prefix.length);
+    }
+    
+    /**
+     * Removes a file from the index.
+     * 
+     * @param path The file.
+     * @return True if the file was in the index.
+     * @throws IOException If the index file cannot be written.
+     */
+    public synchronized boolean remove(Path path)
+            throws IOException {
+        Path key = path.toAbsolutePath().normalize();
+        if(!entries.containsKey(key)) {
+            return false;
+        }
+        append(RECORD_REMOVE, null, key);
+        entries.remove(key);
+        return true;
+    }
+    
+    /**
+     * Brings the index up to date with a directory tree.  New and changed shortcuts are read,
+     * and shortcuts which no longer exist are removed.  Files which have not changed are not opened.
+     * 
+     * @param root The directory to scan.
+     * @return The number of files which were read.
+     * @throws IOException If the root does not exist ({@link FileNotFoundException}) or the index file cannot be written.
+     *                     Files and directories which cannot be accessed are skipped, and
+     *                     their existing entries are kept.
+     */
+    public synchronized int rescan(Path root)
+            throws IOException {
+        if(!Files.exists(root)) {
+            throw new FileNotFoundException(root.toString());
+        }
+        
+        final Path rootKey = root.toAbsolutePath().normalize();
+        final Set<Path> seen = new HashSet<Path>();
+        final List<Path> failed = new ArrayList<Path>();
+        final int[] readCount = { 0 };
+        
+        Files.walkFileTree(rootKey, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs)
+                    throws IOException {
+                if(attrs.isRegularFile() && ShortcutReadUtil.hasValidExtension(file)) {
+                    Entry before = entries.get(file);
+                    Entry after = update(file, attrs);
+                    if(after != null) {
+                        seen.add(file);
+                        if(after != before) {
+                            readCount[0]++;
+                        }
+                    }
+                }
+                return FileVisitResult.CONTINUE;
+            }
+            
+            @Override
+            public FileVisitResult visitFileFailed(Path file, IOException e) {
+                failed.add(file);
+                return FileVisitResult.CONTINUE;
+            }
+        });
+        
+        // Anything under the root which was not seen has been deleted.
+        for(Path key : new ArrayList<Path>(entries.keySet())) {
+            if(key.startsWith(rootKey) && !seen.contains(key) && !isUnder(key, failed)) {
+                remove(key);
+            }
+        }
+        
+        flush();
+        if(out != null && recordCount - entries.size() >= Math.max(MIN_COMPACTION_GARBAGE, entries.size())) {
+            compact();
+        }
+        return readCount[0];
+    }
+    
+    private static boolean isUnder(Path key, List<Path> parents) {
+        for(Path parent : parents) {
+            if(key.startsWith(parent)) {
+                return true;
+            }
+        }
+        return false;
+    }
+    
+    /**
+     * Rewrites the index file so that it only contains the live entries.  The new file
+     * is written alongside the old one and then moved over it.
+     * 
+     * @throws IOException If the index file cannot be written.
+     */
+    public synchronized void compact()
+            throws IOException {
+        if(out == null) {
+            throw new IOException("The index is closed");
+        }
+        out.close();
+        out = null;
+        try {
+            rewrite();
+        } finally {
+            if(out == null) {
+                // The old file is still valid, so carry on appending to it.
+                out = newOutput(indexFile, true);
+            }
+        }
+    }
+    
+    /* Writes all of the entries to a new index file, replaces the old file
+     * and leaves the new file open for appending. */
+    private void rewrite()
+            throws IOException {
+        Path dir = indexFile.toAbsolutePath().getParent();
+        Path temp = Files.createTempFile(dir, indexFile.getFileName().toString(), ".tmp");
+        try {
+            FileOutputStream stream = new FileOutputStream(temp.toFile());
+            try {
+                DataOutputStream tempOut = new DataOutputStream(new BufferedOutputStream(stream, IO_BUFFER_SIZE));
+                tempOut.write(MAGIC);
+                tempOut.writeInt(VERSION);
+                for(Entry entry : entries.values()) {
+                    writeRecord(tempOut, RECORD_PUT, entry, entry.getPath());
+                }
+                tempOut.flush();
+                stream.getFD().sync();
+            } finally {
+                stream.close();
+            }
+            
+            try {
+                Files.move(temp, indexFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temp, indexFile, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+        recordCount = entries.size();
+        out = newOutput(indexFile, true);
+    }
+    
+    /**
+     * Writes any buffered records to the index file.
+     * 
+     * @throws IOException If the index file cannot be written.
+     */
+    public synchronized void flush()
+            throws IOException {
+        if(out != null) {
+            out.flush();
+        }
+    }
+    
+    /**
+     * Writes any buffered records and closes the index file.  The entries can still be read,
+     * but the index can no longer be changed.
+     */
+    public synchronized void close()
+            throws IOException {
+        if(out != null) {
+            out.close();
+            out = null;
+        }
+    }
+}
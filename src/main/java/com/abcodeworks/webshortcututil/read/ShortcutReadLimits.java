@@ -0,0 +1,110 @@
+/**
+ * Copyright 2014 by Andre Beckus
+ * 
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+
+ *   http://www.apache.org/licenses/LICENSE-2.0
+
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.abcodeworks.webshortcututil.read;
+
+/**
+ * Limits on the input which the text-based readers ({@link UrlShortcutReader}, {@link WebsiteShortcutReader}
+ * and {@link DesktopShortcutReader}) will parse.  The {@link WeblocShortcutReader} only applies the
+ * {@link #getMaxBytes() byte limit}.
+ * 
+ * <p>
+ * Shortcuts are tiny, so anything much larger is almost certainly not a shortcut, or is a file crafted
+ * to tie up the reader (e.g. a single 2 GB line).  When a limit is exceeded the reader stops at once
+ * and reports a {@link ReadResult.Reason#LIMIT_EXCEEDED} result (or throws a
+ * {@link ShortcutLimitExceededException}), so the cost of a bad file is bounded by the limits.
+ * </p>
+ * 
+ * <p>
+ * The {@link #DEFAULT default} limits are far above anything a real shortcut needs, but low enough
+ * for reading untrusted files.  Use {@link #UNLIMITED} to get the old behavior of reading until
+ * the end of the input.
+ * </p>
+ * 
+ * <p>
+ * Example:
+ * <pre>
+ * ShortcutReader reader = new UrlShortcutReader(new ShortcutReadLimits(16 * 1024, 4096, 500));
+ * </pre>
+ * </p>
+ * 
+ */
+public final class ShortcutReadLimits {
+    /** The default maximum number of bytes: 256 KB. */
+    public static final long DEFAULT_MAX_BYTES = 256 * 1024;
+    /** The default maximum length of a line, in characters. */
+    public static final int DEFAULT_MAX_LINE_LENGTH = 16 * 1024;
+    /** The default maximum number of lines. */
+    public static final int DEFAULT_MAX_LINES = 10000;
+    
+    /** The limits used by readers created without any limits. */
+    public static final ShortcutReadLimits DEFAULT = new ShortcutReadLimits(DEFAULT_MAX_BYTES, DEFAULT_MAX_LINE_LENGTH, DEFAULT_MAX_LINES);
+    
+    /** No limits at all.  Only use this for trusted input. */
+    public static final ShortcutReadLimits UNLIMITED = new ShortcutReadLimits(Long.MAX_VALUE, Integer.MAX_VALUE, Integer.MAX_VALUE);
+    
+    private final long maxBytes;
+    private final int maxLineLength,
+                      maxLines;
+    
+    /**
+     * Creates a set of limits.
+     * 
+     * @param maxBytes The maximum number of bytes which are read.
+     * @param maxLineLength The maximum length of a line in characters (not counting the line terminator).
+     * @param maxLines The maximum number of lines.
+     */
+    public ShortcutReadLimits(long maxBytes, int maxLineLength, int maxLines) {
+        if(maxBytes < 1) {
+            throw new IllegalArgumentException("maxBytes must be at least 1");
+        }
+        if(maxLineLength < 1) {
+            throw new IllegalArgumentException("maxLineLength must be at least 1");
+        }
+        if(maxLines < 1) {
+            throw new IllegalArgumentException("maxLines must be at least 1");
+        }
+        this.maxBytes = maxBytes;
+        this.maxLineLength = maxLineLength;
+        this.maxLines = maxLines;
+    }
+    
+    /**
+     * Returns the maximum number of bytes.  Files, buffers and archive entries which are larger are
+     * rejected before they are parsed.  For streams, the bytes are counted as they are read, so a
+     * reader which finds what it needs early (e.g. a .desktop reader) may succeed on a longer stream.
+     */
+    public long getMaxBytes() {
+        return maxBytes;
+    }
+    
+    public int getMaxLineLength() {
+        return maxLineLength;
+    }
+    
+    public int getMaxLines() {
+        return maxLines;
+    }
+    
+    @Override
+    public String toString() {
+        return "ShortcutReadLimits[maxBytes=" + maxBytes + ", maxLineLength=" + maxLineLength + ", maxLines=" + maxLines + "]";
+    }
+}
@@ -21,13 +21,16 @@
 
 package com.abcodeworks.webshortcututil.read;
 
-import java.io.BufferedInputStream;
-import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.InputStreamReader;
+import java.io.SequenceInputStream;
+import java.nio.file.Path;
+import java.util.Locale;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 /**
  * Provides helper functions for reading shortcuts.
@@ -46,19 +49,64 @@ import java.io.InputStreamReader;
 
 public class ShortcutReadUtil {
     /** 
-     * The default buffer size used by {@link #readUrlStringTrialAndError(InputStream)}.
+     * The buffer size that used to be used by {@link #readUrlStringTrialAndError(InputStream)}.
+     * 
+     * @deprecated The shortcut type is now detected from a small prefix of the stream
+     *             (see {@link #FORMAT_DETECTION_PREFIX_SIZE}), so no buffer size is needed.
      */
+    @Deprecated
     public static final int DEFAULT_TRIAL_AND_ERROR_BUFFER_SIZE = 8192;
     
+    /**
+     * The maximum number of bytes examined by {@link #detectFormat(InputStream)}.
+     */
+    public static final int FORMAT_DETECTION_PREFIX_SIZE = 1024;
+    
+    // The built-in readers are stateless, so one instance of each is shared.
+    static final ShortcutReader URL_READER = new UrlShortcutReader(),
+                                WEBSITE_READER = new WebsiteShortcutReader(),
+                                DESKTOP_READER = new DesktopShortcutReader(),
+                                WEBLOC_READER = new WeblocShortcutReader();
+    
+    // Expected failures
+    static final ReadResult INVALID_EXTENSION = ReadResult.failure(ReadResult.Reason.INVALID_EXTENSION, "Invalid file extension"),
+                            UNKNOWN_FORMAT = ReadResult.failure(ReadResult.Reason.UNKNOWN_FORMAT, "The shortcut is not recognized as a known type");
+    
+    // Readers keyed by lower-case extension (without the period).
+    private static final ConcurrentMap<String, ShortcutReader> readers = new ConcurrentHashMap<String, ShortcutReader>();
+    static {
+        for(ShortcutFormat format : ShortcutFormat.values()) {
+            readers.put(format.getExtension(), getShortcutReader(format));
+        }
+    }
+    
     /**
      * Returns a shortcut reader class appropriate for reading the specified file (based on the extension).
+     * The readers are thread-safe and the same instance is returned for every file with the same extension.
      * 
      * @param file The shortcut file.
      * @return The appropriate reader class, or null if the file does not have a valid shortcut extension.
      */
     public static ShortcutReader getShortcutReader(File file) {
-        String filename = file.getName();
-        
+        return getShortcutReader(file.getName());
+    }
+    
+    /**
+     * Returns a shortcut reader class appropriate for reading the specified file (based on the extension).
+     * 
+     * @param path The shortcut file.
+     * @return The appropriate reader class, or null if the file does not have a valid shortcut extension.
+     */
+    public static ShortcutReader getShortcutReader(Path path) {
+        Path filename = path.getFileName();
+        if(filename == null) {
+            return null;
+        }
+        return getShortcutReader(filename.toString());
+    }
+    
+    /* Returns a shortcut reader class based on the extension of the file name. */
+    static ShortcutReader getShortcutReader(String filename) {
         // Find the last dot (the one right before the extension).
         int last_dot = filename.lastIndexOf('.');
         if(last_dot == -1) {
@@ -71,19 +119,48 @@ public class ShortcutReadUtil {
             return null;
         }
 
-        // Extract the extension and get the appropriate reader class.
-        String extension = filename.substring(last_dot + 1);
-        if(extension.equalsIgnoreCase("url")) {
-            return new UrlShortcutReader();
-        } else if(extension.equalsIgnoreCase("website")) {
-            return new WebsiteShortcutReader();
-        } else if(extension.equalsIgnoreCase("webloc")) {
-            return new WeblocShortcutReader();
-        } else if(extension.equalsIgnoreCase("desktop")) {
-            return new DesktopShortcutReader();
+        // Extract the extension and look up the appropriate reader class.
+        String extension = filename.substring(extension_start);
+        return readers.get(extension.toLowerCase(Locale.ROOT));
+    }
+    
+    /**
+     * Registers a reader for files with the specified extension, so that it is used by
+     * {@link #getShortcutReader(File)}, {@link #hasValidExtension(File)}, {@link #read(File)}
+     * and the other extension-based methods.  This may be used to add support for other shortcut
+     * formats, or to replace one of the built-in readers.
+     * 
+     * <p>
+     * The same reader instance is handed out to every caller, so it must be thread-safe.
+     * </p>
+     * 
+     * @param extension The extension, without a period (e.g. "url").  Extensions are not case-sensitive.
+     * @param reader The reader to use.
+     * @return The reader previously registered for the extension, or null if there was none.
+     */
+    public static ShortcutReader registerShortcutReader(String extension, ShortcutReader reader) {
+        if(reader == null) {
+            throw new NullPointerException("reader");
         }
-
-        return null;
+        return readers.put(normalizeExtension(extension), reader);
+    }
+    
+    /**
+     * Removes the reader registered for the specified extension, so that files with
+     * the extension are no longer recognized as shortcuts.
+     * 
+     * @param extension The extension, without a period (e.g. "url").  Extensions are not case-sensitive.
+     * @return The reader which was registered for the extension, or null if there was none.
+     */
+    public static ShortcutReader unregisterShortcutReader(String extension) {
+        return readers.remove(normalizeExtension(extension));
+    }
+    
+    private static String normalizeExtension(String extension) {
+        if(extension.isEmpty() || extension.indexOf('.') != -1) {
+            throw new IllegalArgumentException("Invalid extension: " + extension);
+        }
+        return extension.toLowerCase(Locale.ROOT);
     }
     
     /**
@@ -97,6 +174,16 @@ public class ShortcutReadUtil {
         return getShortcutReader(file) != null;
     }
     
+    /**
+     * Checks to see if the file is a valid shortcut (based on the extension).
+     * 
+     * @param path The shortcut file.
+     * @return True if the file extension indicates the file is a shortcut.
+     */
+    public static boolean hasValidExtension(Path path) {
+        return getShortcutReader(path) != null;
+    }
+    
     /**
      * Reads the specified file and extracts the contents.  The type of
      * shortcut file is determined by the file extension.
@@ -128,6 +215,60 @@ public class ShortcutReadUtil {
         return reader.read(file);
     }
 
+    /**
+     * Reads the specified file and extracts the contents.  See {@link #read(File)} for details.
+     *
+     * @param path The file to read
+     * @return A ShortcutContents class containing the name and URL of the shortcut.  Non-null.  The name and URL will be non-null as well.
+     * @throws FileNotFoundException
+     * @throws ShortcutReadException If any error occurs while reading the file.
+     */
+    public static ShortcutContents read(Path path)
+            throws FileNotFoundException,
+                   ShortcutReadException {
+        ShortcutReader reader = getShortcutReader(path);
+        if(reader == null) {
+            throw new ShortcutReadException("Invalid file extension");
+        }
+        return reader.read(path);
+    }
+
+    /**
+     * Reads the specified file without throwing exceptions for expected failures.
+     * The type of shortcut file is determined by the file extension.
+     * 
+     * <p>
+     * This is intended for reading large numbers of files, where many of them may not be valid
+     * shortcuts.  See {@link #read(File)} for details of how the file is read.
+     * </p>
+     *
+     * @param file The file to read
+     * @return The result.  Non-null.  A file without a shortcut extension gives a
+     *         {@link ReadResult.Reason#INVALID_EXTENSION} result.
+     */
+    public static ReadResult readResult(File file) {
+        ShortcutReader reader = getShortcutReader(file);
+        if(reader == null) {
+            return INVALID_EXTENSION;
+        }
+        return reader.readResult(file);
+    }
+
+    /**
+     * Reads the specified file without throwing exceptions for expected failures.
+     * See {@link #readResult(File)} for details.
+     *
+     * @param path The file to read
+     * @return The result.  Non-null.
+     */
+    public static ReadResult readResult(Path path) {
+        ShortcutReader reader = getShortcutReader(path);
+        if(reader == null) {
+            return INVALID_EXTENSION;
+        }
+        return reader.readResult(path);
+    }
+
     /**
      * Similar to {@link #read(File)}, but only returns the URL.
      *
@@ -142,53 +283,135 @@ public class ShortcutReadUtil {
         return read(file).getUrlString();
     }
     
-    /* Attempts to read from the buffered stream using the specified reader.  If the reader throws
-     * an exception then reset the stream for the next attempt.
-     * If we cannot reset the buffer, assume the reader read too many characters and throw an exception.
-     */
-    protected static String readUrlStringAttempt(ShortcutReader reader, BufferedInputStream bufferedStream, int bufferSize)
-            throws ShortcutReadException {
-        try {
-            bufferedStream.mark(bufferSize);
-            return reader.readUrlString(bufferedStream);
-        } catch(ShortcutReadException sre) {
-            // The reader failed: reset the stream
-            try {
-                bufferedStream.reset();
-                return null;
-            } catch(IOException ioe) {
-                throw new ShortcutReadException("Error resetting input stream - buffer size is too small", ioe);
+    /* Returns the built-in reader for a detected shortcut type. */
+    static ShortcutReader getShortcutReader(ShortcutFormat format) {
+        switch(format) {
+        case URL:
+            return URL_READER;
+        case WEBSITE:
+            return WEBSITE_READER;
+        case DESKTOP:
+            return DESKTOP_READER;
+        case WEBLOC:
+            return WEBLOC_READER;
+        default:
+            return null;
+        }
+    }
+    
+    /* Reads up to buffer.length bytes, stopping early only at the end of the stream. */
+    static int readPrefix(InputStream stream, byte[] buffer)
+            throws IOException {
+        int length = 0;
+        while(length < buffer.length) {
+            int count = stream.read(buffer, length, buffer.length - length);
+            if(count < 0) {
+                break;
             }
-        // Default handler for any unexpected problems.
-        } catch(Exception e) {
-            throw new ShortcutReadException("Error when trying to read shortcut", e);
+            length += count;
         }
+        return length;
+    }
+    
+    /**
+     * Determines the type of a shortcut by looking at the start of its contents.
+     * 
+     * <p>
+     * Only the first {@link #FORMAT_DETECTION_PREFIX_SIZE} bytes are examined:
+     * binary webloc files are recognized by their "bplist" magic number, XML webloc files by
+     * the leading "&lt;" (e.g. &lt;?xml or &lt;plist) and the other types by the first section header
+     * (e.g. [InternetShortcut] or [Desktop Entry]).
+     * </p>
+     * 
+     * @param bytes The shortcut contents (or the start of them).
+     * @param offset The offset of the first byte of the contents.
+     * @param length The number of bytes in the contents.
+     * @return The type of shortcut, or null if the type is not recognized.
+     */
+    public static ShortcutFormat detectFormat(byte[] bytes, int offset, int length) {
+        int prefixLength = Math.min(length, FORMAT_DETECTION_PREFIX_SIZE);
+        return ShortcutFormatDetector.detect(bytes, offset, prefixLength, prefixLength == length);
+    }
+    
+    /**
+     * Determines the type of a shortcut by looking at the start of the stream.
+     * See {@link #detectFormat(byte[], int, int)} for details.
+     * 
+     * <p>
+     * Up to {@link #FORMAT_DETECTION_PREFIX_SIZE} bytes are read from the stream.  If the stream supports
+     * mark/reset it is reset afterwards, otherwise the bytes are consumed.  To detect the type
+     * and read the shortcut in one pass, use {@link #readUrlStringTrialAndError(InputStream)}.
+     * </p>
+     * 
+     * @param stream The stream to examine.  The stream is not closed.
+     * @return The type of shortcut, or null if the type is not recognized.
+     * @throws IOException If an error occurs while reading the stream.
+     */
+    public static ShortcutFormat detectFormat(InputStream stream)
+            throws IOException {
+        byte[] prefix = new byte[FORMAT_DETECTION_PREFIX_SIZE];
+        boolean marked = stream.markSupported();
+        if(marked) {
+            stream.mark(prefix.length);
+        }
+        int length = readPrefix(stream, prefix);
+        if(marked) {
+            stream.reset();
+        }
+        return ShortcutFormatDetector.detect(prefix, 0, length, length < prefix.length);
     }
 
     /**
      * Reads a shortcut of unknown type from the specified stream.
      *
      * <p>
-     * Because no file is available, here is no way to determine the shortcut type based on the extension.
-     * As the name implies, this method tries reading the stream as each type of shortcut
-     * to see which one works.
+     * Because no file is available, there is no way to determine the shortcut type based on the extension.
+     * Instead, the type is detected from the start of the stream (see {@link #detectFormat(InputStream)})
+     * and the stream is passed straight to the appropriate reader.  The bytes used for detection are
+     * replayed to the reader, so the stream is only read once and does not need to support mark/reset.
      * </p>
      * 
      * <p>
-     * Because the input stream can only be read one time, this method uses a buffer to allow the 
-     * stream contents to be repeatedly read.  The default buffer size is indicated by {@link #DEFAULT_TRIAL_AND_ERROR_BUFFER_SIZE}.
-     * Due to the limited buffer size, there is a small chance that this method will not work.
-     * The buffer size may be increased in size by using {@link #readUrlStringTrialAndError(InputStream, int)}.
+     * The name of the method comes from earlier versions, which tried reading the stream as each
+     * type of shortcut to see which one worked.
      * </p>
      *
      * @param stream The stream to read.  The stream is not closed.
      * @return The URL as a string.  Non-null.
-     * @throws FileNotFoundException
      * @throws ShortcutReadException If the shortcut type cannot be determined, or if any error occurs while reading the file.
      */
     public static String readUrlStringTrialAndError(InputStream stream)
             throws ShortcutReadException {
-        return readUrlStringTrialAndError(stream, DEFAULT_TRIAL_AND_ERROR_BUFFER_SIZE);
+        return readResultTrialAndError(stream).getUrlStringOrThrow();
+    }
+
+    /**
+     * Reads a shortcut of unknown type from the specified stream without throwing exceptions
+     * for expected failures.  See {@link #readUrlStringTrialAndError(InputStream)} for details.
+     *
+     * @param stream The stream to read.  The stream is not closed.
+     * @return The result.  Non-null.  Contents of an unknown type give a
+     *         {@link ReadResult.Reason#UNKNOWN_FORMAT} result.
+     */
+    public static ReadResult readResultTrialAndError(InputStream stream) {
+        byte[] prefix = new byte[FORMAT_DETECTION_PREFIX_SIZE];
+        int length;
+        try {
+            length = readPrefix(stream, prefix);
+        } catch(IOException e) {
+            return ReadResult.failure(ReadResult.Reason.IO_ERROR, "Error when trying to read shortcut", e);
+        }
+        
+        ShortcutFormat format = ShortcutFormatDetector.detect(prefix, 0, length, length < prefix.length);
+        if(format == null) {
+            return UNKNOWN_FORMAT;
+        }
+
+        // Put the detected bytes back in front of the rest of the stream.  SequenceInputStream closes
+        // each stream when it reaches its end, and the caller's stream must be left open.
+        InputStream replayStream = new SequenceInputStream(new ByteArrayInputStream(prefix, 0, length),
+                                                           new NonClosingInputStream(stream));
+        return getShortcutReader(format).readResult(replayStream);
     }
 
     
@@ -196,45 +419,15 @@ public class ShortcutReadUtil {
      * Reads a shortcut of unknown type from the specified stream.  See {@link #readUrlStringTrialAndError(InputStream)} for details.
      * 
      * @param stream The stream to read.  The stream is not closed.
-     * @param bufferSize The buffer size to use when reading the stream.
+     * @param bufferSize Ignored.
      * @return The URL as a string.  Non-null.
      * @throws ShortcutReadException If the shortcut type cannot be determined, or if any error occurs while reading the file.
+     * @deprecated The stream is no longer buffered for repeated attempts, so the buffer size is not needed.
+     *             Use {@link #readUrlStringTrialAndError(InputStream)} instead.
      */
+    @Deprecated
     public static String readUrlStringTrialAndError(InputStream stream, int bufferSize)
             throws ShortcutReadException {
-        String url = null;
-
-        // Create a buffer so that we can make multiple read attempts
-        BufferedInputStream bufferedStream = new BufferedInputStream(stream, bufferSize);
-        assert(bufferedStream.markSupported());
-        
-        // Attempt reading the file as a .url
-        url = readUrlStringAttempt(new UrlShortcutReader(), bufferedStream, bufferSize);
-        if(url != null) {
-            return url;
-        }
-        // We will not attempt to read the stream as a WEBSITE shortcut - the URL and WEBSITE implementations
-        // are the same.
-        
-       // Attempt reading the file as a .desktop
-        url = readUrlStringAttempt(new DesktopShortcutReader(), bufferedStream, bufferSize);
-        if(url != null) {
-            return url;
-        }
-        
-        // Attempt reading the file as a .webloc.
-        // We leave this for last since the plist library closes the stream.
-        // This means this method is not working as specified - consider it a bug.
-        // It looks like this will be changed in a future version of the library.
-        // The latest version loads the entire shortcut into memory, so we probably
-        // should still leave the webloc for last.
-        // Once the new version is posted to the Maven repository, we should be able
-        // to start using it...
-        url = readUrlStringAttempt(new WeblocShortcutReader(), bufferedStream, bufferSize);
-        if(url != null) {
-            return url;
-        }
-        
-        throw new ShortcutReadException("The shortcut is not recognized as a known type");
+        return readUrlStringTrialAndError(stream);
     }
 }
@@ -21,26 +21,56 @@
 
 package com.abcodeworks.webshortcututil.read;
 
+import java.io.ByteArrayInputStream;
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
 /**
  * Parent class for readers.
+ * 
+ * <p>
+ * Readers must be thread-safe.  The built-in readers keep no state between calls, so a single
+ * instance can be shared by any number of threads (this is how
+ * {@link com.abcodeworks.webshortcututil.read.ShortcutReadUtil#getShortcutReader(File) ShortcutReadUtil.getShortcutReader}
+ * hands them out).  Readers registered with
+ * {@link com.abcodeworks.webshortcututil.read.ShortcutReadUtil#registerShortcutReader ShortcutReadUtil.registerShortcutReader}
+ * are shared in the same way.
+ * </p>
  */
 
 public abstract class ShortcutReader {
+    /* Files at least this large are memory-mapped instead of being read into a heap buffer.
+     * Shortcuts are normally tiny, so this only kicks in for unusual files. */
+    static final long MAPPED_READ_THRESHOLD = 1024 * 1024;
+    
     /* Common patterns which appear in Desktop, URL, and Website files.
-     * Note that these patterns are fairly relaxed and allow a lot of whitespace.*/
-    protected Pattern
+     * Note that these patterns are fairly relaxed and allow a lot of whitespace.
+     * They are compiled once and shared (Pattern is thread-safe).
+     * The built-in readers use IniLineScanner instead, but the patterns are kept for subclasses.
+     * 
+     * The quantifiers are possessive, so matching takes time linear in the length of the line
+     * (the value used to be matched lazily, which is quadratic on a long run of whitespace).
+     * The value is a sequence of runs of non-whitespace, and of whitespace which is followed
+     * by more of the value, so it ends up without the trailing whitespace as before. */
+    static final Pattern
         // Header e.g. [MyHeader]
-        header = Pattern.compile("^\\s*\\[.*\\]\\s*$"),
+        HEADER_PATTERN = Pattern.compile("^\\s*+\\[.*\\]\\s*+$"),
         // Key/Value pair e.g. MyKey=MyValue
-        key_value_pattern = Pattern.compile("^\\s*([A-Za-z0-9-]*)(\\[([^\\[\\]]*)\\])?\\s*=\\s*([^\\n\\r]*?)\\s*$");
+        KEY_VALUE_PATTERN = Pattern.compile("^\\s*+([A-Za-z0-9-]*+)(\\[([^\\[\\]]*+)\\])?+\\s*+=\\s*+((?:\\S++|[^\\S\\n\\r]++(?=\\S))*+)\\s*+$");
+    
+    /* The patterns used by this reader.  They start out as the shared patterns above,
+     * and a subclass may replace them with its own. */
+    protected Pattern
+        header = HEADER_PATTERN,
+        key_value_pattern = KEY_VALUE_PATTERN;
     
     /* Checks if str matches the specified pattern. */
     protected boolean matches(Pattern p, String str)
@@ -53,17 +83,92 @@ public abstract class ShortcutReader {
      * name of the file.
      */
     protected String getShortcutName(File file) {
-        String name = file.getName();
-       
+        return getShortcutName(file.getName());
+    }
+    
+    /* Gets the shortcut name from a file name (without any directories). */
+    protected String getShortcutName(String name) {
         // Remove the extension
         int extension_start = name.lastIndexOf('.');
         if (extension_start > 0) {
-        name = name.substring(0, extension_start);
+            name = name.substring(0, extension_start);
         }
        
         return name;
-	}
-	
+    }
+    
+    /* The largest contents the reader will parse (see ShortcutReadLimits).  Files which are
+     * larger are rejected before anything is read.  Not limited by default. */
+    long getMaxContentLength() {
+        return Long.MAX_VALUE;
+    }
+    
+    /* Opens a file for reading.
+     * Failing to open the file is reported as a FileNotFoundException, the same as FileInputStream.
+     */
+    static FileChannel openChannel(Path path)
+            throws FileNotFoundException {
+        try {
+            return FileChannel.open(path, StandardOpenOption.READ);
+        } catch (IOException e) {
+            FileNotFoundException fnfe = new FileNotFoundException(path.toString());
+            fnfe.initCause(e);
+            throw fnfe;
+        }
+    }
+    
+    /* Reads the entire contents of a file using a single channel read
+     * (or a memory mapping for large files).
+     * Failing to open the file is reported as a FileNotFoundException, the same as FileInputStream.
+     */
+    static ByteBuffer readContents(Path path)
+            throws FileNotFoundException,
+                   IOException {
+        return readContents(path, Long.MAX_VALUE);
+    }
+    
+    /* Same as readContents(Path), but throws a ReadLimitException without reading
+     * anything if the file is larger than maxLength. */
+    static ByteBuffer readContents(Path path, long maxLength)
+            throws FileNotFoundException,
+                   IOException {
+        FileChannel channel = openChannel(path);
+        try {
+            long size = channel.size();
+            if(size > maxLength) {
+                throw ReadLimitException.tooManyBytes(maxLength);
+            }
+            if(size > Integer.MAX_VALUE) {
+                throw new IOException("File is too large");
+            }
+            if(size >= MAPPED_READ_THRESHOLD) {
+                return channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            }
+            
+            ByteBuffer buffer = ByteBuffer.allocate((int)size);
+            // A single read normally fills the buffer; only loop if the OS returns less.
+            while(buffer.hasRemaining() && channel.read(buffer) >= 0) {
+            }
+            buffer.flip();
+            return buffer;
+        } finally {
+            channel.close();
+        }
+    }
+    
+    /* Reads a file into memory and parses it, without adding the name to the result. */
+    ReadResult readUrlResult(Path path) {
+        ByteBuffer contents;
+        try {
+            contents = readContents(path, getMaxContentLength());
+        } catch (ReadLimitException e) {
+            return e.toResult();
+        } catch (IOException e) {
+            return ReadResult.failure(ReadResult.Reason.IO_ERROR, e.toString(), e);
+        }
+        return readResult(contents);
+    }
+    
     /**
      * Reads the URL contained in the specified file.
      * 
@@ -72,37 +177,160 @@ public abstract class ShortcutReader {
      * @throws FileNotFoundException
      * @throws ShortcutReadException If any error occurs while reading the file.
      */
-	public String readUrlString(File file)
-	            throws FileNotFoundException,
-	                   ShortcutReadException
-	{
-	    // We need to open a stream since the core implementation deals with streams.
-	    FileInputStream stream = new FileInputStream(file);
-	    String url = readUrlString(stream);
-	    return url;
-	}
+    public String readUrlString(File file)
+                throws FileNotFoundException,
+                       ShortcutReadException
+    {
+        return readUrlString(file.toPath());
+    }
+    
+    /**
+     * Reads the URL contained in the specified file.
+     * 
+     * The whole file is read with a single channel read and then parsed in memory
+     * (see {@link #readUrlString(ByteBuffer)}).
+     * 
+     * @param path The file to read from.
+     * @return The URL as a string.  Non-null.
+     * @throws FileNotFoundException If the file cannot be opened.
+     * @throws ShortcutReadException If any error occurs while reading the file.
+     */
+    public String readUrlString(Path path)
+                throws FileNotFoundException,
+                       ShortcutReadException
+    {
+        ReadResult result = readUrlResult(path);
+        result.rethrowFileNotFound();
+        return result.getUrlStringOrThrow();
+    }
 
     /**
      * Reads the URL contained in the specified stream.
      * 
      * @param stream The input stream to read from.  The stream is not closed.
      * @return The URL as a string.  Non-null.
-     * @throws FileNotFoundException
      * @throws ShortcutReadException If any error occurs while reading the file.
      */
-	abstract public String readUrlString(InputStream stream)
-	            throws ShortcutReadException;
-    
-	/**
-	 * Reads the specified file and extracts the contents.
-	 * 
-	 * See {@link com.abcodeworks.webshortcututil.read.ShortcutReadUtil#read ShortcutReadUtil.read} for details.
-	 * 
+    abstract public String readUrlString(InputStream stream)
+                throws ShortcutReadException;
+    
+    /**
+     * Reads the URL contained in the specified buffer.
+     * 
+     * The built-in readers parse the bytes directly.  The default implementation
+     * wraps the buffer in a stream and calls {@link #readUrlString(InputStream)}.
+     * 
+     * @param buffer The shortcut contents, from the buffer's position to its limit.  The buffer's position is not changed.
+     * @return The URL as a string.  Non-null.
+     * @throws ShortcutReadException If any error occurs while reading the contents.
+     */
+    public String readUrlString(ByteBuffer buffer)
+                throws ShortcutReadException {
+        return readResult(buffer).getUrlStringOrThrow();
+    }
+    
+    /* Wraps the remaining contents of a buffer in a stream, without changing the buffer's position.
+     * Heap buffers are not copied. */
+    static InputStream newInputStream(ByteBuffer buffer) {
+        if(buffer.hasArray()) {
+            return new ByteArrayInputStream(buffer.array(), buffer.arrayOffset() + buffer.position(), buffer.remaining());
+        } else {
+            byte[] bytes = new byte[buffer.remaining()];
+            buffer.duplicate().get(bytes);
+            return new ByteArrayInputStream(bytes);
+        }
+    }
+    
+    /**
+     * Reads the URL contained in the specified byte array.  See {@link #readUrlString(ByteBuffer)}.
+     * 
+     * @param bytes The array containing the shortcut contents.
+     * @param offset The offset of the first byte of the contents.
+     * @param length The number of bytes in the contents.
+     * @return The URL as a string.  Non-null.
+     * @throws ShortcutReadException If any error occurs while reading the contents.
+     */
+    public String readUrlString(byte[] bytes, int offset, int length)
+                throws ShortcutReadException {
+        return readUrlString(ByteBuffer.wrap(bytes, offset, length));
+    }
+    
+    /**
+     * Reads the URL contained in the specified stream, reporting failures as a result instead of an exception.
+     * 
+     * The built-in readers do not create any exceptions for expected failures (e.g. contents which are not
+     * a shortcut).  The default implementation calls {@link #readUrlString(InputStream)} and converts
+     * any exception to a {@link ReadResult.Reason#MALFORMED} result.
+     * 
+     * @param stream The input stream to read from.  The stream is not closed.
+     * @return The result.  Non-null.  The name is not set.
+     */
+    public ReadResult readResult(InputStream stream) {
+        try {
+            return ReadResult.success(readUrlString(stream));
+        } catch (ShortcutReadException e) {
+            return ReadResult.failure(ReadResult.Reason.MALFORMED, e.getMessage(), e.getCause());
+        }
+    }
+    
+    /**
+     * Reads the URL contained in the specified buffer, reporting failures as a result instead of an exception.
+     * See {@link #readUrlString(ByteBuffer)} and {@link #readResult(InputStream)}.
+     * 
+     * @param buffer The shortcut contents, from the buffer's position to its limit.  The buffer's position is not changed.
+     * @return The result.  Non-null.  The name is not set.
+     */
+    public ReadResult readResult(ByteBuffer buffer) {
+        return readResult(newInputStream(buffer));
+    }
+    
+    /**
+     * Reads the URL contained in the specified byte array, reporting failures as a result instead of an exception.
+     * See {@link #readResult(ByteBuffer)}.
+     * 
+     * @param bytes The array containing the shortcut contents.
+     * @param offset The offset of the first byte of the contents.
+     * @param length The number of bytes in the contents.
+     * @return The result.  Non-null.  The name is not set.
+     */
+    public ReadResult readResult(byte[] bytes, int offset, int length) {
+        return readResult(ByteBuffer.wrap(bytes, offset, length));
+    }
+    
+    /**
+     * Reads the specified file, reporting failures as a result instead of an exception.
+     * See {@link #read(Path)} and {@link #readResult(InputStream)}.
+     * 
+     * @param path The file to read
+     * @return The result.  Non-null.  If successful, the name is set.
+     *         A file which cannot be opened gives a {@link ReadResult.Reason#IO_ERROR} result
+     *         with a {@link FileNotFoundException} cause.
+     */
+    public ReadResult readResult(Path path) {
+        return readUrlResult(path).withName(getShortcutName(path.getFileName().toString()));
+    }
+    
+    /**
+     * Reads the specified file, reporting failures as a result instead of an exception.
+     * See {@link #readResult(Path)}.
+     * 
+     * @param file The file to read
+     * @return The result.  Non-null.  If successful, the name is set.
+     */
+    public ReadResult readResult(File file) {
+        return readResult(file.toPath());
+    }
+    
+    /**
+     * Reads the specified file and extracts the contents.
+     * 
+     * See {@link com.abcodeworks.webshortcututil.read.ShortcutReadUtil#read ShortcutReadUtil.read} for details.
+     * 
      * @param file The file to read
      * @return A ShortcutContents class containing the name and URL of the shortcut.  Non-null.  The name and URL will be non-null as well.
      * @throws FileNotFoundException
      * @throws ShortcutReadException If any error occurs while reading the file.
-	 */
+     */
     public ShortcutContents read(File file)
             throws FileNotFoundException,
                    ShortcutReadException {
@@ -110,4 +338,20 @@ public abstract class ShortcutReader {
                 getShortcutName(file),
                 readUrlString(file));
     }
+    
+    /**
+     * Similar to {@link #read(File)}, but reads the file using a single channel read (see {@link #readUrlString(Path)}).
+     * 
+     * @param path The file to read
+     * @return A ShortcutContents class containing the name and URL of the shortcut.  Non-null.  The name and URL will be non-null as well.
+     * @throws FileNotFoundException If the file cannot be opened.
+     * @throws ShortcutReadException If any error occurs while reading the file.
+     */
+    public ShortcutContents read(Path path)
+            throws FileNotFoundException,
+                   ShortcutReadException {
+        return new ShortcutContents(
+                getShortcutName(path.getFileName().toString()),
+                readUrlString(path));
+    }
 }
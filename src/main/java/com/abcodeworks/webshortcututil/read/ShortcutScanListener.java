@@ -0,0 +1,54 @@
+/**
+ * Copyright 2014 by Andre Beckus
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+
+ *   http://www.apache.org/licenses/LICENSE-2.0
+
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.abcodeworks.webshortcututil.read;
+
+import java.nio.file.Path;
+
+/**
+ * Receives the results of a {@link ShortcutScanner} scan as each shortcut is read.
+ * 
+ * <p>
+ * The methods are called from the threads that read the shortcuts, so several
+ * calls may be in progress at the same time.  Implementations must be thread-safe.
+ * </p>
+ * 
+ */
+public interface ShortcutScanListener {
+    /**
+     * Called when a shortcut has been read successfully.
+     * 
+     * @param path The shortcut file.
+     * @param contents The contents of the shortcut.  Non-null.
+     */
+    void shortcutRead(Path path, ShortcutContents contents);
+    
+    /**
+     * Called when a shortcut could not be read, or when a file or directory could not be visited.
+     * The scan carries on with the remaining files.
+     * 
+     * @param path The file or directory that failed.
+     * @param result The reason for the failure.  Files and directories which could not be accessed
+     *               give a {@link ReadResult.Status#IO_ERROR} result, with the
+     *               {@link java.io.IOException} available from {@link ReadResult#getCause()}.
+     */
+    void shortcutFailed(Path path, ReadResult result);
+}
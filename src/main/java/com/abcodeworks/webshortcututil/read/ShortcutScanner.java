@@ -0,0 +1,275 @@
+/**
+ * Copyright 2014 by Andre Beckus
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+
+ *   http://www.apache.org/licenses/LICENSE-2.0
+
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.abcodeworks.webshortcututil.read;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.file.FileVisitOption;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.EnumSet;
+import java.util.Set;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+
+/**
+ * Reads all of the shortcuts in a directory tree, parsing files in parallel.
+ * 
+ * <p>
+ * The tree is walked lazily with {@link Files#walkFileTree}, and each file with a shortcut extension
+ * (see {@link ShortcutReadUtil#hasValidExtension(Path)}) is handed to an executor to be read.
+ * Results are passed to a {@link ShortcutScanListener} as soon as each file has been read,
+ * so the full list of files is never held in memory.  Files are read with
+ * {@link ShortcutReader#readResult(Path)}, so files which are not valid shortcuts do not cost an exception.  The number of files queued or being read
+ * at any one time is limited, and the walk pauses while the limit is reached.
+ * </p>
+ * 
+ * <p>
+ * Example:
+ * <pre>
+ * new ShortcutScanner().scan(Paths.get("/home/me/bookmarks"), new ShortcutScanListener() {
+ *     public void shortcutRead(Path path, ShortcutContents contents) {
+ *         System.out.println(contents.getName() + ": " + contents.getUrlString());
+ *     }
+ *     public void shortcutFailed(Path path, ReadResult result) {
+ *         System.err.println(path + ": " + result.getMessage());
+ *     }
+ * });
+ * </pre>
+ * </p>
+ * 
+ * <p>
+ * A scanner may be used for several scans, including concurrent scans.
+ * </p>
+ * 
+ */
+public class ShortcutScanner {
+    /** The number of in-flight files allowed for each reading thread by default. */
+    static final int DEFAULT_IN_FLIGHT_PER_THREAD = 4;
+    
+    private final Executor executor;
+    private final int threads;
+    private final int maxInFlight;
+    // Volatile, since scans may run on other threads.  Each scan reads it once, when it starts.
+    private volatile boolean followLinks = false;
+    
+    /**
+     * Creates a scanner which reads files using one thread per available processor.
+     * A new thread pool is created for each scan and shut down when the scan ends.
+     */
+    public ShortcutScanner() {
+        this(Runtime.getRuntime().availableProcessors());
+    }
+    
+    /**
+     * Creates a scanner which reads files using the specified number of threads.
+     * A new thread pool is created for each scan and shut down when the scan ends.
+     * 
+     * @param threads The number of threads used to read files.
+     */
+    public ShortcutScanner(int threads) {
+        if(threads < 1) {
+            throw new IllegalArgumentException("threads must be at least 1");
+        }
+        this.executor = null;
+        this.threads = threads;
+        this.maxInFlight = threads * DEFAULT_IN_FLIGHT_PER_THREAD;
+    }
+    
+    /**
+     * Creates a scanner which reads files on the specified executor (e.g. a
+     * {@link java.util.concurrent.ForkJoinPool} or a pool shared with other work).
+     * The executor is not shut down by the scanner.
+     * 
+     * @param executor The executor used to read files.
+     * @param maxInFlight The maximum number of files which may be queued or being read at the same time.
+     */
+    public ShortcutScanner(Executor executor, int maxInFlight) {
+        if(executor == null) {
+            throw new NullPointerException("executor");
+        }
+        if(maxInFlight < 1) {
+            throw new IllegalArgumentException("maxInFlight must be at least 1");
+        }
+        this.executor = executor;
+        this.threads = 0;
+        this.maxInFlight = maxInFlight;
+    }
+    
+    /**
+     * Indicates whether symbolic links to directories are followed.  The default is false.
+     */
+    public boolean getFollowLinks() {
+        return followLinks;
+    }
+    
+    /**
+     * Sets whether symbolic links to directories are followed.  Cycles are reported
+     * to the listener as a {@link java.nio.file.FileSystemLoopException}.
+     * The setting is read when a scan starts, so a change does not affect scans which are already running.
+     */
+    public void setFollowLinks(boolean followLinks) {
+        this.followLinks = followLinks;
+    }
+    
+    /**
+     * Reads all of the shortcuts under the specified directory.  This method returns once
+     * every shortcut has been read and the listener has been called for it.
+     * 
+     * @param root The directory to scan.  If this is a file, just that file is read.
+     * @param listener Receives the result for each shortcut.
+     * @throws IOException If the root cannot be accessed, or if the scan is interrupted
+     *                     ({@link InterruptedIOException}).  Errors for individual files and
+     *                     directories are passed to the listener instead.
+     */
+    public void scan(Path root, ShortcutScanListener listener)
+            throws IOException {
+        if(!Files.exists(root)) {
+            throw new FileNotFoundException(root.toString());
+        }
+        Set<FileVisitOption> options = followLinks ? EnumSet.of(FileVisitOption.FOLLOW_LINKS) : EnumSet.noneOf(FileVisitOption.class);
+        
+        ExecutorService ownExecutor = null;
+        Executor scanExecutor = executor;
+        if(scanExecutor == null) {
+            ownExecutor = Executors.newFixedThreadPool(threads);
+            scanExecutor = ownExecutor;
+        }
+        
+        Scan scan = new Scan(scanExecutor, listener);
+        try {
+            Files.walkFileTree(root, options, Integer.MAX_VALUE, scan);
+        } finally {
+            try {
+                scan.awaitCompletion();
+            } finally {
+                if(ownExecutor != null) {
+                    ownExecutor.shutdown();
+                }
+            }
+        }
+    }
+    
+    /* Walks the tree for a single scan and submits the files to the executor. */
+    private class Scan
+            extends SimpleFileVisitor<Path> {
+        private final Executor executor;
+        private final ShortcutScanListener listener;
+        private final Semaphore inFlight = new Semaphore(maxInFlight);
+        
+        Scan(Executor executor, ShortcutScanListener listener) {
+            this.executor = executor;
+            this.listener = listener;
+        }
+        
+        @Override
+        public FileVisitResult visitFile(Path file, BasicFileAttributes attrs)
+                throws IOException {
+            if(!attrs.isRegularFile()) {
+                return FileVisitResult.CONTINUE;
+            }
+            ShortcutReader reader = ShortcutReadUtil.getShortcutReader(file);
+            if(reader == null) {
+                return FileVisitResult.CONTINUE;
+            }
+            
+            // Wait for a free slot so the queue does not grow without bound.
+            try {
+                inFlight.acquire();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Scan interrupted");
+            }
+            
+            try {
+                executor.execute(new ReadTask(file, reader));
+            } catch (RejectedExecutionException e) {
+                inFlight.release();
+                throw e;
+            }
+            return FileVisitResult.CONTINUE;
+        }
+        
+        @Override
+        public FileVisitResult visitFileFailed(Path file, IOException e) {
+            listener.shortcutFailed(file, ReadResult.failure(ReadResult.Reason.IO_ERROR, e.toString(), e));
+            return FileVisitResult.CONTINUE;
+        }
+        
+        @Override
+        public FileVisitResult postVisitDirectory(Path dir, IOException e) {
+            if(e != null) {
+                listener.shortcutFailed(dir, ReadResult.failure(ReadResult.Reason.IO_ERROR, e.toString(), e));
+            }
+            return FileVisitResult.CONTINUE;
+        }
+        
+        /* Waits for all of the submitted files to be read. */
+        void awaitCompletion()
+                throws InterruptedIOException {
+            try {
+                inFlight.acquire(maxInFlight);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Scan interrupted");
+            }
+            inFlight.release(maxInFlight);
+        }
+        
+        private class ReadTask
+                implements Runnable {
+            private final Path file;
+            private final ShortcutReader reader;
+            
+            ReadTask(Path file, ShortcutReader reader) {
+                this.file = file;
+                this.reader = reader;
+            }
+            
+            public void run() {
+                try {
+                    ReadResult result;
+                    try {
+                        result = reader.readResult(file);
+                    } catch (RuntimeException e) {
+                        // e.g. a bug in a registered reader
+                        result = ReadResult.failure(ReadResult.Reason.MALFORMED, e.toString(), e);
+                    }
+                    if(result.isSuccess()) {
+                        listener.shortcutRead(file, result.getContents());
+                    } else {
+                        listener.shortcutFailed(file, result);
+                    }
+                } finally {
+                    inFlight.release();
+                }
+            }
+        }
+    }
+}
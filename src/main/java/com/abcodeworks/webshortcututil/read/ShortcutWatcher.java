@@ -0,0 +1,465 @@
+/**
+ * Copyright 2014 by Andre Beckus
+ * 
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+
+ *   http://www.apache.org/licenses/LICENSE-2.0
+
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.abcodeworks.webshortcututil.read;
+
+import static java.nio.file.StandardWatchEventKinds.ENTRY_CREATE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_DELETE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_MODIFY;
+import static java.nio.file.StandardWatchEventKinds.OVERFLOW;
+
+import java.io.Closeable;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keeps an in-memory map of the shortcuts in a directory tree up to date by watching
+ * the tree for changes.
+ * 
+ * <p>
+ * When started, every directory in the tree is registered with a {@link WatchService} and every
+ * shortcut (any file with a shortcut extension, see {@link ShortcutReadUtil#hasValidExtension(Path)})
+ * is read.  After that, a shortcut is read again whenever it is created or modified, and removed from
+ * the map when it is deleted (or can no longer be read).  New directories are registered as they appear.
+ * </p>
+ * 
+ * <p>
+ * Events are debounced: a file is only read once no events for it have arrived for the debounce
+ * interval, so an editor which saves a file in several steps causes a single read.  Files are read on
+ * a fixed-size pool of threads, and a file is never read by two threads at once.  If the watch service
+ * loses events, the whole tree is checked again.
+ * </p>
+ * 
+ * <p>
+ * The map may be read from any thread while it is being updated.
+ * </p>
+ * 
+ * <p>
+ * Example:
+ * <pre>
+ * ShortcutWatcher watcher = new ShortcutWatcher(Paths.get("/home/me/bookmarks"));
+ * watcher.start();
+ * ...
+ * ShortcutContents contents = watcher.get(Paths.get("/home/me/bookmarks/Google.url"));
+ * ...
+ * watcher.close();
+ * </pre>
+ * </p>
+ * 
+ */
+public class ShortcutWatcher
+        implements Closeable {
+    /** The default debounce interval, in milliseconds. */
+    public static final long DEFAULT_DEBOUNCE_MILLIS = 100;
+    
+    private final Path root;
+    private final int threads;
+    private final long debounceNanos;
+    
+    /* Orders paths name by name, so that everything in a directory comes straight after the
+     * directory itself (comparing whole paths would put e.g. "dir.url" between "dir" and "dir/a.url").
+     * The paths are all below the root, so the root components are not compared. */
+    static final Comparator<Path> TREE_ORDER = new Comparator<Path>() {
+        public int compare(Path a, Path b) {
+            int count = Math.min(a.getNameCount(), b.getNameCount());
+            for(int i = 0; i < count; i++) {
+                int c = a.getName(i).compareTo(b.getName(i));
+                if(c != 0) {
+                    return c;
+                }
+            }
+            return a.getNameCount() - b.getNameCount();
+        }
+    };
+    
+    // In tree order, so that the files under a deleted directory can be found without looking at every file.
+    private final ConcurrentNavigableMap<Path, ShortcutContents> contents = new ConcurrentSkipListMap<Path, ShortcutContents>(TREE_ORDER);
+    
+    // Files waiting to be read, and the time (System.nanoTime) at which to read them.
+    // Only changed by the watch thread (and by start() before the thread is running).
+    private final Map<Path, Long> pending = new ConcurrentHashMap<Path, Long>();
+    // Files currently being read.
+    private final ConcurrentMap<Path, Boolean> reading = new ConcurrentHashMap<Path, Boolean>();
+    private final Object idleLock = new Object();
+    
+    private final Map<WatchKey, Path> directories = new ConcurrentHashMap<WatchKey, Path>();
+    private WatchService watchService;
+    private ExecutorService workers;
+    private Thread watchThread;
+    private volatile boolean closed;
+    
+    /**
+     * Creates a watcher which reads files using one thread per available processor
+     * and the default debounce interval.
+     * 
+     * @param root The directory to watch.
+     */
+    public ShortcutWatcher(Path root) {
+        this(root, Runtime.getRuntime().availableProcessors(), DEFAULT_DEBOUNCE_MILLIS);
+    }
+    
+    /**
+     * Creates a watcher.
+     * 
+     * @param root The directory to watch.
+     * @param threads The number of threads used to read files.
+     * @param debounceMillis How long a file must be left alone before it is read, in milliseconds.
+     */
+    public ShortcutWatcher(Path root, int threads, long debounceMillis) {
+        if(threads < 1) {
+            throw new IllegalArgumentException("threads must be at least 1");
+        }
+        if(debounceMillis < 0) {
+            throw new IllegalArgumentException("debounceMillis must not be negative");
+        }
+        this.root = root.toAbsolutePath().normalize();
+        this.threads = threads;
+        this.debounceNanos = TimeUnit.MILLISECONDS.toNanos(debounceMillis);
+    }
+    
+    /**
+     * Registers the tree and starts watching it.  The existing shortcuts are read in the background
+     * (see {@link #awaitIdle(long, TimeUnit)}).
+     * 
+     * @throws IOException If the root does not exist ({@link FileNotFoundException}) or cannot be watched.
+     * @throws IllegalStateException If the watcher has already been started.
+     */
+    public synchronized void start()
+            throws IOException {
+        if(watchService != null || closed) {
+            throw new IllegalStateException("The watcher has already been started");
+        }
+        if(!Files.isDirectory(root)) {
+            throw new FileNotFoundException(root.toString());
+        }
+        
+        watchService = root.getFileSystem().newWatchService();
+        workers = Executors.newFixedThreadPool(threads);
+        try {
+            registerTree(root, System.nanoTime());
+        } catch (IOException e) {
+            close();
+            throw e;
+        }
+        
+        watchThread = new Thread(new Runnable() {
+            public void run() {
+                watch();
+            }
+        }, "ShortcutWatcher " + root);
+        watchThread.setDaemon(true);
+        watchThread.start();
+    }
+    
+    /**
+     * Returns the contents of the specified shortcut.
+     * 
+     * @param path The shortcut file.
+     * @return The contents, or null if the file is not a readable shortcut in the tree.
+     */
+    public ShortcutContents get(Path path) {
+        return contents.get(path.toAbsolutePath().normalize());
+    }
+    
+    /**
+     * Returns a live, read-only view of the shortcuts in the tree, keyed by absolute path.
+     */
+    public Map<Path, ShortcutContents> getContents() {
+        return Collections.unmodifiableMap(contents);
+    }
+    
+    /**
+     * Waits until there are no files waiting to be read or being read.  This is mainly useful
+     * for waiting for the initial read to finish after {@link #start()}.  Changes which have not
+     * yet been reported by the watch service are not waited for.
+     * 
+     * @param timeout The maximum time to wait.
+     * @param unit The unit of the timeout.
+     * @return True if the watcher is idle, false if the timeout expired first.
+     * @throws InterruptedException If interrupted while waiting.
+     */
+    public boolean awaitIdle(long timeout, TimeUnit unit)
+            throws InterruptedException {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        synchronized(idleLock) {
+            while(!pending.isEmpty() || !reading.isEmpty()) {
+                long remaining = deadline - System.nanoTime();
+                if(remaining <= 0) {
+                    return false;
+                }
+                TimeUnit.NANOSECONDS.timedWait(idleLock, remaining);
+            }
+        }
+        return true;
+    }
+    
+    /**
+     * Stops watching the tree.  Reads which are in progress are allowed to finish,
+     * and the map is left as it is.
+     */
+    public void close()
+            throws IOException {
+        Thread thread;
+        synchronized(this) {
+            closed = true;
+            thread = watchThread;
+            if(workers != null) {
+                workers.shutdown();
+            }
+            if(watchService != null) {
+                watchService.close();
+            }
+        }
+        if(thread != null && thread != Thread.currentThread()) {
+            try {
+                thread.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+    
+    /* Registers a directory and everything below it, and schedules the shortcuts in it to be read. */
+    private void registerTree(Path dir, final long due)
+            throws IOException {
+        Files.walkFileTree(dir, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs)
+                    throws IOException {
+                WatchKey key = dir.register(watchService, ENTRY_CREATE, ENTRY_DELETE, ENTRY_MODIFY);
+                directories.put(key, dir);
+                return FileVisitResult.CONTINUE;
+            }
+            
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+                if(attrs.isRegularFile()) {
+                    schedule(file, due);
+                }
+                return FileVisitResult.CONTINUE;
+            }
+            
+            @Override
+            public FileVisitResult visitFileFailed(Path file, IOException e)
+                    throws IOException {
+                if(file.equals(root)) {
+                    throw e;
+                }
+                // e.g. deleted while walking, or no permission
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+    
+    private void schedule(Path file, long due) {
+        if(ShortcutReadUtil.hasValidExtension(file)) {
+            pending.put(file, due);
+        }
+    }
+    
+    /* The watch thread: collects events and hands files to the workers once they are due. */
+    private void watch() {
+        try {
+            while(!closed) {
+                WatchKey key;
+                long wait = nextWait();
+                try {
+                    if(wait < 0) {
+                        key = watchService.take();
+                    } else {
+                        key = watchService.poll(wait, TimeUnit.NANOSECONDS);
+                    }
+                } catch (InterruptedException e) {
+                    break;
+                }
+                
+                // Drain everything that is ready before reading anything.
+                while(key != null) {
+                    processEvents(key);
+                    key = watchService.poll();
+                }
+                submitDue();
+            }
+        } catch (ClosedWatchServiceException e) {
+            // Closed
+        } finally {
+            pending.clear();
+            signalIdle();
+        }
+    }
+    
+    /* Returns how long to wait for events, or -1 to wait indefinitely. */
+    private long nextWait() {
+        if(pending.isEmpty()) {
+            return -1;
+        }
+        long now = System.nanoTime(),
+             wait = Long.MAX_VALUE;
+        for(Long due : pending.values()) {
+            wait = Math.min(wait, due - now);
+        }
+        return Math.max(wait, 0);
+    }
+    
+    private void processEvents(WatchKey key) {
+        Path dir = directories.get(key);
+        long due = System.nanoTime() + debounceNanos;
+        
+        for(WatchEvent<?> event : key.pollEvents()) {
+            if(event.kind() == OVERFLOW) {
+                // Events were lost - check everything again.
+                rescan(due);
+                continue;
+            }
+            if(dir == null) {
+                continue;
+            }
+            
+            Path child = dir.resolve((Path)event.context());
+            if(event.kind() == ENTRY_CREATE && Files.isDirectory(child, LinkOption.NOFOLLOW_LINKS)) {
+                try {
+                    registerTree(child, due);
+                } catch (IOException e) {
+                    // Gone again already - the delete event will follow.
+                }
+            } else if(event.kind() == ENTRY_DELETE) {
+                schedule(child, due);
+                // If it was a directory, everything in it has gone too.
+                for(Path path : contents.tailMap(child, false).keySet()) {
+                    if(!path.startsWith(child)) {
+                        break;
+                    }
+                    pending.put(path, due);
+                }
+            } else {
+                schedule(child, due);
+            }
+        }
+        
+        if(!key.reset()) {
+            // The directory is no longer accessible (e.g. deleted).
+            directories.remove(key);
+        }
+    }
+    
+    /* Re-reads the whole tree after lost events. */
+    private void rescan(long due) {
+        for(Path path : contents.keySet()) {
+            pending.put(path, due);
+        }
+        for(WatchKey key : new ArrayList<WatchKey>(directories.keySet())) {
+            key.cancel();
+        }
+        directories.clear();
+        try {
+            registerTree(root, due);
+        } catch (IOException e) {
+            // The root has gone - the files scheduled above will be removed.
+        }
+    }
+    
+    /* Hands the files which are due to the workers. */
+    private void submitDue() {
+        long now = System.nanoTime();
+        List<Path> due = new ArrayList<Path>();
+        for(Map.Entry<Path, Long> entry : pending.entrySet()) {
+            if(entry.getValue() - now <= 0) {
+                due.add(entry.getKey());
+            }
+        }
+        
+        for(Path path : due) {
+            if(reading.putIfAbsent(path, Boolean.TRUE) != null) {
+                // Still reading the previous version - try again later.
+                pending.put(path, now + Math.max(debounceNanos, TimeUnit.MILLISECONDS.toNanos(1)));
+                continue;
+            }
+            pending.remove(path);
+            try {
+                workers.execute(new ReadTask(path));
+            } catch (RejectedExecutionException e) {
+                // Closed
+                reading.remove(path);
+                return;
+            }
+        }
+        signalIdle();
+    }
+    
+    private void signalIdle() {
+        synchronized(idleLock) {
+            idleLock.notifyAll();
+        }
+    }
+    
+    private class ReadTask
+            implements Runnable {
+        private final Path path;
+        
+        ReadTask(Path path) {
+            this.path = path;
+        }
+        
+        public void run() {
+            try {
+                ReadResult result;
+                ShortcutReader reader = ShortcutReadUtil.getShortcutReader(path);
+                try {
+                    result = (reader == null) ? ShortcutReadUtil.INVALID_EXTENSION : reader.readResult(path);
+                } catch (RuntimeException e) {
+                    result = ReadResult.failure(ReadResult.Reason.MALFORMED, e.toString(), e);
+                }
+                
+                if(result.isSuccess()) {
+                    contents.put(path, result.getContents());
+                } else {
+                    contents.remove(path);
+                }
+            } finally {
+                reading.remove(path);
+                signalIdle();
+            }
+        }
+    }
+}
@@ -21,21 +21,51 @@
 
 package com.abcodeworks.webshortcututil.read;
 
-import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
-import java.io.UnsupportedEncodingException;
-import java.net.URLDecoder;
-import java.nio.charset.CharsetDecoder;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.MalformedInputException;
+import java.nio.file.Path;
 
 /**
  * Reads URL shortcuts (Windows shortcuts with a .url extension).
  * 
  */
 public class UrlShortcutReader extends ShortcutReader {
+    /**
+     * How much of the shortcut is read.
+     */
+    public enum Mode {
+        /**
+         * Read to the end.  If there are several URLs, a URL in the [InternetShortcut.W] section
+         * is used before one in the [InternetShortcut] section, and a later URL is used before an earlier one.
+         */
+        READ_ALL,
+        /**
+         * Stop at the first URL which cannot be overridden later in the file.
+         * 
+         * <p>
+         * A URL in the [InternetShortcut.W] section (UTF-7) always wins, so reading stops there.  Windows only
+         * adds that section when the URL has characters which cannot be stored in the [InternetShortcut] section,
+         * and these characters are written there as "?".  So reading also stops at a URL in the [InternetShortcut]
+         * section which has no "?" in it.  This saves reading the rest of the file, such as the property sections
+         * which IE adds to .website files.
+         * </p>
+         * 
+         * <p>
+         * The result is the same as {@link #READ_ALL} for shortcuts created by Windows and browsers,
+         * but may differ for a file edited by hand (e.g. with two URLs in the same section).
+         * When reading a file, it is read as a stream so that the rest of the file is never read.
+         * </p>
+         */
+        FIRST_AUTHORITATIVE_URL
+    }
+    
     enum UrlSection {
         NO_SECTION,
         INTERNET_SHORTCUT_SECTION,
@@ -43,52 +73,145 @@ public class UrlShortcutReader extends ShortcutReader {
         OTHER_SECTION
     }
     
-    /* Patterns for the two headers we are looking for:
-     * [InternetShortcut]   - An ASCII URL
-     * [InternetShortcut.W] - A UTF7 URL
-     */
-    Pattern internet_shortcut_header = Pattern.compile("^\\s*\\[InternetShortcut\\]\\s*$"),
-            internet_shortcut_w_header = Pattern.compile("^\\s*\\[InternetShortcut.W\\]\\s*$");
+    // Headers of the two sections we are looking for:
+    //   [InternetShortcut]   - An ASCII URL
+    //   [InternetShortcut.W] - A UTF7 URL
+    static final String INTERNET_SHORTCUT_HEADER = "InternetShortcut",
+                        INTERNET_SHORTCUT_W_HEADER = "InternetShortcut.W";
     
-    // Pattern for a blank line (i.e. only whitespace) or a comment (e.g. ;My Comment)
-    Pattern blank_or_comment = Pattern.compile("^\\s*(;.*)?$");
+    // Comments start with a semicolon (e.g. ;My Comment)
+    static final char COMMENT_CHAR = ';';
+     
+    // Expected failures
+    static final ReadResult INVALID_START = ReadResult.failure(ReadResult.Reason.INVALID_START, "Shortcut file is invalid"),
+                            URL_NOT_FOUND = ReadResult.failure(ReadResult.Reason.MISSING_URL, "URL not found in file");
      
+    private final ShortcutReadLimits limits;
+    private final Mode mode;
+    
+    /**
+     * Creates a reader with the {@link ShortcutReadLimits#DEFAULT default} limits, which reads to the end.
+     */
+    public UrlShortcutReader() {
+        this(ShortcutReadLimits.DEFAULT);
+    }
+    
+    /**
+     * Creates a reader which stops with a {@link ReadResult.Reason#LIMIT_EXCEEDED} result
+     * when the input exceeds the specified limits.
+     * 
+     * @param limits The limits.  Use {@link ShortcutReadLimits#UNLIMITED} to read any input to the end.
+     */
+    public UrlShortcutReader(ShortcutReadLimits limits) {
+        this(limits, Mode.READ_ALL);
+    }
+    
+    /**
+     * Creates a reader with the specified limits and mode.
+     * 
+     * @param limits The limits.  Use {@link ShortcutReadLimits#UNLIMITED} to read any input to the end.
+     * @param mode How much of the shortcut is read.
+     */
+    public UrlShortcutReader(ShortcutReadLimits limits, Mode mode) {
+        if(limits == null) {
+            throw new NullPointerException("limits");
+        }
+        if(mode == null) {
+            throw new NullPointerException("mode");
+        }
+        this.limits = limits;
+        this.mode = mode;
+    }
+    
+    public ShortcutReadLimits getLimits() {
+        return limits;
+    }
+    
+    public Mode getMode() {
+        return mode;
+    }
+    
+    @Override
+    long getMaxContentLength() {
+        return limits.getMaxBytes();
+    }
+    
     @Override
     public String readUrlString(InputStream stream)
                 throws ShortcutReadException {
+        return readResult(stream).getUrlStringOrThrow();
+    }
+    
+    @Override
+    public ReadResult readResult(InputStream stream) {
+        return readResult(new IniLineScanner(new InputStreamReader(new LimitedInputStream(stream, limits.getMaxBytes())),
+                                             COMMENT_CHAR, limits));
+    }
+    
+    @Override
+    public ReadResult readResult(ByteBuffer buffer) {
+        if(buffer.remaining() > limits.getMaxBytes()) {
+            return ReadLimitException.tooManyBytes(limits.getMaxBytes()).toResult();
+        }
+        // Decode everything in one go (using the same charset as the stream version)
+        // and scan the characters in place.
+        CharBuffer chars = Charset.defaultCharset().decode(buffer.duplicate());
+        return readResult(new IniLineScanner(chars.array(), chars.arrayOffset() + chars.position(), chars.remaining(), COMMENT_CHAR, limits));
+    }
+    
+    @Override
+    ReadResult readUrlResult(Path path) {
+        if(mode == Mode.READ_ALL) {
+            // The whole file is needed anyway, so read it in one go.
+            return super.readUrlResult(path);
+        }
+        
+        // Stream the file so that nothing past the URL is read.
+        try {
+            FileChannel channel = openChannel(path);
+            try {
+                if(channel.size() > limits.getMaxBytes()) {
+                    return ReadLimitException.tooManyBytes(limits.getMaxBytes()).toResult();
+                }
+                return readResult(Channels.newInputStream(channel));
+            } finally {
+                channel.close();
+            }
+        } catch (IOException e) {
+            return ReadResult.failure(ReadResult.Reason.IO_ERROR, e.toString(), e);
+        }
+    }
+    
+    ReadResult readResult(IniLineScanner scanner) {
         UrlSection curr_section;
         String parsed_url = null,
                parsed_urlw = null;
         
-        BufferedReader reader = new BufferedReader(new InputStreamReader(stream));
-        
         // Let's check and see if this is really a url shortcut before we start.
         // We want to fail fast, especially if we are not sure if this is a shortcut.
         // Peek at the first character
-        assert(reader.markSupported());
         try {
-            // We only need to read 1 character, but let's use a bigger buffer just in case.
-            reader.mark(16); 
-            // Assume that it is OK to cast the int return value to a char.
-            char firstChar = (char)reader.read();
-            if(firstChar != ';'&& firstChar != '[' && !Character.isWhitespace(firstChar)) {
-                throw new ShortcutReadException("Shortcut file is invalid");
+            if(!scanner.startsLikeIni()) {
+                return INVALID_START;
             }
-            reader.reset();
+        } catch (ReadLimitException e) {
+            return e.toResult();
         } catch (IOException ioe) {
-            throw new ShortcutReadException("Error checking first character", ioe);
+            return ReadResult.failure(ReadResult.Reason.IO_ERROR, "Error checking first character", ioe);
         }
         
         
         curr_section = UrlSection.NO_SECTION;
         
         while(true) {
-            String nextline;
+            IniLineScanner.LineType lineType;
 
             try {
-                nextline = reader.readLine();
+                lineType = scanner.next();
+            } catch (ReadLimitException e) {
+                return e.toResult();
             } catch (IOException e) {
-                throw new ShortcutReadException(e);
+                return ReadResult.failure(ReadResult.Reason.IO_ERROR, e.toString(), e);
             }
             
             /* Loop through the file, keeping track of which section we are in.
@@ -97,44 +220,33 @@ public class UrlShortcutReader extends ShortcutReader {
              * store it in the parsed_url variable.
              * If it is a UTF7 URL (i.e. in the [InternetShortcut.W] section),
              * decode it and store it in the parsed_urlw variable.
+             * Blank lines, comments and garbled lines are ignored.
              */
-            if(nextline == null) {
+            if(lineType == null) {
                 break;
-            } else if(matches(internet_shortcut_header, nextline)) {
-                curr_section = UrlSection.INTERNET_SHORTCUT_SECTION;
-            } else if(matches(internet_shortcut_w_header, nextline)) {
-                curr_section = UrlSection.INTERNET_SHORTCUT_W_SECTION;
-            } else if(matches(header, nextline)) {
-                curr_section = UrlSection.OTHER_SECTION;
-            } else if(matches(blank_or_comment, nextline)) {
-                // Ignore this line
-            } else {
-                Matcher key_value_matcher = key_value_pattern.matcher(nextline);
-                if(key_value_matcher.matches()) {
-                    assert(key_value_matcher.groupCount() == 4);
-                    String key = key_value_matcher.group(1);
-                    String value = key_value_matcher.group(4);
-                    if(key == null) {
-                        // The fact that we are here suggests that either the file
-                        // is corrupt or this algorithm is incorrect.  Either way
-                        // we will just ignore the issue and move on to the next line.
-                    } else {
-                        if(key.equals("URL")) {
-                            if(curr_section == UrlSection.INTERNET_SHORTCUT_SECTION) {
-                                parsed_url = value;
-                            } else if(curr_section == UrlSection.INTERNET_SHORTCUT_W_SECTION) {
-                                try {
-                                    byte[] asciiBytes = value.getBytes("US-ASCII");
-                                    
-                                    // Note that the jutf7 library (http://jutf7.sourceforge.net/)
-                                    // needs to be added as a Maven dependency (or I think can be just
-                                    // added to the classpath) in order to add UTF-7 support.
-                                    parsed_urlw = new String(asciiBytes, "UTF-7");
-                                } catch(UnsupportedEncodingException e) {
-                                    throw new ShortcutReadException("Error converting URL from UTF7", e);
-                                }
-                            }
-                        }
+            } else if(lineType == IniLineScanner.LineType.HEADER) {
+                if(scanner.isHeader(INTERNET_SHORTCUT_HEADER)) {
+                    curr_section = UrlSection.INTERNET_SHORTCUT_SECTION;
+                } else if(scanner.isHeader(INTERNET_SHORTCUT_W_HEADER)) {
+                    curr_section = UrlSection.INTERNET_SHORTCUT_W_SECTION;
+                } else {
+                    curr_section = UrlSection.OTHER_SECTION;
+                }
+            } else if(scanner.isKey("URL")) {
+                if(curr_section == UrlSection.INTERNET_SHORTCUT_SECTION) {
+                    parsed_url = scanner.getValue();
+                    if(mode == Mode.FIRST_AUTHORITATIVE_URL && parsed_url.indexOf('?') < 0) {
+                        // Nothing was replaced, so there will not be a UTF7 URL.
+                        break;
+                    }
+                } else if(curr_section == UrlSection.INTERNET_SHORTCUT_W_SECTION) {
+                    try {
+                        parsed_urlw = scanner.getUtf7Value();
+                    } catch(MalformedInputException e) {
+                        return ReadResult.failure(ReadResult.Reason.INVALID_ENCODING, "Error converting URL from UTF7", e);
+                    }
+                    if(mode == Mode.FIRST_AUTHORITATIVE_URL) {
+                        break;
                     }
                 }
             }
@@ -143,11 +255,11 @@ public class UrlShortcutReader extends ShortcutReader {
         // Return the appropriate URL.  If a UTF7 URL is found,
         // ignore the ASCII URL as it is probably not correct.
         if(parsed_urlw != null) {
-            return parsed_urlw;
+            return ReadResult.success(parsed_urlw);
         } else if(parsed_url != null) {
-            return parsed_url;
+            return ReadResult.success(parsed_url);
         } else {
-            throw new ShortcutReadException("URL not found in file");
+            return URL_NOT_FOUND;
         }
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,133 @@
+/**
+ * Copyright 2014 by Andre Beckus
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+
+ *   http://www.apache.org/licenses/LICENSE-2.0
+
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.abcodeworks.webshortcututil.read;
+
+import java.nio.charset.MalformedInputException;
+import java.util.Arrays;
+
+/**
+ * Decodes UTF-7 (RFC 2152), as found in the [InternetShortcut.W] section of a .url file.
+ *
+ * <p>
+ * This gives the same result as decoding the ASCII bytes of the value with the jutf7
+ * "UTF-7" charset (which the readers used to do), but works directly on the characters
+ * of the line.  A broken base64 run gives a replacement character (U+FFFD) in the same
+ * places.  The exception is a base64 run which is cut off at the end of the value: the
+ * charset fails with an error in this case, so it is reported as malformed input.
+ * </p>
+ */
+final class Utf7Decoder {
+    private static final char REPLACEMENT = '\uFFFD';
+
+    private static final String BASE64_CHARS = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789+/";
+    // The value of each base64 character, or -1
+    private static final int[] sextets = new int[0x80];
+    static {
+        Arrays.fill(sextets, -1);
+        for(int i = 0; i < BASE64_CHARS.length(); i++) {
+            sextets[BASE64_CHARS.charAt(i)] = i;
+        }
+    }
+
+    private Utf7Decoder() {
+    }
+
+    /**
+     * Decodes the characters.  Characters outside ASCII are taken as '?', as that is what
+     * they would be when converted to ASCII bytes.
+     *
+     * @throws MalformedInputException If the input ends part way through a character.
+     */
+    static String decode(char[] chars, int offset, int length)
+            throws MalformedInputException {
+        // Every character in the input gives at most one character of output,
+        // except for a replacement which always follows a shift character.
+        char[] out = new char[length];
+        int count = 0;
+
+        boolean inBase64 = false,
+                justShifted = false;
+        // Bits of the character being put together
+        int bitsRead = 0,
+            partial = 0;
+
+        int end = offset + length;
+        for(int i = offset; i < end; i++) {
+            char c = chars[i];
+            if(c >= 0x80) {
+                // A surrogate pair is a single '?'
+                if(Character.isHighSurrogate(c) && i + 1 < end && Character.isLowSurrogate(chars[i + 1])) {
+                    i++;
+                }
+                c = '?';
+            }
+
+            if(!inBase64) {
+                if(c == '+') {
+                    inBase64 = true;
+                    justShifted = true;
+                } else {
+                    out[count++] = c;
+                }
+            } else if(c == '-') {
+                if(partial != 0 || bitsRead >= 6) {
+                    // Bits are left over - the run carries on after the replacement
+                    out[count++] = REPLACEMENT;
+                    continue;
+                }
+                if(justShifted) {
+                    // "+-" is a plus sign
+                    out[count++] = '+';
+                }
+                inBase64 = false;
+                bitsRead = 0;
+                justShifted = false;
+            } else if(sextets[c] >= 0) {
+                int sextet = sextets[c];
+                bitsRead += 6;
+                if(bitsRead < 16) {
+                    partial += sextet << (16 - bitsRead);
+                } else {
+                    bitsRead -= 16;
+                    out[count++] = (char)(partial + (sextet >> bitsRead));
+                    partial = (sextet << (16 - bitsRead)) & 0xFFFF;
+                }
+                justShifted = false;
+            } else {
+                // Any other character ends the run
+                out[count++] = c;
+                if(partial != 0 || bitsRead >= 6) {
+                    out[count++] = REPLACEMENT;
+                }
+                inBase64 = false;
+                bitsRead = 0;
+                partial = 0;
+                justShifted = false;
+            }
+        }
+
+        if(partial != 0 || bitsRead >= 6) {
+            throw new MalformedInputException(1);
+        }
+        return new String(out, 0, count);
+    }
+}
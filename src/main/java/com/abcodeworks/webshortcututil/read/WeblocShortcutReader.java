@@ -21,12 +21,17 @@
 
 package com.abcodeworks.webshortcututil.read;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
 
-import com.abcodeworks.webshortcututil.write.ShortcutWriteException;
 import com.dd.plist.NSDictionary;
-import com.dd.plist.NSObject;
 import com.dd.plist.NSString;
 import com.dd.plist.PropertyListParser;
 
@@ -34,36 +39,233 @@ import com.dd.plist.PropertyListParser;
  * Reads Webloc shortcuts (Apple/Mac/OSX shortcuts with a .webloc extension).
  * 
  * Note that this class reads both Binary and XML types of webloc files.
+ * Both are read with purpose-built parsers that only decode the URL, and the
+ * dd-plist library is only used for other plist formats and for unusual binary plists.
+ * DTDs in XML weblocs are not processed, and a DTD which declares entities is rejected.
  * 
  */
 public class WeblocShortcutReader extends ShortcutReader {
-
+    private static final byte[] BPLIST_MAGIC = { 'b', 'p', 'l', 'i', 's', 't' };
+    
+    // Expected failures
+    static final ReadResult NOT_A_PLIST = ReadResult.failure(ReadResult.Reason.INVALID_START, "Error reading URL"),
+                            URL_NOT_FOUND = ReadResult.failure(ReadResult.Reason.MISSING_URL, "URL not found");
+    
+    private final ShortcutReadLimits limits;
+    
+    /**
+     * Creates a reader with the {@link ShortcutReadLimits#DEFAULT default} limits.
+     */
+    public WeblocShortcutReader() {
+        this(ShortcutReadLimits.DEFAULT);
+    }
+    
+    /**
+     * Creates a reader which stops with a {@link ReadResult.Reason#LIMIT_EXCEEDED} result
+     * when the input is larger than {@link ShortcutReadLimits#getMaxBytes()}.  Webloc files
+     * are not read line by line, so the other limits do not apply.
+     * 
+     * @param limits The limits.  Use {@link ShortcutReadLimits#UNLIMITED} to read any input to the end.
+     */
+    public WeblocShortcutReader(ShortcutReadLimits limits) {
+        if(limits == null) {
+            throw new NullPointerException("limits");
+        }
+        this.limits = limits;
+    }
+    
+    public ShortcutReadLimits getLimits() {
+        return limits;
+    }
+    
     @Override
-    public String readUrlString(InputStream stream)
-            throws ShortcutReadException {
-        
+    long getMaxContentLength() {
+        return limits.getMaxBytes();
+    }
+
+    /* Extracts the URL from the parsed plist root object. */
+    ReadResult getUrlResult(NSDictionary rootDict) {
         NSString urlObject = null;
         
         try {
-            /* Parse the file and extract the URL.
-             * The plist library will figure out whether the file is a Binary or an XML file
-             * and parse it appropriately.
-             */
-            NSDictionary rootDict = (NSDictionary)PropertyListParser.parse(stream);
             urlObject = (NSString)rootDict.objectForKey("URL");
         } catch (Exception e) {
-            throw new ShortcutReadException("Error reading URL", e);
+            return ReadResult.failure(ReadResult.Reason.MALFORMED, "Error reading URL", e);
         }
 
         if(urlObject == null) {
-            throw new ShortcutReadException("URL not found");
+            return URL_NOT_FOUND;
         }
         
         try {
             String url = urlObject.toString();
-            return url;
+            return ReadResult.success(url);
         } catch (Exception e) {
-            throw new ShortcutReadException("Error reading URL", e);
+            return ReadResult.failure(ReadResult.Reason.MALFORMED, "Error reading URL", e);
         }
     }
+
+    @Override
+    public String readUrlString(InputStream stream)
+            throws ShortcutReadException {
+        return readResult(stream).getUrlStringOrThrow();
+    }
+    
+    @Override
+    public ReadResult readResult(InputStream stream) {
+        InputStream limited = new LimitedInputStream(stream, limits.getMaxBytes());
+        byte[] prefix = new byte[ShortcutReadUtil.FORMAT_DETECTION_PREFIX_SIZE];
+        int length;
+        try {
+            length = ShortcutReadUtil.readPrefix(limited, prefix);
+        } catch (ReadLimitException e) {
+            return e.toResult();
+        } catch (IOException e) {
+            return ReadResult.failure(ReadResult.Reason.IO_ERROR, "Error reading URL", e);
+        }
+        
+        if(XmlWeblocParser.isXml(ByteBuffer.wrap(prefix, 0, length))) {
+            // XML weblocs are parsed straight from the stream, which is not read beyond the URL
+            // (apart from the parser's own buffering).  The prefix is put back in front of the rest.
+            return XmlWeblocParser.readResult(new SequenceInputStream(new ByteArrayInputStream(prefix, 0, length),
+                                                                      new NonClosingInputStream(limited)));
+        }
+        
+        // The plist parsers for the other formats need the whole file.
+        ByteArrayOutputStream contents = new ByteArrayOutputStream();
+        contents.write(prefix, 0, length);
+        try {
+            byte[] chunk = new byte[4096];
+            int count;
+            while((count = limited.read(chunk)) >= 0) {
+                contents.write(chunk, 0, count);
+            }
+        } catch (ReadLimitException e) {
+            return e.toResult();
+        } catch (IOException e) {
+            return ReadResult.failure(ReadResult.Reason.IO_ERROR, "Error reading URL", e);
+        }
+        
+        return readResult(ByteBuffer.wrap(contents.toByteArray()));
+    }
+    
+    /* Reads a webloc file.  XML weblocs are streamed so that nothing much past the URL is read,
+     * and the other formats are read into memory in one go. */
+    @Override
+    ReadResult readUrlResult(Path path) {
+        try {
+            FileChannel channel = openChannel(path);
+            try {
+                long size = channel.size();
+                if(size > limits.getMaxBytes()) {
+                    return ReadLimitException.tooManyBytes(limits.getMaxBytes()).toResult();
+                }
+                
+                ByteBuffer buffer = ByteBuffer.allocate((int)Math.min(size, ShortcutReadUtil.FORMAT_DETECTION_PREFIX_SIZE));
+                while(buffer.hasRemaining() && channel.read(buffer) >= 0) {
+                }
+                buffer.flip();
+                if(buffer.limit() < size) {
+                    // Most weblocs fit in the prefix.  This one does not, so only read the rest if it is needed.
+                    if(XmlWeblocParser.isXml(buffer)) {
+                        channel.position(0);
+                        return readResult(Channels.newInputStream(channel));
+                    }
+                    if(size > Integer.MAX_VALUE) {
+                        throw new IOException("File is too large");
+                    }
+                    ByteBuffer contents = ByteBuffer.allocate((int)size);
+                    contents.put(buffer);
+                    while(contents.hasRemaining() && channel.read(contents) >= 0) {
+                    }
+                    contents.flip();
+                    buffer = contents;
+                }
+                return readResult(buffer);
+            } finally {
+                channel.close();
+            }
+        } catch (IOException e) {
+            return ReadResult.failure(ReadResult.Reason.IO_ERROR, e.toString(), e);
+        }
+    }
+    
+    @Override
+    public ReadResult readResult(ByteBuffer buffer) {
+        if(buffer.remaining() > limits.getMaxBytes()) {
+            return ReadLimitException.tooManyBytes(limits.getMaxBytes()).toResult();
+        }
+        // Most binary weblocs can be read without building the whole plist object graph.
+        if(BinaryWeblocParser.isBinaryPlist(buffer)) {
+            ReadResult result;
+            try {
+                result = BinaryWeblocParser.readResult(buffer);
+            } catch (RuntimeException e) {
+                // A bug in the fast path must not escape; let the plist library decide.
+                result = null;
+            }
+            if(result != null) {
+                return result;
+            }
+        } else if(XmlWeblocParser.isXml(buffer)) {
+            // XML weblocs are streamed, and never go to the plist library
+            // (which would expand entities declared in the DTD).
+            return XmlWeblocParser.readResult(newInputStream(buffer));
+        } else if(!startsLikePlist(buffer)) {
+            // Not a plist at all, so there is no point asking the plist library.
+            return NOT_A_PLIST;
+        }
+        
+        return parsePlist(buffer);
+    }
+    
+    /* Checks for the start of one of the other formats the plist library understands:
+     * a binary plist of another version, or an ASCII plist (starting with "{" or "(").
+     */
+    private static boolean startsLikePlist(ByteBuffer buffer) {
+        int i = buffer.position(),
+            end = buffer.limit();
+        if(end - i >= BPLIST_MAGIC.length) {
+            boolean magic = true;
+            for(int j = 0; j < BPLIST_MAGIC.length; j++) {
+                if(buffer.get(i + j) != BPLIST_MAGIC[j]) {
+                    magic = false;
+                    break;
+                }
+            }
+            if(magic) {
+                return true;
+            }
+        }
+        if(end - i >= 3 && buffer.get(i) == (byte)0xEF && buffer.get(i + 1) == (byte)0xBB && buffer.get(i + 2) == (byte)0xBF) {
+            i += 3;
+        }
+        while(i < end && IniLineScanner.isSpace((char)buffer.get(i))) {
+            i++;
+        }
+        return i < end && (buffer.get(i) == '{' || buffer.get(i) == '(');
+    }
+    
+    /* Parses the contents with the plist library and extracts the URL.
+     * The plist library will figure out whether the file is a Binary or an XML file
+     * and parse it appropriately.
+     */
+    private ReadResult parsePlist(ByteBuffer buffer) {
+        byte[] bytes;
+        if(buffer.hasArray() && buffer.arrayOffset() == 0 && buffer.position() == 0 && buffer.remaining() == buffer.array().length) {
+            bytes = buffer.array();
+        } else {
+            bytes = new byte[buffer.remaining()];
+            buffer.duplicate().get(bytes);
+        }
+        
+        NSDictionary rootDict;
+        try {
+            rootDict = (NSDictionary)PropertyListParser.parse(bytes);
+        } catch (Exception e) {
+            return ReadResult.failure(ReadResult.Reason.MALFORMED, "Error reading URL", e);
+        }
+
+        return getUrlResult(rootDict);
+    }
 }
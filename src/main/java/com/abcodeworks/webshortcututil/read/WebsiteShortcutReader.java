@@ -22,13 +22,55 @@
 package com.abcodeworks.webshortcututil.read;
 
 import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
 
 /**
  * Reads Website shortcuts (Windows shortcuts with a .website extension).
  * 
  */
 public class WebsiteShortcutReader extends ShortcutReader {
-    UrlShortcutReader urlReader = new UrlShortcutReader();
+    final UrlShortcutReader urlReader;
+    
+    /**
+     * Creates a reader with the {@link ShortcutReadLimits#DEFAULT default} limits.
+     */
+    public WebsiteShortcutReader() {
+        this(ShortcutReadLimits.DEFAULT);
+    }
+    
+    /**
+     * Creates a reader with the specified limits.  See {@link UrlShortcutReader#UrlShortcutReader(ShortcutReadLimits)}.
+     */
+    public WebsiteShortcutReader(ShortcutReadLimits limits) {
+        this(limits, UrlShortcutReader.Mode.READ_ALL);
+    }
+    
+    /**
+     * Creates a reader with the specified limits and mode.  See {@link UrlShortcutReader#UrlShortcutReader(ShortcutReadLimits, UrlShortcutReader.Mode)}.
+     * {@link UrlShortcutReader.Mode#FIRST_AUTHORITATIVE_URL} usually skips the property sections which follow the URL.
+     */
+    public WebsiteShortcutReader(ShortcutReadLimits limits, UrlShortcutReader.Mode mode) {
+        urlReader = new UrlShortcutReader(limits, mode);
+    }
+    
+    public ShortcutReadLimits getLimits() {
+        return urlReader.getLimits();
+    }
+    
+    public UrlShortcutReader.Mode getMode() {
+        return urlReader.getMode();
+    }
+    
+    @Override
+    long getMaxContentLength() {
+        return urlReader.getMaxContentLength();
+    }
+    
+    @Override
+    ReadResult readUrlResult(Path path) {
+        return urlReader.readUrlResult(path);
+    }
     
     @Override
     public String readUrlString(InputStream stream)
@@ -36,4 +78,14 @@ public class WebsiteShortcutReader extends ShortcutReader {
         // The .website file has extra contents but can still be parsed as a .url file.
         return urlReader.readUrlString(stream);
     }
+    
+    @Override
+    public ReadResult readResult(InputStream stream) {
+        return urlReader.readResult(stream);
+    }
+    
+    @Override
+    public ReadResult readResult(ByteBuffer buffer) {
+        return urlReader.readResult(buffer);
+    }
 }
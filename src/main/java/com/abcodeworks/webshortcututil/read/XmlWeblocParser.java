@@ -0,0 +1,171 @@
+/**
+ * Copyright 2014 by Andre Beckus
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+
+ *   http://www.apache.org/licenses/LICENSE-2.0
+
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.abcodeworks.webshortcututil.read;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+/**
+ * Extracts the URL from an XML property list by streaming through it with StAX,
+ * stopping as soon as the URL has been read.
+ * 
+ * <p>
+ * Only the structure of a webloc is understood: a &lt;plist&gt; whose first element is a &lt;dict&gt;
+ * containing &lt;key&gt;URL&lt;/key&gt; followed by a &lt;string&gt;.  The values of other keys
+ * (including nested dictionaries) are skipped without being decoded.
+ * </p>
+ * 
+ * <p>
+ * DTDs are not processed.  The usual Apple DOCTYPE (which only refers to an external DTD) is ignored,
+ * and a DOCTYPE with an internal subset is rejected, so entity declarations can never be expanded.
+ * External entities are never loaded.
+ * </p>
+ */
+final class XmlWeblocParser {
+    private static final String URL_KEY = "URL";
+    
+    /* Factories are not guaranteed to be thread-safe, so each thread configures its own. */
+    private static final ThreadLocal<XMLInputFactory> factory = new ThreadLocal<XMLInputFactory>() {
+        @Override
+        protected XMLInputFactory initialValue() {
+            XMLInputFactory factory = XMLInputFactory.newInstance();
+            factory.setProperty(XMLInputFactory.SUPPORT_DTD, Boolean.FALSE);
+            factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, Boolean.FALSE);
+            return factory;
+        }
+    };
+    
+    private XmlWeblocParser() {
+    }
+    
+    /**
+     * Checks if the contents look like XML, i.e. the first character (after an optional UTF-8
+     * byte order mark and whitespace) is "&lt;".  The buffer's position is not changed.
+     */
+    static boolean isXml(ByteBuffer buffer) {
+        int i = buffer.position(),
+            end = buffer.limit();
+        if(end - i >= 3 && buffer.get(i) == (byte)0xEF && buffer.get(i + 1) == (byte)0xBB && buffer.get(i + 2) == (byte)0xBF) {
+            i += 3;
+        }
+        while(i < end && IniLineScanner.isSpace((char)buffer.get(i))) {
+            i++;
+        }
+        return i < end && buffer.get(i) == '<';
+    }
+    
+    /**
+     * Reads the URL from an XML webloc.
+     * 
+     * @param stream The contents.  The stream is not closed.
+     * @return The URL, or a failure if the contents are not a webloc plist or the URL is missing.  Non-null.
+     */
+    static ReadResult readResult(InputStream stream) {
+        XMLStreamReader reader = null;
+        try {
+            reader = factory.get().createXMLStreamReader(stream);
+            return readResult(reader);
+        } catch (XMLStreamException e) {
+            // Errors from the stream itself (including a read limit) are wrapped by the parser.
+            Throwable cause = (e.getNestedException() != null) ? e.getNestedException() : e.getCause();
+            if(cause instanceof ReadLimitException) {
+                return ((ReadLimitException)cause).toResult();
+            } else if(cause instanceof IOException) {
+                return ReadResult.failure(ReadResult.Reason.IO_ERROR, "Error reading URL", cause);
+            }
+            return ReadResult.failure(ReadResult.Reason.MALFORMED, "Error reading URL", e);
+        } finally {
+            if(reader != null) {
+                try {
+                    reader.close();
+                } catch (XMLStreamException e) {
+                    // Nothing useful to do - the URL has already been read (or the failure known).
+                }
+            }
+        }
+    }
+    
+    private static ReadResult readResult(XMLStreamReader reader)
+            throws XMLStreamException {
+        // Prolog, up to the root element
+        while(true) {
+            int event = reader.next();
+            if(event == XMLStreamConstants.DTD) {
+                if(reader.getText().indexOf('[') != -1) {
+                    throw new XMLStreamException("DTD internal subsets are not allowed", reader.getLocation());
+                }
+            } else if(event == XMLStreamConstants.START_ELEMENT) {
+                break;
+            }
+        }
+        if(!reader.getLocalName().equals("plist")) {
+            throw new XMLStreamException("The document is not a property list", reader.getLocation());
+        }
+        
+        // The first element inside the plist is the root object, which must be a dictionary.
+        if(reader.nextTag() != XMLStreamConstants.START_ELEMENT || !reader.getLocalName().equals("dict")) {
+            throw new XMLStreamException("The root object is not a dictionary", reader.getLocation());
+        }
+        
+        // Dictionary entries: <key>...</key> followed by the value element
+        while(reader.nextTag() == XMLStreamConstants.START_ELEMENT) {
+            if(!reader.getLocalName().equals("key")) {
+                throw new XMLStreamException("Expected a dictionary key", reader.getLocation());
+            }
+            String key = reader.getElementText();
+            
+            if(reader.nextTag() != XMLStreamConstants.START_ELEMENT) {
+                throw new XMLStreamException("Missing value for key " + key, reader.getLocation());
+            }
+            if(key.equals(URL_KEY)) {
+                if(!reader.getLocalName().equals("string")) {
+                    throw new XMLStreamException("The URL is not a string", reader.getLocation());
+                }
+                return ReadResult.success(reader.getElementText());
+            }
+            skipElement(reader);
+        }
+        
+        // Reached the end of the dictionary.
+        return WeblocShortcutReader.URL_NOT_FOUND;
+    }
+    
+    /* Skips to the end of the current element, including any nested elements. */
+    private static void skipElement(XMLStreamReader reader)
+            throws XMLStreamException {
+        int depth = 1;
+        while(depth > 0) {
+            int event = reader.next();
+            if(event == XMLStreamConstants.START_ELEMENT) {
+                depth++;
+            } else if(event == XMLStreamConstants.END_ELEMENT) {
+                depth--;
+            }
+        }
+    }
+}
@@ -42,6 +42,56 @@
  * check if a file has a valid extension (see
  * {@link com.abcodeworks.webshortcututil.read.ShortcutReadUtil#getShortcutReader ShortcutReadUtil.getShortcutReader} and
  * {@link com.abcodeworks.webshortcututil.read.ShortcutReadUtil#hasValidExtension ShortcutReadUtil.hasValidExtension}).
+ * The readers are thread-safe and shared, and readers for other extensions can be added with
+ * {@link com.abcodeworks.webshortcututil.read.ShortcutReadUtil#registerShortcutReader ShortcutReadUtil.registerShortcutReader}.
+ * </p>
+ * 
+ * <p>
+ * To read every shortcut in a directory tree, use a
+ * {@link com.abcodeworks.webshortcututil.read.ShortcutScanner ShortcutScanner}.  Files are read in parallel
+ * and the results are passed to a {@link com.abcodeworks.webshortcututil.read.ShortcutScanListener ShortcutScanListener}
+ * as each file completes.
+ * </p>
+ * 
+ * <p>
+ * Services which must not block can read files with a
+ * {@link com.abcodeworks.webshortcututil.read.ShortcutAsyncReader ShortcutAsyncReader}, which returns a
+ * {@link java.util.concurrent.CompletableFuture CompletableFuture} for each file.  The files are read with
+ * asynchronous channels and parsed on an executor you supply.
+ * </p>
+ * 
+ * <p>
+ * When reading many files which may not all be valid shortcuts, use the <code>readResult</code> methods
+ * (e.g. {@link com.abcodeworks.webshortcututil.read.ShortcutReadUtil#readResult(java.io.File) ShortcutReadUtil.readResult}).
+ * These return a {@link com.abcodeworks.webshortcututil.read.ReadResult ReadResult} with a status and reason code
+ * instead of throwing an exception when a file cannot be read.
+ * </p>
+ * 
+ * <p>
+ * The .url, .website and .desktop readers stop reading input which is far larger than any real
+ * shortcut (see {@link com.abcodeworks.webshortcututil.read.ShortcutReadLimits ShortcutReadLimits}), and report a
+ * {@link com.abcodeworks.webshortcututil.read.ReadResult.Reason#LIMIT_EXCEEDED LIMIT_EXCEEDED} result.
+ * Readers with other limits can be created and registered for their extensions.
+ * </p>
+ * 
+ * <p>
+ * Files which are read over and over can be read through a
+ * {@link com.abcodeworks.webshortcututil.read.ShortcutCache ShortcutCache}, which only reads a file again if it has changed.
+ * </p>
+ * 
+ * <p>
+ * A {@link com.abcodeworks.webshortcututil.read.ShortcutIndex ShortcutIndex} keeps the results for a directory tree
+ * in a file, so that after a restart the tree can be rescanned by only reading the shortcuts which have changed.
+ * </p>
+ * 
+ * <p>
+ * A {@link com.abcodeworks.webshortcututil.read.ShortcutWatcher ShortcutWatcher} keeps an in-memory map of the
+ * shortcuts in a directory tree up to date as files are created, modified and deleted.
+ * </p>
+ * 
+ * <p>
+ * Shortcuts stored in a ZIP archive can be read without extracting them with a
+ * {@link com.abcodeworks.webshortcututil.read.ShortcutArchiveReader ShortcutArchiveReader}.
  * </p>
  * 
  * <p>
@@ -78,8 +128,9 @@
  * If you are reading the shortcut from a stream but do not know the type of shortcut, then
  * you must use the
  * {@link com.abcodeworks.webshortcututil.read.ShortcutReadUtil#readUrlStringTrialAndError(InputStream) ShortcutReadUtil.readUrlStringTrialAndError}
- * method.  As the name implies, this method tries reading the stream as each type of shortcut
- * to see which one works.  Due to buffering limitations, there is a small chance that this method will not work.
+ * method.  This method detects the type of shortcut from the first few bytes of the stream
+ * and then reads the stream with the appropriate reader.  If you only need the type, use
+ * {@link com.abcodeworks.webshortcututil.read.ShortcutReadUtil#detectFormat(InputStream) ShortcutReadUtil.detectFormat}.
  * A usage example follows:
  *  <pre>
  * {@code
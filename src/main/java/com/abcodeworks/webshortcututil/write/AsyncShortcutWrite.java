@@ -0,0 +1,189 @@
+/**
+ * Copyright 2014 by Andre Beckus
+ * 
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+
+ *   http://www.apache.org/licenses/LICENSE-2.0
+
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.abcodeworks.webshortcututil.write;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.AsynchronousFileChannel;
+import java.nio.channels.CompletionHandler;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+
+/**
+ * A single asynchronous write (see {@link ShortcutWriter#writeAsync(Path, String, String, Executor)}).
+ * The shortcut is encoded on the executor, and the bytes are then written with an
+ * {@link AsynchronousFileChannel}, so no thread waits for the disk.
+ */
+final class AsyncShortcutWrite
+        implements Runnable, CompletionHandler<Integer, Void> {
+    private final ShortcutWriter writer;
+    private final Path file;
+    private final String name,
+                         url;
+    private final Executor executor;
+    // Called once the write has finished, successfully or not.  May be null.
+    private final Runnable onFinished;
+    private final CompletableFuture<Path> future = new CompletableFuture<Path>();
+    
+    private AsynchronousFileChannel channel;
+    private ByteBuffer buffer;
+    
+    AsyncShortcutWrite(ShortcutWriter writer, Path file, String name, String url, Executor executor, Runnable onFinished) {
+        this.writer = writer;
+        this.file = file;
+        this.name = name;
+        this.url = url;
+        this.executor = executor;
+        this.onFinished = onFinished;
+    }
+    
+    CompletableFuture<Path> getFuture() {
+        return future;
+    }
+    
+    /* Hands the write to the executor.  Returns false if the executor rejected it, in which
+     * case the future has failed and onFinished is not called. */
+    boolean start() {
+        try {
+            executor.execute(this);
+            return true;
+        } catch (RejectedExecutionException e) {
+            future.completeExceptionally(e);
+            return false;
+        }
+    }
+    
+    /* Encodes the shortcut and starts writing it.  Runs on the executor. */
+    public void run() {
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream(512);
+            writer.write(bytes, name, url);
+            buffer = ByteBuffer.wrap(bytes.toByteArray());
+        } catch (ShortcutWriteException e) {
+            finish(e);
+            return;
+        } catch (RuntimeException e) {
+            finish(e);
+            return;
+        }
+        
+        // The file is created as it is opened, the same as ShortcutWriter.write(File, ...).
+        try {
+            channel = AsynchronousFileChannel.open(file, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+        } catch (java.nio.file.FileAlreadyExistsException e) {
+            finish(new FileAlreadyExistsException(e));
+            return;
+        } catch (IOException e) {
+            finish(new ShortcutWriteException(e));
+            return;
+        }
+        channel.write(buffer, 0, null, this);
+    }
+    
+    /* I/O completion: keep writing until every byte is written. */
+    public void completed(Integer count, Void attachment) {
+        if(buffer.hasRemaining()) {
+            channel.write(buffer, buffer.position(), null, this);
+            return;
+        }
+        try {
+            channel.close();
+        } catch (IOException e) {
+            failed(e, null);
+            return;
+        }
+        channel = null;
+        finish(null);
+    }
+    
+    public void failed(Throwable e, Void attachment) {
+        // Do not leave a partial file behind.
+        try {
+            channel.close();
+        } catch (IOException ignored) {
+            // The write has failed anyway.
+        }
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException ignored) {
+            // The write has failed anyway.
+        }
+        channel = null;
+        finish((e instanceof IOException) ? new ShortcutWriteException(e) : e);
+    }
+    
+    /* Completes the future (exceptionally if e is not null) and lets the next write start. */
+    private void finish(Throwable e) {
+        buffer = null;
+        if(e == null) {
+            future.complete(file);
+        } else {
+            future.completeExceptionally(e);
+        }
+        if(onFinished != null) {
+            onFinished.run();
+        }
+    }
+    
+    /**
+     * Starts queued writes as long as fewer than the maximum are outstanding.
+     * Callers are never blocked: a write which cannot start yet waits in the queue
+     * and is started when an earlier one finishes.
+     */
+    static final class Limiter
+            implements Runnable {
+        private final Semaphore outstanding;
+        private final ConcurrentLinkedQueue<AsyncShortcutWrite> pending = new ConcurrentLinkedQueue<AsyncShortcutWrite>();
+        
+        Limiter(int maxOutstanding) {
+            this.outstanding = new Semaphore(maxOutstanding);
+        }
+        
+        void add(AsyncShortcutWrite write) {
+            pending.add(write);
+            startPending();
+        }
+        
+        /* Called by each write when it finishes. */
+        public void run() {
+            outstanding.release();
+            startPending();
+        }
+        
+        private void startPending() {
+            while(!pending.isEmpty() && outstanding.tryAcquire()) {
+                AsyncShortcutWrite write = pending.poll();
+                if(write == null || !write.start()) {
+                    // Another thread took it, or it was rejected
+                    outstanding.release();
+                }
+            }
+        }
+    }
+}
@@ -21,19 +21,18 @@
 
 package com.abcodeworks.webshortcututil.write;
 
-import java.io.BufferedWriter;
 import java.io.IOException;
 import java.io.OutputStream;
-import java.io.OutputStreamWriter;
-import java.io.UnsupportedEncodingException;
-
-import com.abcodeworks.webshortcututil.read.ShortcutReadException;
 
 /**
  * Writes Desktop shortcuts (FreeDesktop shortcuts with a .desktop extension - used by Linux, etc.).
  * 
  */
 public class DesktopShortcutWriter extends ShortcutWriter {
+    private static final byte[] HEADER = ShortcutEncoder.ascii("[Desktop Entry]\nEncoding=UTF-8\nURL="),
+                                NAME_KEY = ShortcutEncoder.ascii("\nName="),
+                                TYPE_URL_KEY = ShortcutEncoder.ascii("\nType=Link\nURL="),
+                                LINE_END = ShortcutEncoder.ascii("\n");
 
     @Override
     public String defaultExtension() {
@@ -43,40 +42,25 @@ public class DesktopShortcutWriter extends ShortcutWriter {
     @Override
     public void write(OutputStream stream, String name, String url)
             throws ShortcutWriteException {
- 
-        // Open a buffered reader for efficiency.
-        BufferedWriter writer = null;
         try {
             // Note that Desktop Entry files use UTF8
-            writer = new BufferedWriter(new OutputStreamWriter(stream, "UTF-8"));
-        } catch (UnsupportedEncodingException e) {
-            throw new ShortcutWriteException(e);
-        }
-
-        try {
-            writer.write("[Desktop Entry]\n");
-            writer.write("Encoding=UTF-8\n");
-            
-            writer.write("URL=");
-            writer.write(url);
-            writer.write("\n");
-            
-            writer.write("Name=");
-            writer.write(name);
-            writer.write("\n");
-            
-            writer.write("Type=Link\n");
+            int urlLength = ShortcutEncoder.utf8Length(url);
+            byte[] bytes = ShortcutEncoder.buffer(HEADER.length + NAME_KEY.length + TYPE_URL_KEY.length + LINE_END.length
+                                                  + 2 * urlLength + ShortcutEncoder.utf8Length(name));
+            int length = ShortcutEncoder.put(bytes, 0, HEADER);
+            length = ShortcutEncoder.putUtf8(bytes, length, url);
+            length = ShortcutEncoder.put(bytes, length, NAME_KEY);
+            length = ShortcutEncoder.putUtf8(bytes, length, name);
+            length = ShortcutEncoder.put(bytes, length, TYPE_URL_KEY);
+            length = ShortcutEncoder.putUtf8(bytes, length, url);
+            length = ShortcutEncoder.put(bytes, length, LINE_END);
             
-            writer.write("URL=");
-            writer.write(url);
-            writer.write("\n");
+            stream.write(bytes, 0, length);
         } catch(IOException e) {
             throw new ShortcutWriteException(e);
         } finally {
             try {
-                if(writer != null) {
-                    writer.close();
-                }
+                stream.close();
             } catch (IOException e) {
                 throw new ShortcutWriteException(e);
             }
@@ -0,0 +1,126 @@
+/**
+ * Copyright 2014 by Andre Beckus
+ * 
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+
+ *   http://www.apache.org/licenses/LICENSE-2.0
+
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.abcodeworks.webshortcututil.write;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Writes shortcuts into a ZIP archive in a single pass.
+ * 
+ * <p>
+ * Each shortcut becomes one entry, which is streamed straight into the archive, so only the
+ * entry names (which the ZIP format needs for its central directory) are kept in memory.
+ * Entry names are created with {@link ShortcutWriter#createFullFilename(String)}.  If the name is
+ * already used in the archive (ignoring case, since the archive may be extracted on a file system
+ * that ignores case), a number is added, e.g. "Google (2).url".
+ * </p>
+ * 
+ * <p>
+ * Example:
+ * <pre>
+ * ShortcutArchiveWriter archive = new ShortcutArchiveWriter(new FileOutputStream("bookmarks.zip"));
+ * try {
+ *     archive.write(new UrlShortcutWriter(), "Google", "https://www.google.com/");
+ *     archive.write(new WeblocBinaryShortcutWriter(), "Google", "https://www.google.com/");
+ * } finally {
+ *     archive.close();
+ * }
+ * </pre>
+ * </p>
+ * 
+ * <p>
+ * This class is not thread-safe.
+ * </p>
+ * 
+ */
+public class ShortcutArchiveWriter
+        implements Closeable {
+    private final ZipOutputStream zipStream;
+    private final String directory;
+    // Entry names which have been used, in lower case.
+    private final Set<String> used = new HashSet<String>();
+    
+    /**
+     * Creates a writer which puts the shortcuts at the top level of the archive.
+     * 
+     * @param stream The stream to write the archive to.  It is closed by {@link #close()}.
+     */
+    public ShortcutArchiveWriter(OutputStream stream) {
+        this(stream, null);
+    }
+    
+    /**
+     * Creates a writer which puts the shortcuts in a directory in the archive.
+     * 
+     * @param stream The stream to write the archive to.  It is closed by {@link #close()}.
+     * @param directory The directory for the entries (e.g. "Bookmarks/Search"), or null for the top level.
+     */
+    public ShortcutArchiveWriter(OutputStream stream, String directory) {
+        this.zipStream = new ZipOutputStream(stream);
+        if(directory == null || directory.isEmpty()) {
+            this.directory = "";
+        } else {
+            this.directory = directory.endsWith("/") ? directory : directory + "/";
+        }
+    }
+    
+    /**
+     * Writes a shortcut as a new entry.
+     * 
+     * @param writer The writer for the type of shortcut to create.
+     * @param name The name of the shortcut, which is also used to create the entry name.
+     * @param url The URL.
+     * @return The name of the entry.  Non-null.
+     * @throws ShortcutWriteException If any error occurs while writing to the archive.
+     */
+    public String write(ShortcutWriter writer, String name, String url)
+            throws ShortcutWriteException {
+        String entryName = directory + createUniqueFilename(writer, name);
+        try {
+            zipStream.putNextEntry(new ZipEntry(entryName));
+            writer.writeWithoutClosing(zipStream, name, url);
+            zipStream.closeEntry();
+        } catch (IOException e) {
+            throw new ShortcutWriteException(e);
+        }
+        return entryName;
+    }
+    
+    /* Creates a file name which has not been used yet. */
+    String createUniqueFilename(ShortcutWriter writer, String name) {
+        return writer.createNumberedFilename(name, writer.reserveNumberedFilename(name, 1, used));
+    }
+    
+    /**
+     * Finishes the archive (writing the central directory) and closes the stream.
+     */
+    public void close()
+            throws IOException {
+        zipStream.close();
+    }
+}
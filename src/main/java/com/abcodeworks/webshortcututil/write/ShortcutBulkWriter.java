@@ -0,0 +1,305 @@
+/**
+ * Copyright 2014 by Andre Beckus
+ * 
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+
+ *   http://www.apache.org/licenses/LICENSE-2.0
+
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.abcodeworks.webshortcututil.write;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.NotDirectoryException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+
+import com.abcodeworks.webshortcututil.read.ShortcutContents;
+
+/**
+ * Writes many shortcuts into a directory, writing files in parallel.
+ * 
+ * <p>
+ * File names are created with {@link ShortcutWriter#createFullFilename(String)}.  Different names
+ * can give the same file name (e.g. after invalid characters are removed or long names are
+ * truncated), so if a file name has already been used, or the file already exists, a number is
+ * added, e.g. "Google (2).url".  File names are compared ignoring case, since the directory may
+ * be on a file system that ignores case.  Names are reserved in record order, so the same records
+ * always give the same file names in an empty directory.
+ * </p>
+ * 
+ * <p>
+ * Each file is created as it is opened ({@link StandardOpenOption#CREATE_NEW}), so an existing
+ * file is never overwritten, even if another process creates it during the export.  The outcome
+ * for each record is passed to a {@link ShortcutWriteListener} as soon as it is known.  The number
+ * of records queued or being written at any one time is limited, so the records may come from
+ * a lazy source (e.g. a database cursor) without being held in memory.
+ * </p>
+ * 
+ * <p>
+ * Example:
+ * <pre>
+ * new ShortcutBulkWriter().write(Paths.get("/home/me/export"), new UrlShortcutWriter(), bookmarks,
+ *         new ShortcutWriteListener() {
+ *     public void shortcutWritten(ShortcutContents record, Path file) {
+ *         System.out.println(record.getName() + " -&gt; " + file);
+ *     }
+ *     public void shortcutFailed(ShortcutContents record, ShortcutWriteException e) {
+ *         System.err.println(record.getName() + ": " + e);
+ *     }
+ * });
+ * </pre>
+ * </p>
+ * 
+ * <p>
+ * A bulk writer may be used for several exports, including concurrent exports.
+ * The {@link ShortcutWriter} must be thread-safe, which the writers in this package are.
+ * </p>
+ * 
+ */
+public class ShortcutBulkWriter {
+    /** The number of in-flight records allowed for each writing thread by default. */
+    static final int DEFAULT_IN_FLIGHT_PER_THREAD = 4;
+    
+    private final Executor executor;
+    private final int threads;
+    private final int maxInFlight;
+    
+    /**
+     * Creates a bulk writer which writes files using one thread per available processor.
+     * A new thread pool is created for each export and shut down when the export ends.
+     */
+    public ShortcutBulkWriter() {
+        this(Runtime.getRuntime().availableProcessors());
+    }
+    
+    /**
+     * Creates a bulk writer which writes files using the specified number of threads.
+     * A new thread pool is created for each export and shut down when the export ends.
+     * 
+     * @param threads The number of threads used to write files.  More threads than processors
+     *                can help on storage which handles many requests at once (e.g. network drives).
+     */
+    public ShortcutBulkWriter(int threads) {
+        if(threads < 1) {
+            throw new IllegalArgumentException("threads must be at least 1");
+        }
+        this.executor = null;
+        this.threads = threads;
+        this.maxInFlight = threads * DEFAULT_IN_FLIGHT_PER_THREAD;
+    }
+    
+    /**
+     * Creates a bulk writer which writes files on the specified executor.
+     * The executor is not shut down by the bulk writer.
+     * 
+     * @param executor The executor used to write files.
+     * @param maxInFlight The maximum number of records which may be queued or being written at the same time.
+     */
+    public ShortcutBulkWriter(Executor executor, int maxInFlight) {
+        if(executor == null) {
+            throw new NullPointerException("executor");
+        }
+        if(maxInFlight < 1) {
+            throw new IllegalArgumentException("maxInFlight must be at least 1");
+        }
+        this.executor = executor;
+        this.threads = 0;
+        this.maxInFlight = maxInFlight;
+    }
+    
+    /**
+     * Same as {@link #write(Path, ShortcutWriter, Iterator, ShortcutWriteListener)}.
+     */
+    public void write(Path directory, ShortcutWriter writer, Iterable<? extends ShortcutContents> records, ShortcutWriteListener listener)
+            throws IOException {
+        write(directory, writer, records.iterator(), listener);
+    }
+    
+    /**
+     * Writes a shortcut file for each record.  This method returns once every record has been
+     * written (or has failed) and the listener has been called for it.
+     * 
+     * @param directory The directory to write the files to.  It must already exist.
+     * @param writer The writer for the type of shortcut to create.
+     * @param records The names and URLs of the shortcuts.  The iterator is only used by the calling thread.
+     * @param listener Receives the outcome for each record.
+     * @throws IOException If the directory does not exist, or if the export is interrupted
+     *                     ({@link InterruptedIOException}).  Errors for individual records are
+     *                     passed to the listener instead.
+     */
+    public void write(Path directory, ShortcutWriter writer, Iterator<? extends ShortcutContents> records, ShortcutWriteListener listener)
+            throws IOException {
+        if(!Files.exists(directory)) {
+            throw new FileNotFoundException(directory.toString());
+        }
+        if(!Files.isDirectory(directory)) {
+            throw new NotDirectoryException(directory.toString());
+        }
+        
+        ExecutorService ownExecutor = null;
+        Executor exportExecutor = executor;
+        if(exportExecutor == null) {
+            ownExecutor = Executors.newFixedThreadPool(threads);
+            exportExecutor = ownExecutor;
+        }
+        
+        Export export = new Export(directory, writer, listener);
+        try {
+            while(records.hasNext()) {
+                export.submit(exportExecutor, records.next());
+            }
+        } finally {
+            try {
+                export.awaitCompletion();
+            } finally {
+                if(ownExecutor != null) {
+                    ownExecutor.shutdown();
+                }
+            }
+        }
+    }
+    
+    /* The state of a single export. */
+    private class Export {
+        private final Path directory;
+        private final ShortcutWriter writer;
+        private final ShortcutWriteListener listener;
+        private final Semaphore inFlight = new Semaphore(maxInFlight);
+        // File names which have been reserved, in lower case.
+        private final Set<String> reserved = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+        
+        Export(Path directory, ShortcutWriter writer, ShortcutWriteListener listener) {
+            this.directory = directory;
+            this.writer = writer;
+            this.listener = listener;
+        }
+        
+        /* Reserves the first free file name for the record, starting at the specified number.
+         * Returns the number of the reserved name. */
+        int reserve(String name, int number) {
+            return writer.reserveNumberedFilename(name, number, reserved);
+        }
+        
+        void submit(Executor executor, ShortcutContents record)
+                throws InterruptedIOException {
+            // Wait for a free slot so the queue does not grow without bound.
+            try {
+                inFlight.acquire();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Export interrupted");
+            }
+            
+            try {
+                executor.execute(new WriteTask(record, reserve(record.getName(), 1)));
+            } catch (RejectedExecutionException e) {
+                inFlight.release();
+                throw e;
+            }
+        }
+        
+        /* Waits for all of the submitted records to be written. */
+        void awaitCompletion()
+                throws InterruptedIOException {
+            try {
+                inFlight.acquire(maxInFlight);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Export interrupted");
+            }
+            inFlight.release(maxInFlight);
+        }
+        
+        private class WriteTask
+                implements Runnable {
+            private final ShortcutContents record;
+            private int number;
+            
+            WriteTask(ShortcutContents record, int number) {
+                this.record = record;
+                this.number = number;
+            }
+            
+            public void run() {
+                try {
+                    Path file;
+                    try {
+                        file = write();
+                    } catch (ShortcutWriteException e) {
+                        listener.shortcutFailed(record, e);
+                        return;
+                    } catch (RuntimeException e) {
+                        // e.g. a bug in the writer
+                        listener.shortcutFailed(record, new ShortcutWriteException(e));
+                        return;
+                    }
+                    listener.shortcutWritten(record, file);
+                } finally {
+                    inFlight.release();
+                }
+            }
+            
+            private Path write()
+                    throws ShortcutWriteException {
+                while(true) {
+                    Path file = directory.resolve(writer.createNumberedFilename(record.getName(), number));
+                    OutputStream stream;
+                    try {
+                        stream = Files.newOutputStream(file, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+                    } catch (FileAlreadyExistsException e) {
+                        // A file which was there before the export (or was created by someone else)
+                        number = reserve(record.getName(), number + 1);
+                        continue;
+                    } catch (IOException e) {
+                        throw new ShortcutWriteException(e);
+                    }
+                    
+                    boolean written = false;
+                    try {
+                        // The stream is closed by the writer.
+                        writer.write(stream, record.getName(), record.getUrlString());
+                        written = true;
+                    } finally {
+                        if(!written) {
+                            // Do not leave a partial file behind.
+                            try {
+                                stream.close();
+                                Files.deleteIfExists(file);
+                            } catch (IOException e) {
+                                // Ignore - the original error is more useful.
+                            }
+                        }
+                    }
+                    return file;
+                }
+            }
+        }
+    }
+}
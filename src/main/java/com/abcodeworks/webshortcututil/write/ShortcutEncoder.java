@@ -0,0 +1,285 @@
+/**
+ * Copyright 2014 by Andre Beckus
+ * 
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+
+ *   http://www.apache.org/licenses/LICENSE-2.0
+
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.abcodeworks.webshortcututil.write;
+
+/**
+ * Helpers for writers which encode a whole shortcut into a byte array before writing it.
+ * 
+ * <p>
+ * The writers work out the exact size of the shortcut first and then fill in the bytes in one pass,
+ * so nothing needs to be resized.  A buffer is kept for each thread and reused, so writing a typical
+ * shortcut does not allocate anything apart from what the stream itself does.
+ * </p>
+ */
+final class ShortcutEncoder {
+    /* Buffers larger than this are not kept, so one huge shortcut does not pin the memory. */
+    static final int MAX_CACHED_BUFFER_SIZE = 8192;
+    
+    private static final byte REPLACEMENT = '?';
+    
+    /* UTF-7 (RFC 2152) as written by the jutf7 "UTF-7" charset: only the characters of
+     * Set D and whitespace are written directly, everything else is written in base64. */
+    private static final String UTF7_DIRECT_CHARS = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789'(),-./:? \t\r\n";
+    private static final byte[] BASE64_CHARS = ascii("ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789+/");
+    private static final boolean[] utf7Direct = new boolean[0x80],
+                                   base64 = new boolean[0x80];
+    static {
+        for(int i = 0; i < UTF7_DIRECT_CHARS.length(); i++) {
+            utf7Direct[UTF7_DIRECT_CHARS.charAt(i)] = true;
+        }
+        for(int i = 0; i < BASE64_CHARS.length; i++) {
+            base64[BASE64_CHARS[i]] = true;
+        }
+    }
+    
+    private static final ThreadLocal<byte[]> buffers = new ThreadLocal<byte[]>() {
+        @Override
+        protected byte[] initialValue() {
+            return new byte[512];
+        }
+    };
+    
+    private ShortcutEncoder() {
+    }
+    
+    /**
+     * Returns a buffer of at least the specified size.  The buffer may be the same one
+     * returned by an earlier call on the same thread, so it must not be held on to.
+     */
+    static byte[] buffer(int size) {
+        byte[] buffer = buffers.get();
+        if(buffer.length < size) {
+            buffer = new byte[size];
+            if(size <= MAX_CACHED_BUFFER_SIZE) {
+                buffers.set(buffer);
+            }
+        }
+        return buffer;
+    }
+    
+    /**
+     * Converts a constant which only contains ASCII characters.
+     */
+    static byte[] ascii(String str) {
+        byte[] bytes = new byte[str.length()];
+        for(int i = 0; i < bytes.length; i++) {
+            bytes[i] = (byte)str.charAt(i);
+        }
+        return bytes;
+    }
+    
+    static boolean isAscii(String str) {
+        for(int i = 0; i < str.length(); i++) {
+            if(str.charAt(i) >= 0x80) {
+                return false;
+            }
+        }
+        return true;
+    }
+    
+    static int put(byte[] dst, int pos, byte[] src) {
+        System.arraycopy(src, 0, dst, pos, src.length);
+        return pos + src.length;
+    }
+    
+    /**
+     * Copies the string one byte per character, replacing each character outside ASCII with '?'.
+     * A surrogate pair is a single character, so it is replaced by a single '?'.
+     * The destination must have room for one byte per char.
+     * 
+     * @return The position after the last byte written.
+     */
+    static int putAscii(byte[] dst, int pos, String str) {
+        int length = str.length();
+        for(int i = 0; i < length; i++) {
+            char c = str.charAt(i);
+            if(c < 0x80) {
+                dst[pos++] = (byte)c;
+            } else {
+                if(Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(str.charAt(i + 1))) {
+                    i++;
+                }
+                dst[pos++] = REPLACEMENT;
+            }
+        }
+        return pos;
+    }
+    
+    /**
+     * Returns the number of bytes in the UTF-8 encoding of the string.  An unpaired surrogate
+     * counts as one byte, as it is encoded as '?' (the same as String.getBytes and OutputStreamWriter).
+     */
+    static int utf8Length(String str) {
+        int length = str.length(),
+            bytes = length;
+        for(int i = 0; i < length; i++) {
+            char c = str.charAt(i);
+            if(c < 0x80) {
+                continue;
+            } else if(c < 0x800) {
+                bytes += 1;
+            } else if(Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(str.charAt(i + 1))) {
+                // Two chars, four bytes
+                bytes += 2;
+                i++;
+            } else if(Character.isSurrogate(c)) {
+                // Replaced
+            } else {
+                bytes += 2;
+            }
+        }
+        return bytes;
+    }
+    
+    /**
+     * Encodes the string as UTF-8.  The destination must have room for {@link #utf8Length(String)} bytes.
+     * 
+     * @return The position after the last byte written.
+     */
+    static int putUtf8(byte[] dst, int pos, String str) {
+        int length = str.length();
+        for(int i = 0; i < length; i++) {
+            char c = str.charAt(i);
+            if(c < 0x80) {
+                dst[pos++] = (byte)c;
+            } else if(c < 0x800) {
+                dst[pos++] = (byte)(0xC0 | (c >> 6));
+                dst[pos++] = (byte)(0x80 | (c & 0x3F));
+            } else if(Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(str.charAt(i + 1))) {
+                int codePoint = Character.toCodePoint(c, str.charAt(++i));
+                dst[pos++] = (byte)(0xF0 | (codePoint >> 18));
+                dst[pos++] = (byte)(0x80 | ((codePoint >> 12) & 0x3F));
+                dst[pos++] = (byte)(0x80 | ((codePoint >> 6) & 0x3F));
+                dst[pos++] = (byte)(0x80 | (codePoint & 0x3F));
+            } else if(Character.isSurrogate(c)) {
+                dst[pos++] = REPLACEMENT;
+            } else {
+                dst[pos++] = (byte)(0xE0 | (c >> 12));
+                dst[pos++] = (byte)(0x80 | ((c >> 6) & 0x3F));
+                dst[pos++] = (byte)(0x80 | (c & 0x3F));
+            }
+        }
+        return pos;
+    }
+    
+    private static boolean isUtf7Direct(char c) {
+        return c < 0x80 && utf7Direct[c];
+    }
+    
+    /**
+     * Returns the number of bytes in the UTF-7 encoding of the string (see {@link #putUtf7(byte[], int, String)}).
+     */
+    static int utf7Length(String str) {
+        int length = str.length(),
+            bytes = 0,
+            bits = 0;
+        boolean inBase64 = false;
+        for(int i = 0; i < length; i++) {
+            char c = str.charAt(i);
+            if(isUtf7Direct(c)) {
+                if(inBase64) {
+                    if(bits != 0) {
+                        bytes++;
+                    }
+                    if(base64[c] || c == '-') {
+                        bytes++;
+                    }
+                    inBase64 = false;
+                    bits = 0;
+                }
+                bytes++;
+            } else if(!inBase64 && c == '+') {
+                bytes += 2;
+            } else {
+                if(!inBase64) {
+                    bytes++;
+                    inBase64 = true;
+                }
+                bits += 16;
+                bytes += bits / 6;
+                bits %= 6;
+            }
+        }
+        if(inBase64) {
+            bytes += (bits != 0) ? 2 : 1;
+        }
+        return bytes;
+    }
+    
+    /**
+     * Encodes the string as UTF-7, giving the same bytes as the jutf7 "UTF-7" charset
+     * (e.g. the '-' ending a base64 run is left out unless it is needed).  Each char is
+     * encoded on its own, so an unpaired surrogate is encoded as is.  The destination must
+     * have room for {@link #utf7Length(String)} bytes.
+     * 
+     * @return The position after the last byte written.
+     */
+    static int putUtf7(byte[] dst, int pos, String str) {
+        int length = str.length(),
+            bits = 0,
+            sextet = 0;
+        boolean inBase64 = false;
+        for(int i = 0; i < length; i++) {
+            char c = str.charAt(i);
+            if(isUtf7Direct(c)) {
+                if(inBase64) {
+                    // Finish the base64 run.  The '-' is only needed if the next character
+                    // would otherwise be taken as part of the run.
+                    if(bits != 0) {
+                        dst[pos++] = BASE64_CHARS[sextet];
+                    }
+                    if(base64[c] || c == '-') {
+                        dst[pos++] = '-';
+                    }
+                    inBase64 = false;
+                    bits = 0;
+                    sextet = 0;
+                }
+                dst[pos++] = (byte)c;
+            } else if(!inBase64 && c == '+') {
+                dst[pos++] = '+';
+                dst[pos++] = '-';
+            } else {
+                if(!inBase64) {
+                    dst[pos++] = '+';
+                    inBase64 = true;
+                }
+                // Sixteen more bits, which are written six at a time.  Any left over
+                // are kept in the top of the next sextet.
+                bits += 16;
+                while(bits >= 6) {
+                    bits -= 6;
+                    dst[pos++] = BASE64_CHARS[(sextet + (c >> bits)) & 0x3F];
+                    sextet = 0;
+                }
+                sextet = (c << (6 - bits)) & 0x3F;
+            }
+        }
+        if(inBase64) {
+            if(bits != 0) {
+                dst[pos++] = BASE64_CHARS[sextet];
+            }
+            dst[pos++] = '-';
+        }
+        return pos;
+    }
+}
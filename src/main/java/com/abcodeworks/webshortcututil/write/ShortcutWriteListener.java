@@ -0,0 +1,54 @@
+/**
+ * Copyright 2014 by Andre Beckus
+ * 
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+
+ *   http://www.apache.org/licenses/LICENSE-2.0
+
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.abcodeworks.webshortcututil.write;
+
+import java.nio.file.Path;
+
+import com.abcodeworks.webshortcututil.read.ShortcutContents;
+
+/**
+ * Receives the outcome for each shortcut written by a {@link ShortcutBulkWriter}.
+ * 
+ * <p>
+ * The methods are called from the threads that write the shortcuts, so several
+ * calls may be in progress at the same time.  Implementations must be thread-safe.
+ * </p>
+ * 
+ */
+public interface ShortcutWriteListener {
+    /**
+     * Called when a shortcut has been written.
+     * 
+     * @param record The name and URL which were written.
+     * @param file The file which was created.  Its name may have a number added to make it unique (e.g. "Google (2).url").
+     */
+    void shortcutWritten(ShortcutContents record, Path file);
+    
+    /**
+     * Called when a shortcut could not be written.  Nothing is left behind for the shortcut,
+     * and the remaining shortcuts are still written.
+     * 
+     * @param record The name and URL which could not be written.
+     * @param e The reason for the failure.  The cause is the {@link java.io.IOException}, if there was one.
+     */
+    void shortcutFailed(ShortcutContents record, ShortcutWriteException e);
+}
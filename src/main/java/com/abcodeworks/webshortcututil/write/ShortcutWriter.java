@@ -22,13 +22,21 @@
 package com.abcodeworks.webshortcututil.write;
 
 import java.io.File;
-import java.io.FileNotFoundException;
-import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
-import java.io.Writer;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+
+import com.abcodeworks.webshortcututil.read.ShortcutContents;
 
 /**
  * Parent class for writers.
@@ -40,11 +48,20 @@ public abstract class ShortcutWriter {
          */
         public final int DEFAULT_MAX_FILENAME_LENGTH = 100;
         
-        /* Matches characters that are invalid for file names.
-         * This works by matching characters that are not in a list of valid characters.
+        /* The ASCII characters which are valid in file names.  Every other ASCII character is removed.
          * Note that unicode characters are all considered valid. 
          */
-        Pattern invalidCharPattern = Pattern.compile("[^ !#\\$&'\\(\\)+,\\-\\.,0-9;=\\@A-Z\\[\\]_`a-z\\{\\}~\u0080-\uFFFF]");
+        private static final boolean[] validFilenameChars = new boolean[0x80];
+        static {
+            String valid = " !#$&'()+,-.;=@[]_`{}~0123456789ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz";
+            for(int i = 0; i < valid.length(); i++) {
+                validFilenameChars[valid.charAt(i)] = true;
+            }
+        }
+        
+        private static boolean isValidFilenameChar(char c) {
+            return c >= 0x80 || validFilenameChars[c];
+        }
     
         /**
          * Indicates the standard extension used for the writer's shortcut type.  
@@ -64,6 +81,22 @@ public abstract class ShortcutWriter {
         abstract public void write(OutputStream stream, String name, String url)
             throws ShortcutWriteException;
         
+        /**
+         * Similar to {@link #write(OutputStream, String, String)}, but the stream is flushed instead of
+         * being closed.  This allows several shortcuts to be written to one stream, such as the entries
+         * of a {@link java.util.zip.ZipOutputStream}.
+         * 
+         * @param stream The stream to write to.  The stream is flushed but not closed.
+         * @param name The name of the shortcut.  This may be ignored depending on the shortcut type.
+         * @param url The URL.
+         * @throws ShortcutWriteException If any error occurs while writing to the stream.
+         */
+        public void writeWithoutClosing(OutputStream stream, String name, String url)
+            throws ShortcutWriteException {
+            // The writers close the stream they are given when they are done.
+            write(new NonClosingOutputStream(stream), name, url);
+        }
+        
         /**
          * Creates a file name based on the specified shortcut name.
          * The goal is to allow the file to be stored on a wide variety
@@ -83,7 +116,7 @@ public abstract class ShortcutWriter {
          * removing them or converting them to ASCII.</li>
          * <li>If the filename is longer than the length specified by
          * {@link #DEFAULT_MAX_FILENAME_LENGTH} (including the extension),
-         * it will be truncated.  This maximum length was chosen somewhat
+         * it will be truncated (a character made of a surrogate pair is never split).  This maximum length was chosen somewhat
          * arbitrarily.  You may optionally override it by using
          * {@link #createFullFilename(String, int)}.</li>
          * </ul>
@@ -134,7 +167,6 @@ public abstract class ShortcutWriter {
          */
         public String createBaseFilename(String name, int maxLength) {
             String extension = defaultExtension();
-            String cleanName;
             
             /* Get the minimum length of a file name with the given extension.
                Check it against the supplied maxLength. */
@@ -143,28 +175,68 @@ public abstract class ShortcutWriter {
                 throw new IllegalArgumentException("maxLength must be greater than or equal to " + minLength);
             }
             
+            // Find out how long the base name can be to meet the specified maxLength
+            // (when the extension is included).
+            int nameMaxLength = maxLength - extension.length() - 1;
+            
             if(name == null) {
                 // If no name is given, just use _ as a default.
-                cleanName = "_";
-            } else {
-                // Otherwise remove all invalid characters
-                Matcher matcher = invalidCharPattern.matcher(name);
-                cleanName = matcher.replaceAll("");
-                
-                // If the name has all invalid characters use _ as a default (as before).
-                if(cleanName.equals("")) {
-                    cleanName = "_";
-                }
+                return "_";
             }
             
-            // Find out how long the base name can be to meet the specified maxLength
-            // (when the extension is included).
-            int nameMaxLength = Math.min(maxLength - extension.length() - 1, cleanName.length());
+            // Copy the valid characters, stopping once the base name is as long as it can be.
+            int length = name.length();
+            char[] chars = new char[Math.min(length, nameMaxLength)];
+            int count = 0,
+                i = 0;
+            for(; i < length && count < chars.length; i++) {
+                char c = name.charAt(i);
+                if(isValidFilenameChar(c)) {
+                    chars[count++] = c;
+                }
+            }
             
-            // Truncate the base name
-            String filename = cleanName.substring(0, nameMaxLength);
+            // Do not cut a surrogate pair in half
+            if(count == chars.length && count > 0 && Character.isHighSurrogate(chars[count - 1])) {
+                while(i < length && !isValidFilenameChar(name.charAt(i))) {
+                    i++;
+                }
+                if(i < length && Character.isLowSurrogate(name.charAt(i))) {
+                    count--;
+                }
+            }
             
-            return filename;
+            if(count == 0) {
+                // If the name has all invalid characters use _ as a default (as before).
+                return "_";
+            } else if(count == length) {
+                // Nothing was removed
+                return name;
+            }
+            return new String(chars, 0, count);
+        }
+        
+        /* Creates the file name to use when the name from createFullFilename(name) is
+         * already taken.  Number 1 is the plain name, and later numbers have the number
+         * added to the end of the base name (e.g. "Google (2).url"). */
+        String createNumberedFilename(String name, int number) {
+            if(number <= 1) {
+                return createFullFilename(name);
+            }
+            String suffix = " (" + number + ")";
+            return createBaseFilename(name, DEFAULT_MAX_FILENAME_LENGTH - suffix.length())
+                    + suffix + "." + defaultExtension();
+        }
+        
+        /* Adds the first numbered file name (see createNumberedFilename), starting at the specified
+         * number, which is not already in the set of used names, and returns its number.  The names
+         * are compared in lower case, since many file systems ignore case.  The set may be shared
+         * between threads if it is a concurrent set. */
+        int reserveNumberedFilename(String name, int number, Set<String> used) {
+            while(!used.add(createNumberedFilename(name, number).toLowerCase(Locale.ROOT))) {
+                number++;
+            }
+            return number;
         }
         
         /**
@@ -190,15 +262,15 @@ public abstract class ShortcutWriter {
         public void write(File file, String name, String url)
                         throws FileAlreadyExistsException,
                                ShortcutWriteException {
-            if(file.exists()) {
-                throw new FileAlreadyExistsException();
-            }
-
             // We need to open a stream since the core implementation deals with streams.
-            FileOutputStream stream = null;
+            // The file is created as it is opened, so there is no gap between checking
+            // that it does not exist and creating it.
+            OutputStream stream = null;
             try {
-                stream = new FileOutputStream(file);
+                stream = Files.newOutputStream(file.toPath(), StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
                 write(stream, name, url);
+            } catch (java.nio.file.FileAlreadyExistsException e) {
+                throw new FileAlreadyExistsException(e);
             } catch (IOException e) {
                 throw new ShortcutWriteException(e);
             } finally {
@@ -211,4 +283,82 @@ public abstract class ShortcutWriter {
                 }
             }
         }
-}
\ No newline at end of file
+        
+        /**
+         * Similar to {@link #writeAsync(Path, String, String, Executor)}, but the shortcut is
+         * encoded on {@link ForkJoinPool#commonPool()}.
+         * 
+         * @param file The file to write to. The file must not already exist.
+         * @param name The name of the shortcut.  These may be ignored depending on the shortcut type.
+         * @param url The URL.
+         * @return A future for the file.  Non-null.
+         */
+        public CompletableFuture<Path> writeAsync(Path file, String name, String url) {
+            return writeAsync(file, name, url, ForkJoinPool.commonPool());
+        }
+        
+        /**
+         * Writes a shortcut file without blocking the calling thread.
+         * 
+         * The shortcut is encoded on the executor, and the file is then created (in the same way as
+         * {@link #write(File, String, String)}, so it must not already exist) and written with an
+         * {@link java.nio.channels.AsynchronousFileChannel}.  If the write fails, the partly written file is deleted.
+         * 
+         * @param file The file to write to. The file must not already exist.
+         * @param name The name of the shortcut.  These may be ignored depending on the shortcut type.
+         * @param url The URL.
+         * @param executor The executor used to encode the shortcut.
+         * @return A future for the file.  Non-null.  It fails with a {@link FileAlreadyExistsException}
+         *         if the file already exists, or with a {@link ShortcutWriteException} if any other error occurs.
+         */
+        public CompletableFuture<Path> writeAsync(Path file, String name, String url, Executor executor) {
+            if(executor == null) {
+                throw new NullPointerException("executor");
+            }
+            AsyncShortcutWrite write = new AsyncShortcutWrite(this, file, name, url, executor, null);
+            write.start();
+            return write.getFuture();
+        }
+        
+        /**
+         * Writes many shortcuts into a directory without blocking the calling thread
+         * (see {@link #writeAsync(Path, String, String, Executor)}).
+         * 
+         * The file names are created with {@link #createFullFilename(String)}.  If a name is used more
+         * than once (ignoring case), a number is added, e.g. "Google (2).url".  A file which already exists
+         * on disk is not overwritten: its future fails with a {@link FileAlreadyExistsException}
+         * (use {@link ShortcutBulkWriter} to number around existing files instead).
+         * 
+         * Only maxOutstanding shortcuts are encoded or written at any one time.  The rest wait in a queue,
+         * so this method returns straight away even for a large export.
+         * 
+         * @param directory The directory to write to.  It must exist.
+         * @param shortcuts The shortcuts to write.
+         * @param executor The executor used to encode the shortcuts.
+         * @param maxOutstanding The maximum number of shortcuts which may be encoded or written at the same time.
+         * @return The futures for the files, in the same order as the shortcuts.  Non-null.
+         */
+        public List<CompletableFuture<Path>> writeAllAsync(Path directory, Iterable<? extends ShortcutContents> shortcuts,
+                                                           Executor executor, int maxOutstanding) {
+            if(executor == null) {
+                throw new NullPointerException("executor");
+            }
+            if(maxOutstanding < 1) {
+                throw new IllegalArgumentException("maxOutstanding must be at least 1");
+            }
+            
+            AsyncShortcutWrite.Limiter limiter = new AsyncShortcutWrite.Limiter(maxOutstanding);
+            // File names which have been used, in lower case.
+            Set<String> used = new HashSet<String>();
+            List<CompletableFuture<Path>> futures = new ArrayList<CompletableFuture<Path>>();
+            for(ShortcutContents shortcut : shortcuts) {
+                String filename = createNumberedFilename(shortcut.getName(), reserveNumberedFilename(shortcut.getName(), 1, used));
+                
+                AsyncShortcutWrite write = new AsyncShortcutWrite(this, directory.resolve(filename),
+                                                                  shortcut.getName(), shortcut.getUrlString(), executor, limiter);
+                futures.add(write.getFuture());
+                limiter.add(write);
+            }
+            return futures;
+        }
+}
@@ -24,23 +24,29 @@ package com.abcodeworks.webshortcututil.write;
 import java.io.BufferedWriter;
 import java.io.IOException;
 import java.io.OutputStream;
-import java.io.OutputStreamWriter;
-import java.nio.charset.Charset;
-import java.nio.charset.CharsetEncoder;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
-
-import com.abcodeworks.webshortcututil.read.ShortcutReadException;
 
 /**
  * Writes URL shortcuts (Windows shortcuts with a .url extension).
  * 
  */
 public class UrlShortcutWriter extends ShortcutWriter {
+    private static final byte[] INTERNET_SHORTCUT_HEADER = ShortcutEncoder.ascii("[InternetShortcut]\r\nURL="),
+                                INTERNET_SHORTCUT_A_HEADER = ShortcutEncoder.ascii("[InternetShortcut.A]\r\nURL="),
+                                INTERNET_SHORTCUT_W_HEADER = ShortcutEncoder.ascii("[InternetShortcut.W]\r\nURL="),
+                                LINE_END = ShortcutEncoder.ascii("\r\n");
+    
     public String defaultExtension() {
         return "url";
     }
     
+    /**
+     * Writes one section of a URL shortcut.
+     * 
+     * @deprecated {@link #write(OutputStream, String, String)} now encodes the sections straight to bytes,
+     *             so this method is no longer called, and overriding it has no effect.  It is only kept
+     *             for compatibility and will be removed in the next major version.
+     */
+    @Deprecated
     protected void writeSection(BufferedWriter writer, String header, String url)
             throws IOException {
         writer.write("[");
@@ -54,42 +60,42 @@ public class UrlShortcutWriter extends ShortcutWriter {
     @Override
     public void write(OutputStream stream, String name, String url)
             throws ShortcutWriteException {
-        BufferedWriter writer = new BufferedWriter(new OutputStreamWriter(stream));
         try {
-            // We need to check if the URL only contains ASCII characters.  If it does not we need to encode it using UTF7.
-            // See http://stackoverflow.com/questions/3585053/in-java-is-it-possible-to-check-if-a-string-is-only-ascii
-            CharsetEncoder asciiEncoder = Charset.forName("US-ASCII").newEncoder();
-            if(asciiEncoder.canEncode(url)) {
-                writeSection(writer, "InternetShortcut", url);
+            // The file only ever contains ASCII, so each character is written as one byte.
+            byte[] bytes;
+            int length;
+            if(ShortcutEncoder.isAscii(url)) {
+                bytes = ShortcutEncoder.buffer(INTERNET_SHORTCUT_HEADER.length + url.length() + LINE_END.length);
+                length = ShortcutEncoder.put(bytes, 0, INTERNET_SHORTCUT_HEADER);
+                length = ShortcutEncoder.putAscii(bytes, length, url);
+                length = ShortcutEncoder.put(bytes, length, LINE_END);
             } else {
-                // We still need the ASCII sections, or Windows gives an error.
-                Pattern unicodeCharPattern = Pattern.compile("[\u0080-\uFFFF]");
-                Matcher matcher = unicodeCharPattern.matcher(url);
-                String ascii_url = matcher.replaceAll("?");
-                writeSection(writer, "InternetShortcut", ascii_url);
-                writeSection(writer, "InternetShortcut.A", ascii_url);
-
-                // Note that the jutf7 library (http://jutf7.sourceforge.net/)
-                // needs to be added as a Maven dependency (or I think can be just
-                // added to the classpath) in order to add UTF-7 support.
-                byte[] asciiBytes = url.getBytes("UTF-7");
-                String utf7Url = new String(asciiBytes, "US-ASCII");
-                writeSection(writer, "InternetShortcut.W", utf7Url);
+                // We still need the ASCII sections (with the non-ASCII characters
+                // replaced by '?'), or Windows gives an error.  The URL is also
+                // written in UTF-7 in the [InternetShortcut.W] section.
+                bytes = ShortcutEncoder.buffer(INTERNET_SHORTCUT_HEADER.length + INTERNET_SHORTCUT_A_HEADER.length + 2 * url.length()
+                                               + INTERNET_SHORTCUT_W_HEADER.length + ShortcutEncoder.utf7Length(url) + 3 * LINE_END.length);
+                length = ShortcutEncoder.put(bytes, 0, INTERNET_SHORTCUT_HEADER);
+                length = ShortcutEncoder.putAscii(bytes, length, url);
+                length = ShortcutEncoder.put(bytes, length, LINE_END);
+                length = ShortcutEncoder.put(bytes, length, INTERNET_SHORTCUT_A_HEADER);
+                length = ShortcutEncoder.putAscii(bytes, length, url);
+                length = ShortcutEncoder.put(bytes, length, LINE_END);
+                length = ShortcutEncoder.put(bytes, length, INTERNET_SHORTCUT_W_HEADER);
+                length = ShortcutEncoder.putUtf7(bytes, length, url);
+                length = ShortcutEncoder.put(bytes, length, LINE_END);
             }
-
-            writer.close();
+            
+            stream.write(bytes, 0, length);
         } catch (IOException e) {
-            throw new ShortcutWriteException();
+            throw new ShortcutWriteException(e);
         } finally {
             try {
-                if(writer != null) {
-                    writer.close();
-                }
+                stream.close();
             } catch (IOException e) {
                 throw new ShortcutWriteException(e);
             }
         }
-        
     }
 
 }
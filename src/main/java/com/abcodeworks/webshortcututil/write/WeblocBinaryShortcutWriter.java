@@ -23,6 +23,8 @@ package com.abcodeworks.webshortcututil.write;
 
 import java.io.IOException;
 import java.io.OutputStream;
+import java.util.Arrays;
+
 import com.dd.plist.NSObject;
 import com.dd.plist.PropertyListParser;
 
@@ -31,6 +33,27 @@ import com.dd.plist.PropertyListParser;
  * 
  */
 public class WeblocBinaryShortcutWriter extends WeblocShortcutWriter {
+    /* The file is written directly, laid out the same way as the files written by OSX:
+     *   Header      "bplist00"
+     *   Object 0    The dictionary, with key object 1 and value object 2
+     *   Object 1    The ASCII string "URL"
+     *   Object 2    The URL (an ASCII string if possible, otherwise UTF-16)
+     *   The offsets of the three objects, followed by the trailer.
+     */
+    private static final byte[] HEADER = ShortcutEncoder.ascii("bplist00"),
+                                DICTIONARY = { (byte)0xD1, 0x01, 0x02 },
+                                URL_KEY = { 0x53, 'U', 'R', 'L' };
+    
+    private static final int DICTIONARY_OFFSET = HEADER.length,
+                             URL_KEY_OFFSET = DICTIONARY_OFFSET + DICTIONARY.length,
+                             URL_OFFSET = URL_KEY_OFFSET + URL_KEY.length,
+                             OBJECT_COUNT = 3,
+                             TRAILER_LENGTH = 32;
+    
+    private static final int ASCII_STRING_MARKER = 0x50,
+                             UTF16_STRING_MARKER = 0x60,
+                             INT_MARKER = 0x10;
+    
     @Override
     protected void writePlist(OutputStream stream, NSObject root)
             throws ShortcutWriteException {
@@ -41,4 +64,93 @@ public class WeblocBinaryShortcutWriter extends WeblocShortcutWriter {
             throw new ShortcutWriteException(e);
         }
     }
+    
+    /* Number of bytes needed for an unsigned integer (1, 2 or 4). */
+    private static int byteCount(int value) {
+        if(value <= 0xFF) {
+            return 1;
+        } else if(value <= 0xFFFF) {
+            return 2;
+        } else {
+            return 4;
+        }
+    }
+    
+    private static int putInt(byte[] dst, int pos, int value, int size) {
+        for(int shift = 8 * (size - 1); shift >= 0; shift -= 8) {
+            dst[pos++] = (byte)(value >>> shift);
+        }
+        return pos;
+    }
+    
+    /* Writes an object marker, followed by an integer object if the length does not fit in the marker. */
+    private static int putMarker(byte[] dst, int pos, int marker, int length) {
+        if(length < 0x0F) {
+            dst[pos++] = (byte)(marker | length);
+        } else {
+            int size = byteCount(length);
+            dst[pos++] = (byte)(marker | 0x0F);
+            dst[pos++] = (byte)(INT_MARKER | Integer.numberOfTrailingZeros(size));
+            pos = putInt(dst, pos, length, size);
+        }
+        return pos;
+    }
+    
+    private static int markerLength(int length) {
+        return (length < 0x0F) ? 1 : 2 + byteCount(length);
+    }
+    
+    @Override
+    protected void writeUrl(OutputStream stream, String url)
+            throws ShortcutWriteException {
+        try {
+            int chars = url.length();
+            boolean ascii = ShortcutEncoder.isAscii(url);
+            int urlLength = markerLength(chars) + (ascii ? chars : 2 * chars),
+                offsetTableOffset = URL_OFFSET + urlLength,
+                // The offsets are all small, but OSX sizes them to hold the offset of the table itself.
+                offsetSize = byteCount(offsetTableOffset);
+            
+            byte[] bytes = ShortcutEncoder.buffer(offsetTableOffset + OBJECT_COUNT * offsetSize + TRAILER_LENGTH);
+            int length = ShortcutEncoder.put(bytes, 0, HEADER);
+            length = ShortcutEncoder.put(bytes, length, DICTIONARY);
+            length = ShortcutEncoder.put(bytes, length, URL_KEY);
+            if(ascii) {
+                length = putMarker(bytes, length, ASCII_STRING_MARKER, chars);
+                length = ShortcutEncoder.putAscii(bytes, length, url);
+            } else {
+                length = putMarker(bytes, length, UTF16_STRING_MARKER, chars);
+                for(int i = 0; i < chars; i++) {
+                    char c = url.charAt(i);
+                    bytes[length++] = (byte)(c >>> 8);
+                    bytes[length++] = (byte)c;
+                }
+            }
+            
+            // Offset table
+            length = putInt(bytes, length, DICTIONARY_OFFSET, offsetSize);
+            length = putInt(bytes, length, URL_KEY_OFFSET, offsetSize);
+            length = putInt(bytes, length, URL_OFFSET, offsetSize);
+            
+            // Trailer: six unused bytes, the offset and object reference sizes, then the
+            // number of objects, the top object and the offset of the offset table as longs.
+            Arrays.fill(bytes, length, length + 6, (byte)0);
+            length += 6;
+            bytes[length++] = (byte)offsetSize;
+            bytes[length++] = 1;
+            length = putInt(bytes, putInt(bytes, length, 0, 4), OBJECT_COUNT, 4);
+            length = putInt(bytes, length, 0, 8);
+            length = putInt(bytes, putInt(bytes, length, 0, 4), offsetTableOffset, 4);
+            
+            stream.write(bytes, 0, length);
+        } catch (IOException e) {
+            throw new ShortcutWriteException(e);
+        } finally {
+            try {
+                stream.close();
+            } catch (IOException e) {
+                throw new ShortcutWriteException(e);
+            }
+        }
+    }
 }
@@ -44,12 +44,24 @@ abstract public class WeblocShortcutWriter extends ShortcutWriter {
         return "webloc";
     }
 
-    @Override
-    public void write(OutputStream stream, String name, String url)
+    /**
+     * Writes a Webloc containing the URL, and closes the stream.
+     * 
+     * The default builds the property list and passes it to {@link #writePlist(OutputStream, NSObject)}.
+     * The writers in this package override it to write the bytes directly, as a Webloc
+     * is always the same one-key dictionary.
+     */
+    protected void writeUrl(OutputStream stream, String url)
             throws ShortcutWriteException {
         NSDictionary root = new NSDictionary();
         root.put("URL", url);
         writePlist(stream, root);
     }
+    
+    @Override
+    public void write(OutputStream stream, String name, String url)
+            throws ShortcutWriteException {
+        writeUrl(stream, url);
+    }
 
 }
@@ -31,6 +31,24 @@ import com.dd.plist.PropertyListParser;
  * 
  */
 public class WeblocXmlShortcutWriter extends WeblocShortcutWriter {
+    /* The file is written directly from a template, the same as PropertyListParser.saveAsXML
+     * would write it (with "\n" line endings on all platforms). */
+    private static final byte[] PREFIX = ShortcutEncoder.ascii(
+                                    "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n"
+                                    + "<!DOCTYPE plist PUBLIC \"-//Apple//DTD PLIST 1.0//EN\" \"http://www.apple.com/DTDs/PropertyList-1.0.dtd\">\n"
+                                    + "<plist version=\"1.0\">\n"
+                                    + "<dict>\n"
+                                    + "\t<key>URL</key>\n"
+                                    + "\t<string>"),
+                                SUFFIX = ShortcutEncoder.ascii(
+                                    "</string>\n"
+                                    + "</dict>\n"
+                                    + "</plist>"),
+                                CDATA_START = ShortcutEncoder.ascii("<![CDATA["),
+                                CDATA_END = ShortcutEncoder.ascii("]]>"),
+                                // "]]>" cannot appear in a CDATA section, so it is split across two
+                                CDATA_SPLIT_END = ShortcutEncoder.ascii("]]]]><![CDATA[>");
+    
     @Override
     public void writePlist(OutputStream stream, NSObject root)
             throws ShortcutWriteException {
@@ -41,4 +59,55 @@ public class WeblocXmlShortcutWriter extends WeblocShortcutWriter {
             throw new ShortcutWriteException(e);
         }
     }
+    
+    @Override
+    protected void writeUrl(OutputStream stream, String url)
+            throws ShortcutWriteException {
+        try {
+            // URLs with characters that need escaping are written as CDATA
+            boolean cdata = false;
+            int cdataEnds = 0;
+            for(int i = 0; i < url.length(); i++) {
+                char c = url.charAt(i);
+                if(c == '&' || c == '<' || c == '>') {
+                    cdata = true;
+                    if(c == '>' && url.startsWith("]]", i - 2)) {
+                        cdataEnds++;
+                    }
+                }
+            }
+            
+            int size = PREFIX.length + ShortcutEncoder.utf8Length(url) + SUFFIX.length;
+            if(cdata) {
+                size += CDATA_START.length + CDATA_END.length + cdataEnds * (CDATA_SPLIT_END.length - CDATA_END.length);
+            }
+            byte[] bytes = ShortcutEncoder.buffer(size);
+            int length = ShortcutEncoder.put(bytes, 0, PREFIX);
+            if(!cdata) {
+                length = ShortcutEncoder.putUtf8(bytes, length, url);
+            } else {
+                length = ShortcutEncoder.put(bytes, length, CDATA_START);
+                int start = 0,
+                    end;
+                while((end = url.indexOf("]]>", start)) >= 0) {
+                    length = ShortcutEncoder.putUtf8(bytes, length, url.substring(start, end));
+                    length = ShortcutEncoder.put(bytes, length, CDATA_SPLIT_END);
+                    start = end + CDATA_END.length;
+                }
+                length = ShortcutEncoder.putUtf8(bytes, length, (start == 0) ? url : url.substring(start));
+                length = ShortcutEncoder.put(bytes, length, CDATA_END);
+            }
+            length = ShortcutEncoder.put(bytes, length, SUFFIX);
+            
+            stream.write(bytes, 0, length);
+        } catch (IOException e) {
+            throw new ShortcutWriteException(e);
+        } finally {
+            try {
+                stream.close();
+            } catch (IOException e) {
+                throw new ShortcutWriteException(e);
+            }
+        }
+    }
 }
@@ -54,7 +54,23 @@
  * 
  * <p>
  * The methods that write to streams will automatically close the streams when finished with them,
- * (this is different from the behavior of the readers).
+ * (this is different from the behavior of the readers).  To write several shortcuts to one stream, use
+ * {@link com.abcodeworks.webshortcututil.write.ShortcutWriter#writeWithoutClosing(OutputStream, String, String) writeWithoutClosing}
+ * instead, or use a {@link com.abcodeworks.webshortcututil.write.ShortcutArchiveWriter ShortcutArchiveWriter}
+ * to write the shortcuts into a ZIP archive.
+ * </p>
+ * 
+ * <p>
+ * To export many shortcuts into a directory, use a
+ * {@link com.abcodeworks.webshortcututil.write.ShortcutBulkWriter ShortcutBulkWriter}.  It writes the
+ * files in parallel and adds a number to file names which are already taken (e.g. "Google (2).url").
+ * </p>
+ * 
+ * <p>
+ * {@link com.abcodeworks.webshortcututil.write.ShortcutWriter#writeAsync(java.nio.file.Path, String, String) writeAsync}
+ * and {@link com.abcodeworks.webshortcututil.write.ShortcutWriter#writeAllAsync(java.nio.file.Path, Iterable, java.util.concurrent.Executor, int) writeAllAsync}
+ * write shortcuts without blocking the calling thread and return a
+ * {@link java.util.concurrent.CompletableFuture CompletableFuture} for each file.
  * </p>
  *
  */
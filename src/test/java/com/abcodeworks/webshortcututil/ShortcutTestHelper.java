@@ -1,11 +1,14 @@
 package com.abcodeworks.webshortcututil;
 
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.net.URL;
+import java.nio.ByteBuffer;
 
+import com.abcodeworks.webshortcututil.read.ReadResult;
 import com.abcodeworks.webshortcututil.read.ShortcutContents;
 import com.abcodeworks.webshortcututil.read.ShortcutReadException;
 import com.abcodeworks.webshortcututil.read.ShortcutReadUtil;
@@ -29,6 +32,19 @@ public class ShortcutTestHelper {
         return resourceUrl.openStream();
     }
     
+    static public File getTestDirectory(String path) throws IOException
+    {
+        URL resourceUrl = ShortcutTestHelper.class.getResource(File.separator + path);
+        if(resourceUrl == null) {
+            fail("Resource not found: " + path);
+        }
+        try {
+            return new File(resourceUrl.toURI());
+        } catch (java.net.URISyntaxException e) {
+            throw new IOException(e);
+        }
+    }
+    
     static public void testReadShortcut(ShortcutReader reader, String path, String filename, String expectedName, String expectedUrl)
             throws IOException, ShortcutReadException
     {
@@ -43,6 +59,41 @@ public class ShortcutTestHelper {
         urlString = ShortcutReadUtil.readUrlStringTrialAndError(instream);
         assertEquals(expectedUrl, urlString);
         instream.close();
+        
+        // The same contents already in memory
+        byte[] bytes = readTestBytes(path, filename);
+        assertEquals(expectedUrl, reader.readUrlString(bytes, 0, bytes.length));
+        
+        ByteBuffer buffer = ByteBuffer.allocateDirect(bytes.length + 2);
+        buffer.put(new byte[] { 'x', 'x' }).put(bytes).flip().position(2);
+        assertEquals(expectedUrl, reader.readUrlString(buffer));
+        assertEquals(2, buffer.position());
+        
+        // The result-based methods
+        assertEquals(expectedUrl, reader.readResult(buffer).getUrlString());
+        assertEquals(expectedUrl, reader.readResult(bytes, 0, bytes.length).getUrlString());
+        
+        instream = getTestStream(path, filename);
+        ReadResult result = ShortcutReadUtil.readResultTrialAndError(instream);
+        assertTrue(result.isSuccess());
+        assertEquals(expectedUrl, result.getUrlString());
+        instream.close();
+    }
+    
+    static public byte[] readTestBytes(String path, String filename) throws IOException
+    {
+        InputStream instream = getTestStream(path, filename);
+        try {
+            ByteArrayOutputStream outstream = new ByteArrayOutputStream();
+            byte[] chunk = new byte[4096];
+            int count;
+            while((count = instream.read(chunk)) >= 0) {
+                outstream.write(chunk, 0, count);
+            }
+            return outstream.toByteArray();
+        } finally {
+            instream.close();
+        }
     }
     
     static public void testWriteShortcut(ShortcutWriter writer, File path, String name, String url)
@@ -0,0 +1,186 @@
+/**
+ * Copyright 2014 by Andre Beckus
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+
+ *   http://www.apache.org/licenses/LICENSE-2.0
+
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.abcodeworks.webshortcututil.read;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+
+import com.dd.plist.BinaryPropertyListWriter;
+import com.dd.plist.NSArray;
+import com.dd.plist.NSDictionary;
+import com.dd.plist.NSString;
+import com.dd.plist.PropertyListParser;
+
+public class BinaryWeblocParserTest
+{
+    @Rule
+    public ExpectedException thrown= ExpectedException.none();
+    
+    static String parse(byte[] bytes)
+            throws ShortcutReadException {
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        assertTrue(BinaryWeblocParser.isBinaryPlist(buffer));
+        ReadResult result = BinaryWeblocParser.readResult(buffer);
+        return (result == null) ? null : result.getUrlStringOrThrow();
+    }
+    
+    static String parseWithLibrary(byte[] bytes)
+            throws Exception {
+        return ((NSDictionary)PropertyListParser.parse(bytes)).objectForKey("URL").toString();
+    }
+    
+    void testSamples(Path folder)
+            throws Exception {
+        DirectoryStream<Path> stream = Files.newDirectoryStream(folder, "*.webloc");
+        try {
+            for(Path file : stream) {
+                byte[] bytes = Files.readAllBytes(file);
+                assertEquals(file.toString(), parseWithLibrary(bytes), parse(bytes));
+            }
+        } finally {
+            stream.close();
+        }
+    }
+    
+    @Test
+    public void testSamples()
+                  throws Exception
+    {
+        // Every real binary sample should be read without falling back to the plist library.
+        String binaryPath = File.separator + "samples" + File.separator + "real" + File.separator + "webloc" + File.separator + "binary";
+        Path folder = Paths.get(getClass().getResource(binaryPath).toURI());
+        testSamples(folder);
+        testSamples(folder.resolve("percent_encoded"));
+    }
+    
+    @Test
+    public void testManyKeys()
+                  throws Exception
+    {
+        // More than 14 entries needs an extended count, and the Unicode URL is stored as UTF-16.
+        NSDictionary dict = new NSDictionary();
+        for(int i = 0; i < 40; i++) {
+            dict.put("Key" + i, "Value" + i);
+        }
+        dict.put("URL", "http://www.中国政府.政务.cn/");
+        NSDictionary nested = new NSDictionary();
+        nested.put("URL", "http://nested/");
+        dict.put("Nested", nested);
+        
+        assertEquals("http://www.中国政府.政务.cn/", parse(BinaryPropertyListWriter.writeToArray(dict)));
+    }
+    
+    @Test
+    public void testPosition()
+                  throws Exception
+    {
+        NSDictionary dict = new NSDictionary();
+        dict.put("URL", "https://www.google.com/");
+        byte[] bytes = BinaryPropertyListWriter.writeToArray(dict);
+        
+        ByteBuffer buffer = ByteBuffer.allocateDirect(bytes.length + 4);
+        buffer.put(new byte[] { 'x', 'x' }).put(bytes).put(new byte[] { 'x', 'x' });
+        buffer.position(2);
+        buffer.limit(2 + bytes.length);
+        assertEquals("https://www.google.com/", BinaryWeblocParser.readResult(buffer).getUrlString());
+        assertEquals(2, buffer.position());
+    }
+    
+    @Test
+    public void testUnusualPlists()
+                  throws Exception
+    {
+        // These are left to the plist library.
+        NSDictionary dict = new NSDictionary();
+        dict.put("URL", 42);
+        assertNull(parse(BinaryPropertyListWriter.writeToArray(dict)));
+        
+        assertNull(parse(BinaryPropertyListWriter.writeToArray(new NSArray(new NSString("https://www.google.com/")))));
+        
+        dict = new NSDictionary();
+        dict.put("URL", "https://www.google.com/");
+        byte[] bytes = BinaryPropertyListWriter.writeToArray(dict);
+        assertNull(parse(Arrays.copyOf(bytes, bytes.length - 1)));
+        assertNull(parse(Arrays.copyOf(bytes, 10)));
+        
+        // Offset table pointing past the end
+        byte[] corrupt = bytes.clone();
+        corrupt[corrupt.length - 1] = (byte)0xFF;
+        assertNull(parse(corrupt));
+    }
+    
+    @Test
+    public void testOverflowingTrailer()
+                  throws Exception
+    {
+        // 41 bytes: the magic number, one object byte and a trailer whose offset table offset
+        // is so large that adding the table size to it overflows.
+        ByteBuffer bytes = ByteBuffer.allocate(41);
+        bytes.put("bplist00".getBytes("US-ASCII")).put((byte)0xD0);
+        bytes.position(bytes.position() + 6);
+        bytes.put((byte)1).put((byte)1).putLong(1).putLong(0).putLong(Long.MAX_VALUE);
+        byte[] contents = bytes.array();
+        assertNull(parse(contents));
+        
+        bytes.putLong(33, Long.MAX_VALUE - 8);
+        assertNull(parse(contents));
+        
+        // The non-throwing API must report a parse error, not an IndexOutOfBoundsException.
+        ReadResult result = new WeblocShortcutReader().readResult(new ByteArrayInputStream(contents));
+        assertEquals(ReadResult.Reason.MALFORMED, result.getReason());
+        result = ShortcutReadUtil.readResultTrialAndError(new ByteArrayInputStream(contents));
+        assertFalse(result.isSuccess());
+    }
+    
+    @Test
+    public void testIsBinaryPlist()
+    {
+        assertFalse(BinaryWeblocParser.isBinaryPlist(ByteBuffer.wrap("<?xml".getBytes())));
+        assertFalse(BinaryWeblocParser.isBinaryPlist(ByteBuffer.wrap("bplist".getBytes())));
+    }
+    
+    @Test
+    public void testMissingUrl()
+                  throws IOException,
+                         ShortcutReadException
+    {
+        NSDictionary dict = new NSDictionary();
+        dict.put("NotUrl", "https://www.google.com/");
+        
+        thrown.expect(ShortcutReadException.class);
+        thrown.expectMessage("URL not found");
+        parse(BinaryPropertyListWriter.writeToArray(dict));
+    }
+}
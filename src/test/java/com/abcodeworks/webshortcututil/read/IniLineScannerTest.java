@@ -0,0 +1,226 @@
+/**
+ * Copyright 2014 by Andre Beckus
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+
+ *   http://www.apache.org/licenses/LICENSE-2.0
+
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.abcodeworks.webshortcututil.read;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.util.Arrays;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+
+import com.abcodeworks.webshortcututil.read.IniLineScanner.LineType;
+
+public class IniLineScannerTest
+{
+    @Rule
+    public ExpectedException thrown= ExpectedException.none();
+
+    IniLineScanner scanner(String contents) {
+        return new IniLineScanner(new StringReader(contents), ';');
+    }
+
+    @Test
+    public void testClassify()
+                  throws IOException
+    {
+        IniLineScanner scanner = scanner(
+                "  \t\r\n" +
+                " ; Comment\r\n" +
+                " [InternetShortcut]  \r\n" +
+                "URL = http://www.google.com/ \t\r\n" +
+                "Name[en_US]=Google\n" +
+                "[Broken\r" +
+                "*Garbled=Garbled\n" +
+                "NoEquals\n" +
+                "[]\n" +
+                "=EmptyKey");
+
+        assertEquals(LineType.BLANK, scanner.next());
+        assertEquals(LineType.COMMENT, scanner.next());
+
+        assertEquals(LineType.HEADER, scanner.next());
+        assertTrue(scanner.isHeader("InternetShortcut"));
+        assertFalse(scanner.isHeader("InternetShortcut.W"));
+
+        assertEquals(LineType.KEY_VALUE, scanner.next());
+        assertTrue(scanner.isKey("URL"));
+        assertEquals("http://www.google.com/", scanner.getValue());
+
+        assertEquals(LineType.KEY_VALUE, scanner.next());
+        assertTrue(scanner.isKey("Name"));
+        assertEquals("Google", scanner.getValue());
+
+        assertEquals(LineType.OTHER, scanner.next());
+        assertEquals(LineType.OTHER, scanner.next());
+        assertEquals(LineType.OTHER, scanner.next());
+
+        assertEquals(LineType.HEADER, scanner.next());
+        assertTrue(scanner.isHeader(""));
+
+        assertEquals(LineType.KEY_VALUE, scanner.next());
+        assertTrue(scanner.isKey(""));
+        assertEquals("EmptyKey", scanner.getValue());
+
+        assertNull(scanner.next());
+        assertNull(scanner.next());
+    }
+
+    @Test
+    public void testLineTerminators()
+                  throws IOException
+    {
+        // Same rules as BufferedReader.readLine(): \n, \r and \r\n all end a line
+        // and there is no extra line after a final terminator.
+        IniLineScanner scanner = scanner("a=1\r\rb=2\n\nc=3\r\n");
+
+        assertEquals(LineType.KEY_VALUE, scanner.next());
+        assertEquals("1", scanner.getValue());
+        assertEquals(LineType.BLANK, scanner.next());
+        assertEquals(LineType.KEY_VALUE, scanner.next());
+        assertEquals("2", scanner.getValue());
+        assertEquals(LineType.BLANK, scanner.next());
+        assertEquals(LineType.KEY_VALUE, scanner.next());
+        assertEquals("3", scanner.getValue());
+        assertNull(scanner.next());
+    }
+
+    @Test
+    public void testLongLine()
+                  throws IOException
+    {
+        StringBuilder value = new StringBuilder();
+        for(int i = 0; value.length() < IniLineScanner.DEFAULT_BUFFER_SIZE * 3; i++) {
+            value.append(i);
+        }
+
+        IniLineScanner scanner = scanner("[InternetShortcut]\r\nURL=" + value + "\r\nIDList=\r\n");
+        assertEquals(LineType.HEADER, scanner.next());
+        assertEquals(LineType.KEY_VALUE, scanner.next());
+        assertEquals(value.toString(), scanner.getValue());
+        assertEquals(LineType.KEY_VALUE, scanner.next());
+        assertTrue(scanner.isKey("IDList"));
+        assertEquals("", scanner.getValue());
+        assertNull(scanner.next());
+    }
+
+    /* Supplies the same character forever. */
+    static class EndlessReader extends Reader {
+        private final char c;
+
+        EndlessReader(char c) {
+            this.c = c;
+        }
+
+        @Override
+        public int read(char[] cbuf, int off, int len) {
+            Arrays.fill(cbuf, off, off + len, c);
+            return len;
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+
+    @Test
+    public void testLineLengthLimit()
+                  throws IOException
+    {
+        ShortcutReadLimits limits = new ShortcutReadLimits(Long.MAX_VALUE, 10, 100);
+        char[] chars = "URL=123456\r\nURL=1234567\r\n".toCharArray();
+        IniLineScanner[] scanners = {
+            new IniLineScanner(new StringReader(new String(chars)), ';', limits),
+            new IniLineScanner(chars, 0, chars.length, ';', limits)
+        };
+        for(IniLineScanner scanner : scanners) {
+            assertEquals(LineType.KEY_VALUE, scanner.next());
+            assertEquals("123456", scanner.getValue());
+            try {
+                scanner.next();
+                fail("Did not get ReadLimitException");
+            } catch(ReadLimitException e) {
+                assertEquals("Line is longer than 10 characters", e.getMessage());
+            }
+        }
+
+        // A line which never ends is stopped long before memory runs out
+        IniLineScanner scanner = new IniLineScanner(new EndlessReader('x'), ';', limits);
+        try {
+            scanner.next();
+            fail("Did not get ReadLimitException");
+        } catch(ReadLimitException e) {
+        }
+    }
+
+    @Test
+    public void testLineCountLimit()
+                  throws IOException
+    {
+        ShortcutReadLimits limits = new ShortcutReadLimits(Long.MAX_VALUE, 100, 3);
+        IniLineScanner scanner = new IniLineScanner(new StringReader("[InternetShortcut]\n\nURL=a\n"), ';', limits);
+        assertEquals(LineType.HEADER, scanner.next());
+        assertEquals(LineType.BLANK, scanner.next());
+        assertEquals(LineType.KEY_VALUE, scanner.next());
+        assertNull(scanner.next());
+
+        scanner = new IniLineScanner(new EndlessReader('\n'), ';', limits);
+        for(int i = 0; i < 3; i++) {
+            assertEquals(LineType.BLANK, scanner.next());
+        }
+        thrown.expect(ReadLimitException.class);
+        thrown.expectMessage("Shortcut has more than 3 lines");
+        scanner.next();
+    }
+
+    @Test
+    public void testCharArray()
+                  throws IOException
+    {
+        char[] chars = "xx#Comment\n[Desktop Entry]\nURL=http://www.google.com/xx".toCharArray();
+        IniLineScanner scanner = new IniLineScanner(chars, 2, chars.length - 4, '#');
+
+        assertTrue(scanner.startsLikeIni());
+        assertEquals(LineType.COMMENT, scanner.next());
+        assertEquals(LineType.HEADER, scanner.next());
+        assertTrue(scanner.isHeader("Desktop Entry"));
+        assertEquals(LineType.KEY_VALUE, scanner.next());
+        assertEquals("http://www.google.com/", scanner.getValue());
+        assertNull(scanner.next());
+    }
+
+    @Test
+    public void testStartsLikeIni()
+                  throws IOException
+    {
+        assertTrue(scanner("[InternetShortcut]").startsLikeIni());
+        assertTrue(scanner(";Comment").startsLikeIni());
+        assertTrue(scanner("\r\n").startsLikeIni());
+        assertFalse(scanner("#Comment").startsLikeIni());
+        assertFalse(scanner("This is not a shortcut").startsLikeIni());
+        assertFalse(scanner("").startsLikeIni());
+    }
+}
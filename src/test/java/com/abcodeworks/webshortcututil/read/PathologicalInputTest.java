@@ -0,0 +1,172 @@
+/**
+ * Copyright 2014 by Andre Beckus
+ * 
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+
+ *   http://www.apache.org/licenses/LICENSE-2.0
+
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.abcodeworks.webshortcututil.read;
+
+import static org.junit.Assert.*;
+
+import java.nio.charset.Charset;
+import java.util.Random;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.junit.Test;
+
+/**
+ * Checks that lines crafted to make a backtracking parser slow (long runs of whitespace,
+ * '=' or '[') are still parsed quickly and correctly.
+ * 
+ * <p>
+ * Each shape is parsed as a single line of {@link #LONG_LENGTH} characters, which a quadratic
+ * parser (such as the old patterns) could not finish within the timeout.  The scaling itself is
+ * measured by PathologicalInputBenchmark in the benchmarks module, since timing comparisons are
+ * not reliable in a unit test.
+ * </p>
+ */
+public class PathologicalInputTest
+{
+    static final int SHORT_LENGTH = 4 * 1024,
+                     LONG_LENGTH = 1024 * 1024;
+    
+    static final long TIMEOUT_MILLIS = 20000;
+    
+    /* The patterns before they were made possessive. */
+    static final Pattern OLD_HEADER = Pattern.compile("^\\s*\\[.*\\]\\s*$"),
+                         OLD_KEY_VALUE = Pattern.compile("^\\s*([A-Za-z0-9-]*)(\\[([^\\[\\]]*)\\])?\\s*=\\s*([^\\n\\r]*?)\\s*$");
+    
+    enum Shape {
+        SPACES_IN_VALUE("URL=a", " ", "x"),
+        SPACES_BEFORE_EQUALS("URL", " ", "x"),
+        SPACES_AT_END("URL=a", " ", ""),
+        TABS_AND_SPACES("URL=a", " \t", "x\u000By"),
+        EQUALS("URL=", "=", ""),
+        EQUALS_AND_SPACES("URL=", "= ", " "),
+        OPEN_BRACKETS("URL[", "[", "]=x"),
+        BRACKETS("[", "[]", " x"),
+        CLOSE_BRACKETS_AND_SPACES("[", "] ", "x"),
+        LOCALE("URL[", "a", "=");
+        
+        final String prefix, unit, suffix;
+        
+        private Shape(String prefix, String unit, String suffix) {
+            this.prefix = prefix;
+            this.unit = unit;
+            this.suffix = suffix;
+        }
+        
+        String line(int length) {
+            StringBuilder line = new StringBuilder(prefix);
+            while(line.length() < length - suffix.length()) {
+                line.append(unit);
+            }
+            return line.append(suffix).toString();
+        }
+    }
+    
+    static abstract class Parser {
+        abstract Object parse(String line);
+    }
+    
+    static final Parser
+        READER = new Parser() {
+            final ShortcutReader reader = new UrlShortcutReader(ShortcutReadLimits.UNLIMITED);
+            final Charset charset = Charset.forName("UTF-8");
+            
+            Object parse(String line) {
+                byte[] bytes = ("[InternetShortcut]\r\n" + line + "\r\n").getBytes(charset);
+                return reader.readResult(bytes, 0, bytes.length);
+            }
+        },
+        HEADER = new Parser() {
+            Object parse(String line) {
+                return ShortcutReader.HEADER_PATTERN.matcher(line).matches();
+            }
+        },
+        KEY_VALUE = new Parser() {
+            Object parse(String line) {
+                return ShortcutReader.KEY_VALUE_PATTERN.matcher(line).matches();
+            }
+        };
+    
+    static void parseLongLines(Parser parser) {
+        for(Shape shape : Shape.values()) {
+            parser.parse(shape.line(LONG_LENGTH));
+        }
+    }
+    
+    @Test(timeout=TIMEOUT_MILLIS)
+    public void testReaderLongLines()
+    {
+        parseLongLines(READER);
+    }
+    
+    @Test(timeout=TIMEOUT_MILLIS)
+    public void testPatternsLongLines()
+    {
+        parseLongLines(HEADER);
+        parseLongLines(KEY_VALUE);
+    }
+    
+    @Test
+    public void testPathologicalLines()
+    {
+        // Make sure the lines are still parsed correctly
+        ShortcutReader reader = new UrlShortcutReader(ShortcutReadLimits.UNLIMITED);
+        String spaces = Shape.SPACES_AT_END.line(SHORT_LENGTH);
+        assertEquals("a", reader.readResult(("[InternetShortcut]\r\n" + spaces).getBytes(), 0, spaces.length() + 20).getUrlString());
+        String value = Shape.SPACES_IN_VALUE.line(SHORT_LENGTH);
+        assertEquals(value.substring(4), reader.readResult(("[InternetShortcut]\r\n" + value).getBytes(), 0, value.length() + 20).getUrlString());
+        
+        Matcher matcher = ShortcutReader.KEY_VALUE_PATTERN.matcher(spaces);
+        assertTrue(matcher.matches());
+        assertEquals("a", matcher.group(4));
+        assertFalse(ShortcutReader.KEY_VALUE_PATTERN.matcher(Shape.SPACES_BEFORE_EQUALS.line(SHORT_LENGTH)).matches());
+        assertTrue(ShortcutReader.HEADER_PATTERN.matcher(Shape.BRACKETS.line(SHORT_LENGTH).replace(" x", "")).matches());
+    }
+    
+    @Test
+    public void testPatternsSameAsBefore()
+    {
+        // Random short lines, which the old patterns can match quickly
+        String chars = "  \t\u000B\f\r\n==[[]]aZ9-_;#.\u00E9";
+        Random random = new Random(42);
+        for(int i = 0; i < 100000; i++) {
+            StringBuilder line = new StringBuilder();
+            if(random.nextBoolean()) {
+                line.append(random.nextBoolean() ? "URL=" : "[");
+            }
+            int length = random.nextInt(12);
+            for(int j = 0; j < length; j++) {
+                line.append(chars.charAt(random.nextInt(chars.length())));
+            }
+            
+            assertEquals(line.toString(), OLD_HEADER.matcher(line).matches(), ShortcutReader.HEADER_PATTERN.matcher(line).matches());
+            
+            Matcher oldMatcher = OLD_KEY_VALUE.matcher(line),
+                    newMatcher = ShortcutReader.KEY_VALUE_PATTERN.matcher(line);
+            assertEquals(line.toString(), oldMatcher.matches(), newMatcher.matches());
+            if(oldMatcher.matches()) {
+                for(int group = 1; group <= 4; group++) {
+                    assertEquals(line.toString(), oldMatcher.group(group), newMatcher.group(group));
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,193 @@
+/**
+ * Copyright 2014 by Andre Beckus
+ * 
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+
+ *   http://www.apache.org/licenses/LICENSE-2.0
+
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.abcodeworks.webshortcututil.read;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+import org.junit.rules.TemporaryFolder;
+
+import com.abcodeworks.webshortcututil.ShortcutTestHelper;
+
+public class ReadResultTest
+{
+    @Rule
+    public ExpectedException thrown= ExpectedException.none();
+    
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+    
+    static final String FAKE_PATH = "samples" + File.separator + "fake";
+    
+    ReadResult readResult(ShortcutReader reader, String path, String filename)
+            throws IOException {
+        byte[] bytes = ShortcutTestHelper.readTestBytes(path, filename);
+        ReadResult result = reader.readResult(new ByteArrayInputStream(bytes));
+        
+        // Every way of reading the contents must give the same result.
+        assertSame(result, reader.readResult(bytes, 0, bytes.length));
+        return result;
+    }
+    
+    void assertFailure(ReadResult.Reason reason, String message, ReadResult result) {
+        assertFalse(result.isSuccess());
+        assertEquals(reason, result.getReason());
+        assertEquals(reason.getStatus(), result.getStatus());
+        assertEquals(message, result.getMessage());
+        assertNull(result.getUrlString());
+        assertNull(result.getContents());
+        
+        ShortcutReadException e = result.toException();
+        assertEquals(message, e.getMessage());
+        assertSame(result.getCause(), e.getCause());
+    }
+    
+    @Test
+    public void testFakeSamples()
+                  throws IOException
+    {
+        // Expected failures are reported with shared results, so no exceptions are created.
+        assertFailure(ReadResult.Reason.MISSING_URL, "URL not found in file",
+                      readResult(new UrlShortcutReader(), FAKE_PATH + File.separator + "url", "HeaderOnly.url"));
+        assertFailure(ReadResult.Reason.MISSING_SECTION, "Desktop Entry group not found in desktop file",
+                      readResult(new DesktopShortcutReader(), FAKE_PATH + File.separator + "desktop", "Empty.desktop"));
+        assertFailure(ReadResult.Reason.MISSING_URL, "URL not found in file",
+                      readResult(new DesktopShortcutReader(), FAKE_PATH + File.separator + "desktop", "HeaderOnly.desktop"));
+        assertFailure(ReadResult.Reason.MISSING_URL, "URL not found",
+                      readResult(new WeblocShortcutReader(), FAKE_PATH + File.separator + "webloc" + File.separator + "xml", "MissingUrl.webloc"));
+        
+        assertFailure(ReadResult.Reason.INVALID_START, "Shortcut file is invalid",
+                      readResult(new UrlShortcutReader(), ".", "NotAShortcut.txt"));
+        assertFailure(ReadResult.Reason.INVALID_START, "Shortcut file is invalid",
+                      readResult(new DesktopShortcutReader(), ".", "NotAShortcut.txt"));
+        assertFailure(ReadResult.Reason.INVALID_START, "Error reading URL",
+                      readResult(new WeblocShortcutReader(), ".", "NotAShortcut.txt"));
+    }
+    
+    @Test
+    public void testMalformedWebloc()
+    {
+        ReadResult result = new WeblocShortcutReader().readResult(new ByteArrayInputStream("<plist><dict><key>URL</key><data>AAAA</data></dict></plist>".getBytes()));
+        assertFailure(ReadResult.Reason.MALFORMED, "Error reading URL", result);
+        assertEquals(ReadResult.Status.CORRUPT, result.getStatus());
+        assertNotNull(result.getCause());
+    }
+    
+    @Test
+    public void testTrialAndError()
+                  throws IOException
+    {
+        ReadResult result = ShortcutReadUtil.readResultTrialAndError(ShortcutTestHelper.getTestStream(".", "NotAShortcut.txt"));
+        assertFailure(ReadResult.Reason.UNKNOWN_FORMAT, "The shortcut is not recognized as a known type", result);
+        assertEquals(ReadResult.Status.NOT_A_SHORTCUT, result.getStatus());
+    }
+    
+    @Test
+    public void testReadFile()
+                  throws IOException
+    {
+        File file = folder.newFile("My Shortcut.url");
+        Files.write(file.toPath(), "[InternetShortcut]\r\nURL=https://www.google.com/\r\n".getBytes("US-ASCII"));
+        
+        ReadResult result = ShortcutReadUtil.readResult(file);
+        assertTrue(result.isSuccess());
+        assertEquals(ReadResult.Status.SUCCESS, result.getStatus());
+        assertEquals(ReadResult.Reason.NONE, result.getReason());
+        assertEquals("https://www.google.com/", result.getUrlString());
+        assertEquals("My Shortcut", result.getName());
+        assertEquals("My Shortcut", result.getContents().getName());
+        assertEquals("https://www.google.com/", result.getContents().getUrlString());
+        assertNull(result.getMessage());
+        assertNull(result.getCause());
+        
+        result = ShortcutReadUtil.readResult(file.toPath());
+        assertEquals("My Shortcut", result.getName());
+    }
+    
+    @Test
+    public void testReadMissingFile()
+    {
+        Path missing = new File(folder.getRoot(), "Missing.url").toPath();
+        ReadResult result = ShortcutReadUtil.readResult(missing);
+        assertEquals(ReadResult.Status.IO_ERROR, result.getStatus());
+        assertTrue(result.getCause() instanceof FileNotFoundException);
+        assertNull(result.getName());
+    }
+    
+    @Test
+    public void testReadBadExtension()
+    {
+        assertFailure(ReadResult.Reason.INVALID_EXTENSION, "Invalid file extension",
+                      ShortcutReadUtil.readResult(new File("file.badextension")));
+    }
+    
+    File testLimitExceeded(ShortcutReader reader, String filename, String contents)
+            throws IOException {
+        byte[] bytes = contents.getBytes("US-ASCII");
+        File file = folder.newFile(filename);
+        Files.write(file.toPath(), bytes);
+        
+        ReadResult[] results = {
+            reader.readResult(new ByteArrayInputStream(bytes)),
+            reader.readResult(bytes, 0, bytes.length),
+            reader.readResult(file)
+        };
+        for(ReadResult result : results) {
+            assertFailure(ReadResult.Reason.LIMIT_EXCEEDED, "Shortcut is larger than 50 bytes", result);
+            assertEquals(ReadResult.Status.CORRUPT, result.getStatus());
+            assertTrue(result.toException() instanceof ShortcutLimitExceededException);
+        }
+        return file;
+    }
+    
+    @Test
+    public void testLimitExceeded()
+                  throws IOException
+    {
+        ShortcutReadLimits limits = new ShortcutReadLimits(50, 100, 100);
+        testLimitExceeded(new UrlShortcutReader(limits), "Large.url",
+                          "[InternetShortcut]\r\nURL=https://www.google.com/search?q=limits\r\n");
+        testLimitExceeded(new WebsiteShortcutReader(limits), "Large.website",
+                          "[InternetShortcut]\r\nURL=https://www.google.com/search?q=limits\r\n");
+        File file = testLimitExceeded(new DesktopShortcutReader(limits), "Large.desktop",
+                                      "[Desktop Entry]\nType=Link\nURL=https://www.google.com/search?q=limits\n");
+        
+        // The same contents are fine within the default limits
+        assertEquals("https://www.google.com/search?q=limits", ShortcutReadUtil.readResult(file).getUrlString());
+    }
+    
+    @Test
+    public void testToExceptionOnSuccess()
+    {
+        thrown.expect(IllegalStateException.class);
+        ReadResult.success("https://www.google.com/").toException();
+    }
+}
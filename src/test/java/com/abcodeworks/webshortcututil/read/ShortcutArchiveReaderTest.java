@@ -0,0 +1,207 @@
+/**
+ * Copyright 2014 by Andre Beckus
+ * 
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+
+ *   http://www.apache.org/licenses/LICENSE-2.0
+
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.abcodeworks.webshortcututil.read;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URISyntaxException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class ShortcutArchiveReaderTest
+{
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+    
+    File archive;
+    // The expected URL of every shortcut in the archive
+    Map<String, String> expected = new LinkedHashMap<String, String>();
+    
+    @Before
+    public void setUp()
+            throws IOException,
+                   URISyntaxException {
+        // Zip up the real samples, plus some entries which should be skipped or fail.
+        final Path samples = Paths.get(getClass().getResource(File.separator + "samples" + File.separator + "real").toURI());
+        final List<Path> files = new ArrayList<Path>();
+        Files.walkFileTree(samples, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+                files.add(file);
+                return FileVisitResult.CONTINUE;
+            }
+        });
+        
+        archive = folder.newFile("bookmarks.zip");
+        ZipOutputStream zipStream = new ZipOutputStream(new FileOutputStream(archive));
+        try {
+            zipStream.putNextEntry(new ZipEntry("real/"));
+            zipStream.closeEntry();
+            for(Path file : files) {
+                String name = "real/" + samples.relativize(file).toString().replace(File.separatorChar, '/');
+                zipStream.putNextEntry(new ZipEntry(name));
+                zipStream.write(Files.readAllBytes(file));
+                zipStream.closeEntry();
+                
+                if(ShortcutReadUtil.hasValidExtension(file) && !file.getFileName().toString().startsWith("._")) {
+                    expected.put(name, ShortcutReadUtil.readUrlString(file.toFile()));
+                }
+            }
+            
+            zipStream.putNextEntry(new ZipEntry("__MACOSX/real/._Google.webloc"));
+            zipStream.write(new byte[] { 0, 5, 22, 7 });
+            zipStream.closeEntry();
+            zipStream.putNextEntry(new ZipEntry("Ignored.txt"));
+            zipStream.closeEntry();
+            zipStream.putNextEntry(new ZipEntry("dir.url/Bad.desktop"));
+            zipStream.write("This is not a shortcut".getBytes("US-ASCII"));
+            zipStream.closeEntry();
+        } catch (ShortcutReadException e) {
+            throw new AssertionError(e);
+        } finally {
+            zipStream.close();
+        }
+        assertFalse(expected.isEmpty());
+    }
+    
+    void checkResults(Map<String, ReadResult> results) {
+        assertEquals(expected.size() + 1, results.size());
+        for(Map.Entry<String, String> entry : expected.entrySet()) {
+            ReadResult result = results.get(entry.getKey());
+            assertEquals(entry.getKey(), entry.getValue(), result.getUrlString());
+            String fileName = entry.getKey().substring(entry.getKey().lastIndexOf('/') + 1);
+            assertEquals(fileName.substring(0, fileName.lastIndexOf('.')), result.getName());
+        }
+        assertEquals(ReadResult.Reason.INVALID_START, results.get("dir.url/Bad.desktop").getReason());
+        
+        // In archive order
+        assertEquals(new ArrayList<String>(expected.keySet()), new ArrayList<String>(results.keySet()).subList(0, expected.size()));
+    }
+    
+    @Test
+    public void testReadFile()
+                  throws IOException
+    {
+        checkResults(new ShortcutArchiveReader().readResults(archive));
+    }
+    
+    @Test
+    public void testReadFileParallel()
+                  throws IOException
+    {
+        checkResults(new ShortcutArchiveReader(4).readResults(archive));
+    }
+    
+    @Test
+    public void testReadStream()
+                  throws IOException
+    {
+        InputStream stream = new FileInputStream(archive);
+        try {
+            checkResults(new ShortcutArchiveReader().readResults(stream));
+        } finally {
+            stream.close();
+        }
+    }
+    
+    @Test
+    public void testReadContents()
+                  throws IOException
+    {
+        Map<String, ShortcutContents> contents = new ShortcutArchiveReader(2).read(archive);
+        assertEquals(expected.keySet(), contents.keySet());
+        for(Map.Entry<String, String> entry : expected.entrySet()) {
+            assertEquals(entry.getValue(), contents.get(entry.getKey()).getUrlString());
+        }
+        
+        InputStream stream = new FileInputStream(archive);
+        try {
+            assertEquals(expected.keySet(), new ShortcutArchiveReader().read(stream).keySet());
+        } finally {
+            stream.close();
+        }
+    }
+    
+    @Test
+    public void testCompressedEntryTooLarge()
+                  throws IOException
+    {
+        // 64 MB of spaces compress to a few KB.  Even a reader without limits must not inflate them.
+        ShortcutReadUtil.registerShortcutReader("bigurl", new UrlShortcutReader(ShortcutReadLimits.UNLIMITED));
+        try {
+            File bomb = folder.newFile("bomb.zip");
+            ZipOutputStream zipStream = new ZipOutputStream(new FileOutputStream(bomb));
+            try {
+                zipStream.putNextEntry(new ZipEntry("Big.bigurl"));
+                zipStream.write("[InternetShortcut]\r\nURL=http://a.com/\r\n".getBytes("US-ASCII"));
+                byte[] spaces = new byte[1024 * 1024];
+                Arrays.fill(spaces, (byte)' ');
+                for(int i = 0; i < 64; i++) {
+                    zipStream.write(spaces);
+                }
+                zipStream.closeEntry();
+                zipStream.putNextEntry(new ZipEntry("Small.bigurl"));
+                zipStream.write("[InternetShortcut]\r\nURL=http://b.com/\r\n".getBytes("US-ASCII"));
+                zipStream.closeEntry();
+            } finally {
+                zipStream.close();
+            }
+            assertTrue(bomb.length() < 1024 * 1024);
+            
+            Map<String, ReadResult> results = new ShortcutArchiveReader().readResults(bomb);
+            assertEquals(ReadResult.Reason.LIMIT_EXCEEDED, results.get("Big.bigurl").getReason());
+            assertEquals("http://b.com/", results.get("Small.bigurl").getUrlString());
+            
+            InputStream stream = new FileInputStream(bomb);
+            try {
+                results = new ShortcutArchiveReader().readResults(stream);
+            } finally {
+                stream.close();
+            }
+            assertEquals(ReadResult.Reason.LIMIT_EXCEEDED, results.get("Big.bigurl").getReason());
+            assertEquals("http://b.com/", results.get("Small.bigurl").getUrlString());
+        } finally {
+            ShortcutReadUtil.unregisterShortcutReader("bigurl");
+        }
+    }
+}
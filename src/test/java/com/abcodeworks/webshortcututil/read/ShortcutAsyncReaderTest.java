@@ -0,0 +1,194 @@
+/**
+ * Copyright 2014 by Andre Beckus
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+
+ *   http://www.apache.org/licenses/LICENSE-2.0
+
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.abcodeworks.webshortcututil.read;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class ShortcutAsyncReaderTest
+{
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+    
+    ExecutorService executor = Executors.newFixedThreadPool(4);
+    
+    @After
+    public void tearDown() {
+        executor.shutdownNow();
+    }
+    
+    Path writeUrl(String name, String url)
+            throws IOException {
+        Path path = folder.getRoot().toPath().resolve(name + ".url");
+        Files.write(path, ("[InternetShortcut]\r\nURL=" + url + "\r\n").getBytes("US-ASCII"));
+        return path;
+    }
+    
+    /* Returns the exception a future failed with. */
+    static Throwable getFailure(CompletableFuture<ShortcutContents> future)
+            throws InterruptedException {
+        try {
+            future.get();
+            fail("The read did not fail");
+            return null;
+        } catch (ExecutionException e) {
+            return e.getCause();
+        }
+    }
+    
+    @Test
+    public void testReadAsync()
+            throws Exception {
+        Path path = writeUrl("Google", "https://www.google.com/");
+        ShortcutContents contents = new ShortcutAsyncReader(executor, 4).readAsync(path).get();
+        assertEquals("Google", contents.getName());
+        assertEquals("https://www.google.com/", contents.getUrlString());
+    }
+    
+    @Test
+    public void testReadSamples()
+            throws Exception {
+        // Every sample gives the same result as the blocking read
+        final List<Path> paths = new ArrayList<Path>();
+        Files.walkFileTree(Paths.get(getClass().getResource(File.separator + "samples").toURI()), new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+                paths.add(file);
+                return FileVisitResult.CONTINUE;
+            }
+        });
+        assertTrue(paths.size() > 50);
+        
+        List<CompletableFuture<ShortcutContents>> futures = new ShortcutAsyncReader(executor, 3).readAllAsync(paths);
+        assertEquals(paths.size(), futures.size());
+        for(int i = 0; i < paths.size(); i++) {
+            Path path = paths.get(i);
+            ShortcutContents expected = null;
+            Exception expectedFailure = null;
+            try {
+                expected = ShortcutReadUtil.read(path);
+            } catch (Exception e) {
+                expectedFailure = e;
+            }
+            
+            if(expectedFailure == null) {
+                ShortcutContents contents = futures.get(i).get();
+                assertEquals(path.toString(), expected.getName(), contents.getName());
+                assertEquals(path.toString(), expected.getUrlString(), contents.getUrlString());
+            } else {
+                Throwable failure = getFailure(futures.get(i));
+                assertEquals(path.toString(), expectedFailure.getClass(), failure.getClass());
+                assertEquals(path.toString(), expectedFailure.getMessage(), failure.getMessage());
+            }
+        }
+    }
+    
+    @Test
+    public void testReadFailures()
+            throws Exception {
+        ShortcutAsyncReader reader = new ShortcutAsyncReader(executor, 4);
+        
+        Throwable failure = getFailure(reader.readAsync(folder.getRoot().toPath().resolve("Missing.url")));
+        assertTrue(failure instanceof FileNotFoundException);
+        
+        failure = getFailure(reader.readAsync(folder.newFile("file.badextension").toPath()));
+        assertTrue(failure instanceof ShortcutReadException);
+        assertEquals("Invalid file extension", failure.getMessage());
+        
+        Path large = folder.getRoot().toPath().resolve("Large.url");
+        Files.write(large, new byte[(int)ShortcutReadLimits.DEFAULT_MAX_BYTES + 1]);
+        assertTrue(getFailure(reader.readAsync(large)) instanceof ShortcutLimitExceededException);
+        
+        // The reader is still usable
+        assertEquals("https://www.google.com/", reader.readAsync(writeUrl("Google", "https://www.google.com/")).get().getUrlString());
+    }
+    
+    @Test
+    public void testManyMissingFiles()
+            throws Exception {
+        // Files which fail straight away must not use up the stack
+        List<Path> paths = new ArrayList<Path>();
+        for(int i = 0; i < 20000; i++) {
+            paths.add(folder.getRoot().toPath().resolve("Missing" + i + ".url"));
+        }
+        for(CompletableFuture<ShortcutContents> future : new ShortcutAsyncReader(executor, 1).readAllAsync(paths)) {
+            assertTrue(getFailure(future) instanceof FileNotFoundException);
+        }
+    }
+    
+    @Test
+    public void testMaxInFlight()
+            throws IOException,
+                   InterruptedException,
+                   ExecutionException {
+        List<Path> paths = new ArrayList<Path>();
+        for(int i = 0; i < 10; i++) {
+            paths.add(writeUrl("Shortcut" + i, "http://www.example.com/" + i));
+        }
+        
+        // An executor which only runs the parsing when the test says so
+        final BlockingQueue<Runnable> tasks = new LinkedBlockingQueue<Runnable>();
+        ShortcutAsyncReader reader = new ShortcutAsyncReader(new Executor() {
+            public void execute(Runnable task) {
+                tasks.add(task);
+            }
+        }, 3);
+        List<CompletableFuture<ShortcutContents>> futures = reader.readAllAsync(paths);
+        
+        for(int i = 0; i < paths.size(); i++) {
+            // Wait for a read to reach the executor, and give any others time to arrive.
+            // No more than 3 reads may be in flight.
+            Runnable task = tasks.poll(10, TimeUnit.SECONDS);
+            assertNotNull(task);
+            Thread.sleep(20);
+            assertTrue("More than 3 reads in flight", tasks.size() <= 2);
+            task.run();
+        }
+        
+        for(int i = 0; i < paths.size(); i++) {
+            assertEquals("http://www.example.com/" + i, futures.get(i).get().getUrlString());
+        }
+    }
+}
@@ -0,0 +1,211 @@
+/**
+ * Copyright 2014 by Andre Beckus
+ * 
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+
+ *   http://www.apache.org/licenses/LICENSE-2.0
+
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.abcodeworks.webshortcututil.read;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+import org.junit.rules.TemporaryFolder;
+
+public class ShortcutCacheTest
+{
+    @Rule
+    public ExpectedException thrown= ExpectedException.none();
+    
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+    
+    Path writeUrl(String name, String url)
+            throws IOException {
+        Path path = new File(folder.getRoot(), name).toPath();
+        Files.write(path, ("[InternetShortcut]\r\nURL=" + url + "\r\n").getBytes("US-ASCII"));
+        return path;
+    }
+    
+    @Test
+    public void testHit()
+                  throws IOException,
+                         ShortcutReadException
+    {
+        Path path = writeUrl("Google.url", "https://www.google.com/");
+        ShortcutCache cache = new ShortcutCache(10);
+        
+        ShortcutContents contents = cache.read(path);
+        assertEquals("Google", contents.getName());
+        assertEquals("https://www.google.com/", contents.getUrlString());
+        assertEquals(0, cache.getHitCount());
+        assertEquals(1, cache.getMissCount());
+        
+        // A different spelling of the same path
+        ReadResult result = cache.readResult(folder.getRoot().toPath().resolve(".").resolve("Google.url").toFile());
+        assertEquals("https://www.google.com/", result.getUrlString());
+        assertSame(result, cache.readResult(path));
+        assertEquals(2, cache.getHitCount());
+        assertEquals(1, cache.getMissCount());
+        assertEquals(1, cache.size());
+    }
+    
+    @Test
+    public void testModified()
+                  throws IOException,
+                         ShortcutReadException
+    {
+        Path path = writeUrl("Google.url", "https://www.google.com/");
+        FileTime time = Files.getLastModifiedTime(path);
+        ShortcutCache cache = new ShortcutCache(10);
+        assertEquals("https://www.google.com/", cache.read(path).getUrlString());
+        
+        // Same size and time - the change goes unnoticed.
+        writeUrl("Google.url", "https://www.google.org/");
+        Files.setLastModifiedTime(path, time);
+        assertEquals("https://www.google.com/", cache.read(path).getUrlString());
+        
+        // New time
+        Files.setLastModifiedTime(path, FileTime.fromMillis(time.toMillis() - 60000));
+        assertEquals("https://www.google.org/", cache.read(path).getUrlString());
+        
+        // New size
+        writeUrl("Google.url", "https://www.google.co.uk/");
+        Files.setLastModifiedTime(path, time);
+        assertEquals("https://www.google.co.uk/", cache.read(path).getUrlString());
+        
+        assertEquals(1, cache.getHitCount());
+        assertEquals(3, cache.getMissCount());
+    }
+    
+    @Test
+    public void testEviction()
+                  throws IOException,
+                         ShortcutReadException
+    {
+        ShortcutCache cache = new ShortcutCache(1);
+        Path first = writeUrl("First.url", "https://www.google.com/"),
+             second = writeUrl("Second.url", "https://www.google.org/");
+        cache.read(first);
+        cache.read(second);
+        cache.read(first);
+        assertEquals(1, cache.size());
+        assertEquals(0, cache.getHitCount());
+        assertEquals(3, cache.getMissCount());
+        assertEquals(2, cache.getEvictionCount());
+        
+        // The most recently used entries are kept.
+        cache = new ShortcutCache(100);
+        List<Path> paths = new ArrayList<Path>();
+        for(int i = 0; i < 300; i++) {
+            paths.add(writeUrl("File" + i + ".url", "https://www.google.com/" + i));
+        }
+        for(Path path : paths) {
+            cache.read(path);
+        }
+        assertTrue(cache.size() <= 100);
+        assertEquals(300 - cache.size(), cache.getEvictionCount());
+        long misses = cache.getMissCount();
+        cache.read(paths.get(paths.size() - 1));
+        assertEquals(misses, cache.getMissCount());
+    }
+    
+    @Test
+    public void testFailuresCached()
+                  throws IOException
+    {
+        Path path = new File(folder.getRoot(), "Bad.url").toPath();
+        Files.write(path, "This is not a shortcut".getBytes("US-ASCII"));
+        ShortcutCache cache = new ShortcutCache(10);
+        
+        assertEquals(ReadResult.Reason.INVALID_START, cache.readResult(path).getReason());
+        assertEquals(ReadResult.Reason.INVALID_START, cache.readResult(path).getReason());
+        assertEquals(1, cache.getHitCount());
+        
+        assertSame(ShortcutReadUtil.INVALID_EXTENSION, cache.readResult(new File("file.badextension")));
+    }
+    
+    @Test
+    public void testMissingFile()
+                  throws IOException,
+                         ShortcutReadException
+    {
+        Path path = writeUrl("Google.url", "https://www.google.com/");
+        ShortcutCache cache = new ShortcutCache(10);
+        cache.read(path);
+        Files.delete(path);
+        
+        thrown.expect(FileNotFoundException.class);
+        try {
+            cache.read(path);
+        } finally {
+            assertEquals(0, cache.size());
+        }
+    }
+    
+    @Test
+    public void testConcurrentReads()
+                  throws Exception
+    {
+        final List<Path> paths = new ArrayList<Path>();
+        for(int i = 0; i < 50; i++) {
+            paths.add(writeUrl("File" + i + ".url", "https://www.google.com/" + i));
+        }
+        final ShortcutCache cache = new ShortcutCache(20);
+        
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<Void>> futures = new ArrayList<Future<Void>>();
+            for(int t = 0; t < 4; t++) {
+                futures.add(executor.submit(new Callable<Void>() {
+                    public Void call()
+                            throws Exception {
+                        for(int n = 0; n < 20; n++) {
+                            for(int i = 0; i < paths.size(); i++) {
+                                assertEquals("https://www.google.com/" + i, cache.read(paths.get(i)).getUrlString());
+                            }
+                        }
+                        return null;
+                    }
+                }));
+            }
+            for(Future<Void> future : futures) {
+                future.get();
+            }
+        } finally {
+            executor.shutdown();
+        }
+        
+        assertEquals(4 * 20 * 50, cache.getHitCount() + cache.getMissCount());
+        assertTrue(cache.size() <= 20);
+    }
+}
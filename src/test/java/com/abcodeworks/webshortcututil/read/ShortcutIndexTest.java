@@ -0,0 +1,333 @@
+/**
+ * Copyright 2014 by Andre Beckus
+ * 
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+
+ *   http://www.apache.org/licenses/LICENSE-2.0
+
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.abcodeworks.webshortcututil.read;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.util.zip.CRC32;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+import org.junit.rules.TemporaryFolder;
+
+public class ShortcutIndexTest
+{
+    @Rule
+    public ExpectedException thrown= ExpectedException.none();
+    
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+    
+    Path root, indexFile;
+    
+    @Before
+    public void setUp()
+            throws IOException {
+        root = folder.newFolder("bookmarks").toPath();
+        indexFile = folder.getRoot().toPath().resolve("bookmarks.idx");
+    }
+    
+    Path write(String name, String contents)
+            throws IOException {
+        Path path = root.resolve(name);
+        Files.createDirectories(path.getParent());
+        Files.write(path, contents.getBytes("UTF-8"));
+        return path;
+    }
+    
+    Path writeUrl(String name, String url)
+            throws IOException {
+        return write(name, "[InternetShortcut]\r\nURL=" + url + "\r\n");
+    }
+    
+    void touch(Path path)
+            throws IOException {
+        FileTime time = Files.getLastModifiedTime(path);
+        Files.setLastModifiedTime(path, FileTime.fromMillis(time.toMillis() + 60000));
+    }
+    
+    @Test
+    public void testRescan()
+                  throws IOException
+    {
+        Path google = writeUrl("Google.url", "https://www.google.com/"),
+             desktop = write("sub/Desktop.desktop", "[Desktop Entry]\nEncoding=UTF-8\nType=Link\nURL=https://www.google.org/\n"),
+             bad = write("sub/Bad.url", "This is not a shortcut");
+        write("Ignored.txt", "Not a shortcut extension");
+        
+        ShortcutIndex index = ShortcutIndex.open(indexFile);
+        assertEquals(3, index.rescan(root));
+        assertEquals(3, index.size());
+        
+        ShortcutIndex.Entry entry = index.get(google);
+        assertEquals(google.toAbsolutePath(), entry.getPath());
+        assertEquals(Files.size(google), entry.getSize());
+        assertEquals(Files.getLastModifiedTime(google).toMillis(), entry.getLastModifiedTime());
+        assertEquals(ShortcutFormat.URL, entry.getFormat());
+        assertEquals("Google", entry.getName());
+        assertEquals("https://www.google.com/", entry.getUrlString());
+        
+        assertEquals(ShortcutFormat.DESKTOP, index.get(desktop).getFormat());
+        assertEquals("https://www.google.org/", index.get(desktop).getUrlString());
+        
+        assertNull(index.get(bad).getFormat());
+        assertEquals(ReadResult.Reason.INVALID_START, index.get(bad).getResult().getReason());
+        
+        // Nothing has changed
+        assertEquals(0, index.rescan(root));
+        index.close();
+        
+        // Reopen and make some changes
+        index = ShortcutIndex.open(indexFile);
+        assertEquals(3, index.size());
+        assertEquals("https://www.google.com/", index.get(google).getUrlString());
+        assertEquals("Google", index.get(google).getName());
+        assertEquals(ReadResult.Reason.INVALID_START, index.get(bad).getResult().getReason());
+        assertEquals("Shortcut file is invalid", index.get(bad).getResult().getMessage());
+        assertEquals(0, index.rescan(root));
+        
+        writeUrl("Google.url", "https://www.google.co.uk/");
+        touch(google);
+        Files.delete(desktop);
+        Path added = writeUrl("sub/sub/Added.url", "https://www.google.de/");
+        assertEquals(2, index.rescan(root));
+        assertEquals(3, index.size());
+        assertEquals("https://www.google.co.uk/", index.get(google).getUrlString());
+        assertNull(index.get(desktop));
+        assertEquals("https://www.google.de/", index.get(added).getUrlString());
+        index.close();
+        
+        index = ShortcutIndex.open(indexFile);
+        assertEquals(3, index.size());
+        assertEquals("https://www.google.co.uk/", index.get(google).getUrlString());
+        assertNull(index.get(desktop));
+        assertEquals(0, index.rescan(root));
+        index.close();
+    }
+    
+    @Test
+    public void testUpdate()
+                  throws IOException
+    {
+        Path google = writeUrl("Google.url", "https://www.google.com/");
+        ShortcutIndex index = ShortcutIndex.open(indexFile);
+        try {
+            ShortcutIndex.Entry entry = index.update(google);
+            assertEquals("https://www.google.com/", entry.getUrlString());
+            assertSame(entry, index.update(google));
+            
+            assertNull(index.update(write("Ignored.txt", "Not a shortcut extension")));
+            
+            Files.delete(google);
+            assertNull(index.update(google));
+            assertEquals(0, index.size());
+        } finally {
+            index.close();
+        }
+    }
+    
+    @Test
+    public void testPartialRecord()
+                  throws IOException
+    {
+        Path google = writeUrl("Google.url", "https://www.google.com/");
+        ShortcutIndex index = ShortcutIndex.open(indexFile);
+        index.rescan(root);
+        index.close();
+        long length = Files.size(indexFile);
+        
+        // A record which was cut off part way through
+        Files.write(indexFile, new byte[] { 0, 0, 0, 100, 1, 2, 3, 4, 5 }, StandardOpenOption.APPEND);
+        
+        index = ShortcutIndex.open(indexFile);
+        assertEquals(length, Files.size(indexFile));
+        assertEquals("https://www.google.com/", index.get(google).getUrlString());
+        
+        Path added = writeUrl("Added.url", "https://www.google.de/");
+        assertEquals(1, index.rescan(root));
+        index.close();
+        
+        index = ShortcutIndex.open(indexFile);
+        assertEquals(2, index.size());
+        assertEquals("https://www.google.de/", index.get(added).getUrlString());
+        index.close();
+    }
+    
+    /* Builds a put record with a valid checksum, as written by the index. */
+    static byte[] putRecord(Path path, int format, int reason)
+            throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream record = new DataOutputStream(bytes);
+        record.writeByte(1);
+        byte[] pathBytes = path.toString().getBytes("UTF-8");
+        record.writeInt(pathBytes.length);
+        record.write(pathBytes);
+        record.writeLong(0);
+        record.writeLong(0);
+        record.writeByte(format);
+        record.writeByte(reason);
+        record.writeInt(-1);
+        record.writeInt(-1);
+        record.writeInt(-1);
+        record.flush();
+        
+        byte[] payload = bytes.toByteArray();
+        CRC32 crc = new CRC32();
+        crc.update(payload);
+        ByteArrayOutputStream framed = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(framed);
+        out.writeInt(payload.length);
+        out.writeInt((int)crc.getValue());
+        out.write(payload);
+        out.flush();
+        return framed.toByteArray();
+    }
+    
+    @Test
+    public void testCorruptLength()
+                  throws IOException
+    {
+        Path google = writeUrl("Google.url", "https://www.google.com/");
+        ShortcutIndex index = ShortcutIndex.open(indexFile);
+        index.rescan(root);
+        index.close();
+        long length = Files.size(indexFile);
+        
+        // A huge length must be treated as the end of the file, not allocated.
+        Files.write(indexFile, new byte[] { 0x7F, (byte)0xFF, (byte)0xFF, (byte)0xF0, 1, 2, 3, 4, 5, 6, 7, 8 }, StandardOpenOption.APPEND);
+        
+        index = ShortcutIndex.open(indexFile);
+        assertEquals(length, Files.size(indexFile));
+        assertEquals(1, index.size());
+        assertEquals("https://www.google.com/", index.get(google).getUrlString());
+        index.close();
+    }
+    
+    @Test
+    public void testBadOrdinals()
+                  throws IOException
+    {
+        Path google = writeUrl("Google.url", "https://www.google.com/");
+        ShortcutIndex index = ShortcutIndex.open(indexFile);
+        index.rescan(root);
+        index.close();
+        
+        // Records with valid checksums but unknown reasons or formats are dropped.
+        Path bad = root.resolve("Bad.url").toAbsolutePath().normalize();
+        Files.write(indexFile, putRecord(bad, 0, 100), StandardOpenOption.APPEND);
+        Files.write(indexFile, putRecord(bad, 100, 0), StandardOpenOption.APPEND);
+        Files.write(indexFile, putRecord(bad, -2, 0), StandardOpenOption.APPEND);
+        Files.write(indexFile, putRecord(bad, 0, -1), StandardOpenOption.APPEND);
+        // A later valid record is still loaded.
+        Path good = root.resolve("Good.url").toAbsolutePath().normalize();
+        Files.write(indexFile, putRecord(good, -1, 0), StandardOpenOption.APPEND);
+        long length = Files.size(indexFile);
+        
+        index = ShortcutIndex.open(indexFile);
+        assertEquals(length, Files.size(indexFile));
+        assertEquals(2, index.size());
+        assertNull(index.get(bad));
+        assertNull(index.get(good).getFormat());
+        assertEquals("https://www.google.com/", index.get(google).getUrlString());
+        index.close();
+    }
+    
+    @Test
+    public void testCompact()
+                  throws IOException
+    {
+        Path google = writeUrl("Google.url", "https://www.google.com/");
+        writeUrl("Other.url", "https://www.google.org/");
+        ShortcutIndex index = ShortcutIndex.open(indexFile);
+        index.rescan(root);
+        FileTime time = Files.getLastModifiedTime(google);
+        for(int i = 0; i < 50; i++) {
+            writeUrl("Google.url", "https://www.google.com/" + i);
+            // Several writes may happen within the resolution of the timestamps.
+            Files.setLastModifiedTime(google, FileTime.fromMillis(time.toMillis() + (i + 1) * 60000L));
+            index.update(google);
+        }
+        index.flush();
+        long length = Files.size(indexFile);
+        
+        index.compact();
+        assertTrue(Files.size(indexFile) < length / 10);
+        
+        // Still usable after compaction
+        writeUrl("Added.url", "https://www.google.de/");
+        assertEquals(1, index.rescan(root));
+        index.close();
+        
+        index = ShortcutIndex.open(indexFile);
+        assertEquals(3, index.size());
+        assertEquals("https://www.google.com/49", index.get(google).getUrlString());
+        index.close();
+        
+        // Only the index file is left behind.
+        assertEquals(2, folder.getRoot().list().length);
+    }
+    
+    @Test
+    public void testAutomaticCompaction()
+                  throws IOException
+    {
+        for(int i = 0; i < ShortcutIndex.MIN_COMPACTION_GARBAGE; i++) {
+            writeUrl("File" + i + ".url", "https://www.google.com/" + i);
+        }
+        ShortcutIndex index = ShortcutIndex.open(indexFile);
+        try {
+            index.rescan(root);
+            index.flush();
+            long length = Files.size(indexFile);
+            
+            // Deleting everything leaves only superseded records.
+            for(File file : root.toFile().listFiles()) {
+                assertTrue(file.delete());
+            }
+            assertEquals(0, index.rescan(root));
+            assertEquals(0, index.size());
+            assertTrue(Files.size(indexFile) < length);
+        } finally {
+            index.close();
+        }
+    }
+    
+    @Test
+    public void testNotAnIndex()
+                  throws IOException
+    {
+        Files.write(indexFile, "This is not an index".getBytes("US-ASCII"));
+        thrown.expect(IOException.class);
+        thrown.expectMessage("Not a shortcut index");
+        ShortcutIndex.open(indexFile);
+    }
+}
@@ -21,14 +21,19 @@
 
 package com.abcodeworks.webshortcututil.read;
 
+import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.io.FileNotFoundException;
+import java.io.FilterInputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Paths;
 
 import org.junit.Rule;
 import org.junit.Test;
 import org.junit.rules.ExpectedException;
 
+import com.abcodeworks.webshortcututil.read.ShortcutFormat;
 import com.abcodeworks.webshortcututil.read.ShortcutReadException;
 import com.abcodeworks.webshortcututil.read.ShortcutReadUtil;
 
@@ -58,6 +63,9 @@ public class ShortcutReadUtilTest
         assertFalse("Invalid no extension", ShortcutReadUtil.hasValidExtension(new File("file")));
         assertFalse("Invalid no extension (with dot)", ShortcutReadUtil.hasValidExtension(new File("file.")));
         assertFalse("Invalid extension multiple dots", ShortcutReadUtil.hasValidExtension(new File("file.misleading.badextension")));
+        
+        assertTrue("Valid extension path", ShortcutReadUtil.hasValidExtension(Paths.get("folder", "file.URL")));
+        assertFalse("Invalid extension path", ShortcutReadUtil.hasValidExtension(Paths.get("folder.url", "file")));
     }
     
 
@@ -97,4 +105,129 @@ public class ShortcutReadUtilTest
         thrown.expectMessage("The shortcut is not recognized as a known type");
         ShortcutReadUtil.readUrlStringTrialAndError(getTestStream(".", "NotAShortcut.txt"));
     }
+    
+    void testDetectFormat(ShortcutFormat expected, String path, String filename)
+            throws IOException {
+        InputStream instream = getTestStream(path, filename);
+        assertEquals(filename, expected, ShortcutReadUtil.detectFormat(instream));
+        instream.close();
+    }
+    
+    @Test
+    public void testDetectFormat()
+            throws IOException {
+        final String REAL_PATH = "samples" + File.separator + "real" + File.separator,
+                     FAKE_PATH = "samples" + File.separator + "fake" + File.separator;
+        
+        testDetectFormat(ShortcutFormat.URL, REAL_PATH + "url" + File.separator + "Chrome", "Google.url");
+        testDetectFormat(ShortcutFormat.URL, REAL_PATH + "url" + File.separator + "IE", "Google.url");
+        testDetectFormat(ShortcutFormat.URL, FAKE_PATH + "url", "LotsOfWhitespace.url");
+        testDetectFormat(ShortcutFormat.WEBSITE, REAL_PATH + "website" + File.separator + "IE9", "Google.website");
+        testDetectFormat(ShortcutFormat.WEBSITE, REAL_PATH + "website" + File.separator + "IE10", "Google.website");
+        testDetectFormat(ShortcutFormat.DESKTOP, REAL_PATH + "desktop" + File.separator + "gnome", "Google.desktop");
+        testDetectFormat(ShortcutFormat.DESKTOP, REAL_PATH + "desktop" + File.separator + "kde", "https___www.google.com_.desktop");
+        testDetectFormat(ShortcutFormat.DESKTOP, FAKE_PATH + "desktop", "CommentsAndBlankLines.desktop");
+        testDetectFormat(ShortcutFormat.WEBLOC, REAL_PATH + "webloc" + File.separator + "binary", "Google.webloc");
+        testDetectFormat(ShortcutFormat.WEBLOC, REAL_PATH + "webloc" + File.separator + "xml", "Google.webloc");
+        testDetectFormat(null, ".", "NotAShortcut.txt");
+        testDetectFormat(null, FAKE_PATH + "desktop", "Empty.desktop");
+        testDetectFormat(null, FAKE_PATH + "desktop", "GarbledHeader.desktop");
+    }
+    
+    @Test
+    public void testGetShortcutReaderShared()
+    {
+        ShortcutReader reader = ShortcutReadUtil.getShortcutReader(new File("file.url"));
+        assertTrue(reader instanceof UrlShortcutReader);
+        assertSame(reader, ShortcutReadUtil.getShortcutReader(new File("other.URL")));
+        assertSame(reader, ShortcutReadUtil.getShortcutReader(Paths.get("folder", "file.Url")));
+        
+        assertTrue(ShortcutReadUtil.getShortcutReader(new File("file.website")) instanceof WebsiteShortcutReader);
+        assertTrue(ShortcutReadUtil.getShortcutReader(new File("file.desktop")) instanceof DesktopShortcutReader);
+        assertTrue(ShortcutReadUtil.getShortcutReader(new File("file.webloc")) instanceof WeblocShortcutReader);
+    }
+    
+    @Test
+    public void testRegisterShortcutReader()
+            throws FileNotFoundException,
+                   ShortcutReadException
+    {
+        File file = new File("file.InetLoc");
+        assertFalse(ShortcutReadUtil.hasValidExtension(file));
+        
+        ShortcutReader reader = new WeblocShortcutReader();
+        assertNull(ShortcutReadUtil.registerShortcutReader("inetloc", reader));
+        try {
+            assertSame(reader, ShortcutReadUtil.getShortcutReader(file));
+            assertTrue(ShortcutReadUtil.hasValidExtension(Paths.get("file.INETLOC")));
+        } finally {
+            assertSame(reader, ShortcutReadUtil.unregisterShortcutReader("INETLOC"));
+        }
+        assertFalse(ShortcutReadUtil.hasValidExtension(file));
+        
+        // Replacing a built-in reader
+        ShortcutReader urlReader = new UrlShortcutReader();
+        ShortcutReader builtIn = ShortcutReadUtil.registerShortcutReader("URL", urlReader);
+        try {
+            assertSame(urlReader, ShortcutReadUtil.getShortcutReader(new File("file.url")));
+        } finally {
+            ShortcutReadUtil.registerShortcutReader("url", builtIn);
+        }
+        assertSame(builtIn, ShortcutReadUtil.getShortcutReader(new File("file.url")));
+    }
+    
+    @Test
+    public void testRegisterShortcutReaderInvalidExtension()
+    {
+        thrown.expect(IllegalArgumentException.class);
+        ShortcutReadUtil.registerShortcutReader(".url", new UrlShortcutReader());
+    }
+    
+    @Test
+    public void testDetectFormatResetsStream()
+            throws IOException,
+                   ShortcutReadException {
+        byte[] contents = "[InternetShortcut]\r\nURL=https://www.google.com/\r\n".getBytes("US-ASCII");
+        InputStream instream = new ByteArrayInputStream(contents);
+        assertEquals(ShortcutFormat.URL, ShortcutReadUtil.detectFormat(instream));
+        assertEquals(ShortcutFormat.URL, ShortcutReadUtil.detectFormat(contents, 0, contents.length));
+        assertEquals("https://www.google.com/", ShortcutReadUtil.readUrlStringTrialAndError(instream));
+    }
+    
+    @Test
+    public void testReadTrialAndErrorWithoutMark()
+            throws IOException,
+                   ShortcutReadException {
+        // The stream does not need to support mark/reset, and may return fewer bytes than requested.
+        byte[] contents = "\n#Comment\n[Desktop Entry]\nEncoding=UTF-8\nURL=https://www.google.com/\n".getBytes("UTF-8");
+        InputStream instream = new FilterInputStream(new ByteArrayInputStream(contents)) {
+            @Override
+            public boolean markSupported() {
+                return false;
+            }
+            
+            @Override
+            public int read(byte[] b, int off, int len) throws IOException {
+                return super.read(b, off, Math.min(len, 3));
+            }
+        };
+        assertEquals("https://www.google.com/", ShortcutReadUtil.readUrlStringTrialAndError(instream));
+    }
+    
+    @Test
+    public void testReadTrialAndErrorLeavesStreamOpen()
+            throws IOException,
+                   ShortcutReadException {
+        final boolean[] closed = { false };
+        byte[] contents = "[InternetShortcut]\r\nURL=https://www.google.com/\r\n".getBytes("US-ASCII");
+        InputStream instream = new FilterInputStream(new ByteArrayInputStream(contents)) {
+            @Override
+            public void close() throws IOException {
+                closed[0] = true;
+                super.close();
+            }
+        };
+        assertEquals("https://www.google.com/", ShortcutReadUtil.readResultTrialAndError(instream).getUrlString());
+        assertFalse("The stream was closed", closed[0]);
+    }
 }
@@ -27,6 +27,11 @@ import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.FileOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.util.regex.Pattern;
 
 import org.junit.*;
 import org.junit.rules.TemporaryFolder;
@@ -55,6 +60,22 @@ public class ShortcutReaderTest
         }
     }
     
+    @Test
+    public void testPatterns()
+    {
+        assertTrue(reader.matches(reader.header, " [InternetShortcut] "));
+        assertTrue(reader.matches(reader.key_value_pattern, "URL=http://a.com/"));
+        
+        // A subclass may supply its own patterns without affecting other readers.
+        ShortcutReader custom = new ShortcutReaderChild() {
+            {
+                header = Pattern.compile("<.*>");
+            }
+        };
+        assertTrue(custom.matches(custom.header, "<InternetShortcut>"));
+        assertFalse(reader.matches(reader.header, "<InternetShortcut>"));
+    }
+    
     @Test
     public void testGetShortcutName()
                   throws ShortcutReadException
@@ -88,5 +109,77 @@ public class ShortcutReaderTest
         contents = reader.read(file);
         assertEquals( urlString, contents.getUrlString());
         assertEquals( base_filename, contents.getName());
+        
+        Path path = file.toPath();
+        assertEquals( urlString, reader.readUrlString(path));
+        assertEquals( urlString, reader.readUrlString(new byte[0], 0, 0));
+        assertEquals( urlString, reader.readUrlString(ByteBuffer.allocate(0)));
+
+        contents = reader.read(path);
+        assertEquals( urlString, contents.getUrlString());
+        assertEquals( base_filename, contents.getName());
+        
+        instream.close();
+    }
+    
+    @Test(expected=FileNotFoundException.class)
+    public void testReadPathNotFound()
+                  throws FileNotFoundException,
+                         ShortcutReadException,
+                         IOException
+    {
+        reader.readUrlString(new File(folder.getRoot(), "Missing.url").toPath());
+    }
+    
+    @Test
+    public void testReadContents()
+                  throws ShortcutReadException,
+                         IOException
+    {
+        // Small files are read into the heap, large ones are memory mapped.
+        int[] sizes = { 0, 100, (int)ShortcutReader.MAPPED_READ_THRESHOLD + 100 };
+        for(int size : sizes) {
+            byte[] bytes = new byte[size];
+            for(int i = 0; i < size; i++) {
+                bytes[i] = (byte)i;
+            }
+            File file = folder.newFile("Contents" + size + ".url");
+            OutputStream outstream = new FileOutputStream(file);
+            outstream.write(bytes);
+            outstream.close();
+            
+            ByteBuffer buffer = ShortcutReader.readContents(file.toPath());
+            assertEquals(size, buffer.remaining());
+            byte[] read = new byte[size];
+            buffer.get(read);
+            assertArrayEquals(bytes, read);
+        }
+    }
+    
+    @Test
+    public void testReadLargeFile()
+                  throws FileNotFoundException,
+                         ShortcutReadException,
+                         IOException
+    {
+        // Enough comments to push the file over the memory mapping threshold
+        File file = folder.newFile("Large.url");
+        OutputStream outstream = new FileOutputStream(file);
+        byte[] comment = ";Comment\r\n".getBytes("US-ASCII");
+        for(int written = 0; written <= ShortcutReader.MAPPED_READ_THRESHOLD; written += comment.length) {
+            outstream.write(comment);
+        }
+        outstream.write("[InternetShortcut]\r\nURL=https://www.google.com/\r\n".getBytes("US-ASCII"));
+        outstream.close();
+        
+        assertEquals("https://www.google.com/", new UrlShortcutReader(ShortcutReadLimits.UNLIMITED).readUrlString(file.toPath()));
+        
+        // The default limits reject the file without reading it
+        try {
+            new UrlShortcutReader().readUrlString(file.toPath());
+            fail("Did not get ShortcutLimitExceededException");
+        } catch(ShortcutLimitExceededException e) {
+            assertEquals("Shortcut is larger than " + ShortcutReadLimits.DEFAULT_MAX_BYTES + " bytes", e.getMessage());
+        }
     }
 }
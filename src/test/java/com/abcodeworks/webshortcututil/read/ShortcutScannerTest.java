@@ -0,0 +1,191 @@
+/**
+ * Copyright 2014 by Andre Beckus
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+
+ *   http://www.apache.org/licenses/LICENSE-2.0
+
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.abcodeworks.webshortcututil.read;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.URISyntaxException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class ShortcutScannerTest
+{
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+    
+    /* Collects the results of a scan. */
+    static class CollectingListener
+            implements ShortcutScanListener {
+        final Map<Path, String> urls = new ConcurrentHashMap<Path, String>();
+        final Map<Path, ReadResult> failures = new ConcurrentHashMap<Path, ReadResult>();
+
+        public void shortcutRead(Path path, ShortcutContents contents) {
+            assertNull("Read twice: " + path, urls.put(path, contents.getUrlString()));
+        }
+
+        public void shortcutFailed(Path path, ReadResult result) {
+            assertFalse(result.isSuccess());
+            assertNull("Failed twice: " + path, failures.put(path, result));
+        }
+    }
+    
+    Path getSamplesPath()
+            throws URISyntaxException {
+        return Paths.get(getClass().getResource(File.separator + "samples").toURI());
+    }
+    
+    /* Reads every shortcut in the tree one at a time, for comparison. */
+    void readSequentially(Path root, final Map<Path, String> urls, final Map<Path, Exception> failures)
+            throws IOException {
+        Files.walkFileTree(root, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+                if(ShortcutReadUtil.hasValidExtension(file)) {
+                    try {
+                        urls.put(file, ShortcutReadUtil.readUrlString(file.toFile()));
+                    } catch (Exception e) {
+                        failures.put(file, e);
+                    }
+                }
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+    
+    void testScanSamples(ShortcutScanner scanner)
+            throws IOException,
+                   URISyntaxException {
+        Path root = getSamplesPath();
+        Map<Path, String> expectedUrls = new HashMap<Path, String>();
+        Map<Path, Exception> expectedFailures = new HashMap<Path, Exception>();
+        readSequentially(root, expectedUrls, expectedFailures);
+        
+        CollectingListener listener = new CollectingListener();
+        scanner.scan(root, listener);
+        
+        assertFalse(expectedUrls.isEmpty());
+        assertEquals(expectedUrls, listener.urls);
+        assertEquals(expectedFailures.keySet(), listener.failures.keySet());
+        // The exception-based methods must fail with the same messages.
+        for(Map.Entry<Path, Exception> entry : expectedFailures.entrySet()) {
+            assertEquals(entry.getValue().getMessage(), listener.failures.get(entry.getKey()).getMessage());
+        }
+    }
+    
+    @Test
+    public void testScan()
+                  throws IOException,
+                         URISyntaxException
+    {
+        testScanSamples(new ShortcutScanner());
+        testScanSamples(new ShortcutScanner(1));
+    }
+    
+    @Test
+    public void testScanExecutor()
+                  throws IOException,
+                         URISyntaxException
+    {
+        ExecutorService executor = Executors.newFixedThreadPool(3);
+        try {
+            // A limit of one file at a time must still get through the whole tree.
+            testScanSamples(new ShortcutScanner(executor, 1));
+            testScanSamples(new ShortcutScanner(executor, 100));
+        } finally {
+            executor.shutdown();
+        }
+    }
+    
+    @Test
+    public void testScanFailures()
+                  throws IOException
+    {
+        File good = folder.newFile("Good.url");
+        OutputStream outstream = new FileOutputStream(good);
+        outstream.write("[InternetShortcut]\r\nURL=https://www.google.com/\r\n".getBytes("US-ASCII"));
+        outstream.close();
+        
+        File bad = new File(folder.newFolder("sub"), "Bad.desktop");
+        outstream = new FileOutputStream(bad);
+        outstream.write("This is not a shortcut".getBytes("US-ASCII"));
+        outstream.close();
+        
+        folder.newFile("Ignored.txt");
+        
+        CollectingListener listener = new CollectingListener();
+        new ShortcutScanner(2).scan(folder.getRoot().toPath(), listener);
+        
+        assertEquals(1, listener.urls.size());
+        assertEquals("https://www.google.com/", listener.urls.get(good.toPath()));
+        assertEquals(1, listener.failures.size());
+        assertEquals(ReadResult.Status.NOT_A_SHORTCUT, listener.failures.get(bad.toPath()).getStatus());
+        assertEquals(ReadResult.Reason.INVALID_START, listener.failures.get(bad.toPath()).getReason());
+    }
+    
+    @Test
+    public void testScanSingleFile()
+                  throws IOException
+    {
+        File good = folder.newFile("Good.url");
+        OutputStream outstream = new FileOutputStream(good);
+        outstream.write("[InternetShortcut]\r\nURL=https://www.google.com/\r\n".getBytes("US-ASCII"));
+        outstream.close();
+        
+        final AtomicInteger count = new AtomicInteger();
+        new ShortcutScanner().scan(good.toPath(), new ShortcutScanListener() {
+            public void shortcutRead(Path path, ShortcutContents contents) {
+                assertEquals("Good", contents.getName());
+                count.incrementAndGet();
+            }
+            public void shortcutFailed(Path path, ReadResult result) {
+                fail(result.getMessage());
+            }
+        });
+        assertEquals(1, count.get());
+    }
+    
+    @Test(expected=FileNotFoundException.class)
+    public void testScanMissingRoot()
+                  throws IOException
+    {
+        new ShortcutScanner().scan(new File(folder.getRoot(), "missing").toPath(), new CollectingListener());
+    }
+}
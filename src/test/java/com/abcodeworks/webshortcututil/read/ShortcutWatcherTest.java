@@ -0,0 +1,254 @@
+/**
+ * Copyright 2014 by Andre Beckus
+ * 
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+
+ *   http://www.apache.org/licenses/LICENSE-2.0
+
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.abcodeworks.webshortcututil.read;
+
+import static org.junit.Assert.*;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.NavigableSet;
+import java.util.TreeSet;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class ShortcutWatcherTest
+{
+    static final long TIMEOUT_MILLIS = 10000;
+    
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+    
+    Path root;
+    ShortcutWatcher watcher;
+    
+    @Before
+    public void setUp()
+            throws IOException {
+        root = folder.newFolder("bookmarks").toPath();
+    }
+    
+    @After
+    public void tearDown()
+            throws IOException {
+        if(watcher != null) {
+            watcher.close();
+        }
+    }
+    
+    Path writeUrl(String name, String url)
+            throws IOException {
+        Path path = root.resolve(name);
+        Files.createDirectories(path.getParent());
+        Files.write(path, ("[InternetShortcut]\r\nURL=" + url + "\r\n").getBytes("US-ASCII"));
+        return path;
+    }
+    
+    /* Waits for the watcher to pick up a change (null means the file should not be in the map). */
+    void waitForUrl(Path path, String url)
+            throws InterruptedException {
+        long deadline = System.currentTimeMillis() + TIMEOUT_MILLIS;
+        while(true) {
+            ShortcutContents contents = watcher.get(path);
+            String actual = (contents == null) ? null : contents.getUrlString();
+            if(url == null ? actual == null : url.equals(actual)) {
+                return;
+            }
+            if(System.currentTimeMillis() > deadline) {
+                fail(path + ": expected " + url + " but was " + actual);
+            }
+            Thread.sleep(10);
+        }
+    }
+    
+    @Test
+    public void testInitialRead()
+                  throws IOException,
+                         InterruptedException
+    {
+        Path google = writeUrl("Google.url", "https://www.google.com/"),
+             nested = writeUrl("sub/sub/Nested.url", "https://www.google.org/");
+        Files.write(root.resolve("Ignored.txt"), new byte[0]);
+        Files.write(root.resolve("Bad.url"), "This is not a shortcut".getBytes("US-ASCII"));
+        
+        watcher = new ShortcutWatcher(root, 2, 10);
+        watcher.start();
+        assertTrue(watcher.awaitIdle(TIMEOUT_MILLIS, TimeUnit.MILLISECONDS));
+        
+        assertEquals(2, watcher.getContents().size());
+        assertEquals("Google", watcher.get(google).getName());
+        assertEquals("https://www.google.com/", watcher.get(google).getUrlString());
+        assertEquals("https://www.google.org/", watcher.getContents().get(nested.toAbsolutePath()).getUrlString());
+    }
+    
+    @Test
+    public void testChanges()
+                  throws IOException,
+                         InterruptedException
+    {
+        Path google = writeUrl("Google.url", "https://www.google.com/");
+        watcher = new ShortcutWatcher(root, 2, 10);
+        watcher.start();
+        assertTrue(watcher.awaitIdle(TIMEOUT_MILLIS, TimeUnit.MILLISECONDS));
+        
+        // Modify
+        writeUrl("Google.url", "https://www.google.co.uk/");
+        waitForUrl(google, "https://www.google.co.uk/");
+        
+        // Create, including in a new directory
+        Path added = writeUrl("Added.url", "https://www.google.de/");
+        waitForUrl(added, "https://www.google.de/");
+        Path nested = writeUrl("new/dir/Nested.url", "https://www.google.fr/");
+        waitForUrl(nested, "https://www.google.fr/");
+        Path later = writeUrl("new/dir/Later.url", "https://www.google.it/");
+        waitForUrl(later, "https://www.google.it/");
+        
+        // Delete
+        Files.delete(google);
+        waitForUrl(google, null);
+        
+        // Delete a directory tree
+        Files.walkFileTree(root.resolve("new"), new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs)
+                    throws IOException {
+                Files.delete(file);
+                return FileVisitResult.CONTINUE;
+            }
+            
+            @Override
+            public FileVisitResult postVisitDirectory(Path dir, IOException e)
+                    throws IOException {
+                Files.delete(dir);
+                return FileVisitResult.CONTINUE;
+            }
+        });
+        waitForUrl(nested, null);
+        waitForUrl(later, null);
+        waitForUrl(added, "https://www.google.de/");
+        assertEquals(1, watcher.getContents().size());
+    }
+    
+    @Test
+    public void testTreeOrder()
+    {
+        // Everything in a directory comes straight after it, before siblings whose names
+        // share its name as a prefix.
+        NavigableSet<Path> paths = new TreeSet<Path>(ShortcutWatcher.TREE_ORDER);
+        for(String name : new String[] { "sub.url", "sub (2).url", "sub-x/a.url", "sub/a.url", "sub/deep/b.url",
+                                         "subway.url", "a.url", "sub" }) {
+            paths.add(root.resolve(name));
+        }
+        assertEquals(8, paths.size());
+        
+        List<Path> inSub = new ArrayList<Path>();
+        for(Path path : paths.tailSet(root.resolve("sub"), false)) {
+            if(!path.startsWith(root.resolve("sub"))) {
+                break;
+            }
+            inSub.add(path);
+        }
+        assertEquals(Arrays.asList(root.resolve("sub/a.url"), root.resolve("sub/deep/b.url")), inSub);
+    }
+    
+    @Test
+    public void testDeleteDirectoryWithSimilarSiblings()
+                  throws IOException,
+                         InterruptedException
+    {
+        Path inside = writeUrl("sub/Inside.url", "https://www.google.com/"),
+             sibling = writeUrl("sub.url", "https://www.google.org/"),
+             similar = writeUrl("sub-x/Similar.url", "https://www.google.de/");
+        watcher = new ShortcutWatcher(root, 2, 10);
+        watcher.start();
+        assertTrue(watcher.awaitIdle(TIMEOUT_MILLIS, TimeUnit.MILLISECONDS));
+        assertEquals(3, watcher.getContents().size());
+        
+        Files.delete(inside);
+        Files.delete(inside.getParent());
+        waitForUrl(inside, null);
+        assertTrue(watcher.awaitIdle(TIMEOUT_MILLIS, TimeUnit.MILLISECONDS));
+        assertEquals("https://www.google.org/", watcher.get(sibling).getUrlString());
+        assertEquals("https://www.google.de/", watcher.get(similar).getUrlString());
+        assertEquals(2, watcher.getContents().size());
+    }
+    
+    @Test
+    public void testDebounce()
+                  throws IOException,
+                         InterruptedException
+    {
+        final AtomicInteger reads = new AtomicInteger();
+        ShortcutReadUtil.registerShortcutReader("counted", new UrlShortcutReader() {
+            @Override
+            public ReadResult readResult(InputStream stream) {
+                reads.incrementAndGet();
+                return super.readResult(stream);
+            }
+            
+            @Override
+            public ReadResult readResult(ByteBuffer buffer) {
+                reads.incrementAndGet();
+                return super.readResult(buffer);
+            }
+        });
+        try {
+            watcher = new ShortcutWatcher(root, 2, 500);
+            watcher.start();
+            assertTrue(watcher.awaitIdle(TIMEOUT_MILLIS, TimeUnit.MILLISECONDS));
+            
+            // A burst of saves is read once.
+            Path path = null;
+            for(int i = 0; i < 20; i++) {
+                path = writeUrl("Saved.counted", "https://www.google.com/" + i);
+            }
+            waitForUrl(path, "https://www.google.com/19");
+            assertTrue(watcher.awaitIdle(TIMEOUT_MILLIS, TimeUnit.MILLISECONDS));
+            assertEquals(1, reads.get());
+        } finally {
+            ShortcutReadUtil.unregisterShortcutReader("counted");
+        }
+    }
+    
+    @Test(expected=FileNotFoundException.class)
+    public void testMissingRoot()
+                  throws IOException
+    {
+        watcher = new ShortcutWatcher(root.resolve("missing"));
+        watcher.start();
+    }
+}
@@ -21,10 +21,13 @@
 
 package com.abcodeworks.webshortcututil.read;
 
+import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.nio.file.Files;
 
 import org.junit.*;
 import org.junit.rules.ExpectedException;
@@ -34,6 +37,7 @@ import com.abcodeworks.webshortcututil.read.ShortcutReader;
 import com.abcodeworks.webshortcututil.read.UrlShortcutReader;
 import static com.abcodeworks.webshortcututil.ShortcutTestHelper.testReadShortcut;
 import static com.abcodeworks.webshortcututil.ShortcutTestHelper.getTestStream;
+import static com.abcodeworks.webshortcututil.ShortcutTestHelper.getTestDirectory;
 import static org.junit.Assert.*;
 
 public class UrlShortcutReaderTest
@@ -133,4 +137,129 @@ public class UrlShortcutReaderTest
         thrown.expectMessage("URL not found in file");
         reader.readUrlString(getTestStream(FAKE_PATH, "HeaderOnly.url"));
     }
+    
+    @Test
+    public void testReadWithinLimits()
+            throws ShortcutReadException,
+                   IOException {
+        // Exactly at each of the limits
+        byte[] bytes = "[InternetShortcut]\r\nURL=http://a.com/\r\n".getBytes("US-ASCII");
+        ShortcutReader limitedReader = new UrlShortcutReader(new ShortcutReadLimits(bytes.length, 18, 2));
+        assertEquals("http://a.com/", limitedReader.readUrlString(new ByteArrayInputStream(bytes)));
+        assertEquals("http://a.com/", limitedReader.readUrlString(bytes, 0, bytes.length));
+    }
+    
+    @Test
+    public void testReadLongLine()
+            throws ShortcutReadException,
+                   IOException {
+        thrown.expect(ShortcutLimitExceededException.class);
+        thrown.expectMessage("Line is longer than 17 characters");
+        new UrlShortcutReader(new ShortcutReadLimits(1000, 17, 100))
+            .readUrlString(new ByteArrayInputStream("[InternetShortcut]\r\nURL=http://a.com/\r\n".getBytes("US-ASCII")));
+    }
+    
+    @Test
+    public void testReadTooManyLines()
+            throws ShortcutReadException,
+                   IOException {
+        thrown.expect(ShortcutLimitExceededException.class);
+        thrown.expectMessage("Shortcut has more than 2 lines");
+        new UrlShortcutReader(new ShortcutReadLimits(1000, 100, 2))
+            .readUrlString(new ByteArrayInputStream("[InternetShortcut]\r\n\r\nURL=http://a.com/\r\n".getBytes("US-ASCII")));
+    }
+    
+    @Test
+    public void testReadTooManyBytes()
+            throws ShortcutReadException,
+                   IOException {
+        // A stream of comments which never ends is stopped after the maximum number of bytes
+        InputStream endless = new InputStream() {
+            private int count = 0;
+            
+            @Override
+            public int read() {
+                return (++count % 100 == 0) ? '\n' : ';';
+            }
+        };
+        thrown.expect(ShortcutLimitExceededException.class);
+        thrown.expectMessage("Shortcut is larger than " + ShortcutReadLimits.DEFAULT_MAX_BYTES + " bytes");
+        reader.readUrlString(endless);
+    }
+    
+    /* Checks that both modes give the same result for every sample in a directory. */
+    static void testFirstAuthoritativeUrl(ShortcutReader readAllReader, ShortcutReader firstUrlReader, String path)
+            throws IOException {
+        File[] files = getTestDirectory(path).listFiles();
+        assertTrue(files.length > 0);
+        for(File file : files) {
+            ReadResult expected = readAllReader.readResult(file),
+                       actual = firstUrlReader.readResult(file);
+            assertEquals(file.getName(), expected.getReason(), actual.getReason());
+            assertEquals(file.getName(), expected.getUrlString(), actual.getUrlString());
+            assertEquals(file.getName(), expected.getName(), actual.getName());
+            
+            byte[] bytes = Files.readAllBytes(file.toPath());
+            assertEquals(file.getName(), expected.getUrlString(), firstUrlReader.readResult(new ByteArrayInputStream(bytes)).getUrlString());
+            assertEquals(file.getName(), expected.getUrlString(), firstUrlReader.readResult(bytes, 0, bytes.length).getUrlString());
+        }
+    }
+    
+    /* Contents followed by a stream which fails if it is read. */
+    static InputStream failAfter(String contents)
+            throws IOException {
+        InputStream failing = new InputStream() {
+            @Override
+            public int read()
+                    throws IOException {
+                throw new IOException("Read past the URL");
+            }
+        };
+        return new SequenceInputStream(new ByteArrayInputStream(contents.getBytes("US-ASCII")), failing);
+    }
+    
+    @Test
+    public void testFirstAuthoritativeUrlSameAsReadAll()
+            throws IOException {
+        ShortcutReader firstUrlReader = new UrlShortcutReader(ShortcutReadLimits.DEFAULT, UrlShortcutReader.Mode.FIRST_AUTHORITATIVE_URL);
+        testFirstAuthoritativeUrl(reader, firstUrlReader, CHROME_PATH);
+        testFirstAuthoritativeUrl(reader, firstUrlReader, FIREFOX_PATH);
+        testFirstAuthoritativeUrl(reader, firstUrlReader, IE_PATH);
+        testFirstAuthoritativeUrl(reader, firstUrlReader, FAKE_PATH);
+    }
+    
+    @Test
+    public void testFirstAuthoritativeUrlStopsEarly()
+            throws ShortcutReadException,
+                   IOException {
+        ShortcutReader firstUrlReader = new UrlShortcutReader(ShortcutReadLimits.DEFAULT, UrlShortcutReader.Mode.FIRST_AUTHORITATIVE_URL);
+        assertEquals(UrlShortcutReader.Mode.READ_ALL, ((UrlShortcutReader)reader).getMode());
+        
+        // An ASCII URL without any replaced characters
+        String contents = "[InternetShortcut]\r\nURL=http://www.google.com/\r\n";
+        assertEquals("http://www.google.com/", firstUrlReader.readUrlString(failAfter(contents)));
+        assertEquals(ReadResult.Reason.IO_ERROR, reader.readResult(failAfter(contents)).getReason());
+        
+        // An ASCII URL with replaced characters, followed by the UTF7 URL
+        contents = "[InternetShortcut]\r\nURL=http://??.??/\r\n[InternetShortcut.A]\r\nURL=http://??.??/\r\n"
+                 + "[InternetShortcut.W]\r\nURL=http://+W/yCKg-.+Ti1W/Q-/\r\n";
+        assertEquals("http://\u5BFC\u822A.\u4E2D\u56FD/", firstUrlReader.readUrlString(failAfter(contents)));
+        
+        // A UTF7 URL is used even if an ASCII URL follows
+        contents = "[InternetShortcut.W]\r\nURL=http://+W/yCKg-.+Ti1W/Q-/\r\n";
+        assertEquals("http://\u5BFC\u822A.\u4E2D\u56FD/", firstUrlReader.readUrlString(failAfter(contents)));
+        
+        // The ASCII URL is used if there is no UTF7 URL, even if it has a "?"
+        contents = "[InternetShortcut]\r\nURL=http://www.google.com/search?q=x\r\n";
+        assertEquals("http://www.google.com/search?q=x", firstUrlReader.readUrlString(new ByteArrayInputStream(contents.getBytes("US-ASCII"))));
+    }
+    
+    @Test
+    public void testReadTruncatedUtf7()
+            throws ShortcutReadException,
+                   IOException {
+        thrown.expect(ShortcutReadException.class);
+        thrown.expectMessage("Error converting URL from UTF7");
+        reader.readUrlString(new ByteArrayInputStream("[InternetShortcut.W]\r\nURL=http://www.+Ti1W/WU/Xp\r\n".getBytes("US-ASCII")));
+    }
 }
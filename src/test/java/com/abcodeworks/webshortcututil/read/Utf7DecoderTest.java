@@ -0,0 +1,118 @@
+/**
+ * Copyright 2014 by Andre Beckus
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+
+ *   http://www.apache.org/licenses/LICENSE-2.0
+
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.abcodeworks.webshortcututil.read;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.nio.charset.MalformedInputException;
+import java.util.Random;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+
+public class Utf7DecoderTest
+{
+    @Rule
+    public ExpectedException thrown = ExpectedException.none();
+
+    static String decode(String str) throws MalformedInputException {
+        char[] chars = ("xx" + str + "xx").toCharArray();
+        return Utf7Decoder.decode(chars, 2, str.length());
+    }
+
+    /* Decodes using the jutf7 charset, the same way the reader used to.  Returns null if the charset fails. */
+    static String decodeWithCharset(String str) throws IOException {
+        try {
+            return new String(str.getBytes("US-ASCII"), "UTF-7");
+        } catch(Error e) {
+            return null;
+        }
+    }
+
+    static String randomString(Random random, String chars, int maxLength) {
+        StringBuilder str = new StringBuilder();
+        int length = random.nextInt(maxLength + 1);
+        for(int i = 0; i < length; i++) {
+            str.append(chars.charAt(random.nextInt(chars.length())));
+        }
+        return str.toString();
+    }
+
+    @Test
+    public void testDecode()
+                  throws MalformedInputException
+    {
+        assertEquals("", decode(""));
+        assertEquals("http://www.google.com/", decode("http://www.google.com/"));
+        assertEquals("http://www.中国政府.政务.cn/", decode("http://www.+Ti1W/WU/Xpw-.+ZT9SoQ-.cn/"));
+        assertEquals("日本語", decode("+ZeVnLIqe"));
+        assertEquals("a-", decode("+AGE--"));
+        assertEquals("+", decode("+-"));
+        assertEquals("1+1", decode("1+-1"));
+        assertEquals("", decode("+"));
+
+        // Broken base64 runs
+        assertEquals(".�x", decode("+AG.x"));
+        assertEquals("!�", decode("+AG!"));
+    }
+
+    @Test
+    public void testTruncated()
+                  throws MalformedInputException
+    {
+        thrown.expect(MalformedInputException.class);
+        decode("http://www.+Ti1W/WU/Xp");
+    }
+
+    @Test
+    public void testSameAsCharset()
+                  throws IOException
+    {
+        // Mostly base64 characters, with the shift characters and a few others which end a run
+        String chars = "AAAAAAAGZgz09+/+/+/--.. !~?é中😀";
+        Random random = new Random(42);
+        for(int i = 0; i < 20000; i++) {
+            String str = randomString(random, chars, 12),
+                   expected = decodeWithCharset(str);
+            try {
+                assertEquals(str, expected, decode(str));
+            } catch(MalformedInputException e) {
+                assertNull(str, expected);
+            }
+        }
+    }
+
+    @Test
+    public void testRoundTrip()
+                  throws IOException
+    {
+        String chars = "az09+-/.!~ éö中国￿𐀀";
+        Random random = new Random(42);
+        for(int i = 0; i < 5000; i++) {
+            String str = randomString(random, chars, 12),
+                   encoded = new String(str.getBytes("UTF-7"), "US-ASCII");
+            assertEquals(encoded, str, decode(encoded));
+        }
+    }
+}
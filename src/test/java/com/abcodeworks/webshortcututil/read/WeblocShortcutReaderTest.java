@@ -21,11 +21,17 @@
 
 package com.abcodeworks.webshortcututil.read;
 
+import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.util.Arrays;
 import org.junit.*;
 import org.junit.rules.ExpectedException;
+import org.junit.rules.TemporaryFolder;
 
 import com.abcodeworks.webshortcututil.read.ShortcutReadException;
 import com.abcodeworks.webshortcututil.read.ShortcutReader;
@@ -33,6 +39,7 @@ import com.abcodeworks.webshortcututil.read.WeblocShortcutReader;
 
 import static com.abcodeworks.webshortcututil.ShortcutTestHelper.testReadShortcut;
 import static com.abcodeworks.webshortcututil.ShortcutTestHelper.getTestStream;
+import static org.junit.Assert.*;
 
 public class WeblocShortcutReaderTest
 {
@@ -48,6 +55,9 @@ public class WeblocShortcutReaderTest
     @Rule
     public ExpectedException thrown= ExpectedException.none();
     
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+    
     @Before
     public void setUp() throws Exception {
         reader = new WeblocShortcutReader();
@@ -115,4 +125,102 @@ public class WeblocShortcutReaderTest
         thrown.expectMessage("URL not found");
         reader.readUrlString(getTestStream(XML_FAKE_PATH, "MissingUrl.webloc"));
     }
+    
+    @Test
+    public void testRejectEntityExpansion()
+            throws FileNotFoundException,
+                   ShortcutReadException,
+                   IOException {
+        // XML weblocs must not be handed to a parser that expands entities.
+        String contents = "<?xml version=\"1.0\"?>\n"
+                + "<!DOCTYPE plist [<!ENTITY x \"http://expanded/\">]>\n"
+                + "<plist><dict><key>URL</key><string>&x;</string></dict></plist>";
+        thrown.expect(ShortcutReadException.class);
+        reader.readUrlString(new ByteArrayInputStream(contents.getBytes("UTF-8")));
+    }
+    
+    @Test
+    public void testReadTooManyBytes()
+            throws ShortcutReadException,
+                   IOException {
+        // An XML plist padded with whitespace which never ends is stopped after the maximum number of bytes
+        final byte[] start = "<?xml version=\"1.0\"?>\n<plist><dict>".getBytes("US-ASCII");
+        InputStream endless = new InputStream() {
+            private int count = 0;
+            
+            @Override
+            public int read() {
+                return (count < start.length) ? start[count++] : ' ';
+            }
+        };
+        ReadResult result = reader.readResult(endless);
+        assertEquals(ReadResult.Reason.LIMIT_EXCEEDED, result.getReason());
+        assertEquals("Shortcut is larger than " + ShortcutReadLimits.DEFAULT_MAX_BYTES + " bytes", result.getMessage());
+        
+        byte[] bytes = new byte[(int)ShortcutReadLimits.DEFAULT_MAX_BYTES + 1];
+        Arrays.fill(bytes, (byte)' ');
+        System.arraycopy(start, 0, bytes, 0, start.length);
+        assertEquals(ReadResult.Reason.LIMIT_EXCEEDED, reader.readResult(bytes, 0, bytes.length).getReason());
+        assertEquals(ReadResult.Reason.LIMIT_EXCEEDED, reader.readResult(ByteBuffer.wrap(bytes)).getReason());
+        
+        // Without limits the whole buffer is parsed (and is simply not a valid plist).
+        ShortcutReader unlimited = new WeblocShortcutReader(ShortcutReadLimits.UNLIMITED);
+        result = unlimited.readResult(ByteBuffer.wrap(bytes));
+        assertFalse(result.isSuccess());
+        assertFalse(result.getReason() == ReadResult.Reason.LIMIT_EXCEEDED);
+        
+        thrown.expect(ShortcutLimitExceededException.class);
+        reader.readUrlString(new ByteArrayInputStream(bytes));
+    }
+    
+    /* An XML webloc with the URL first, followed by extra keys which never end. */
+    static class EndlessXml
+            extends InputStream {
+        private final byte[] start,
+                             entry;
+        private int position = 0;
+        long count = 0;
+        
+        EndlessXml(String url)
+                throws IOException {
+            start = ("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n<plist version=\"1.0\">\n<dict>\n"
+                     + "<key>URL</key><string>" + url + "</string>\n").getBytes("UTF-8");
+            entry = "<key>Extra</key><string>Some other value</string>\n".getBytes("UTF-8");
+        }
+        
+        @Override
+        public int read() {
+            int b;
+            if(count < start.length) {
+                b = start[(int)count];
+            } else {
+                b = entry[position];
+                position = (position + 1) % entry.length;
+            }
+            count++;
+            return b & 0xFF;
+        }
+    }
+    
+    @Test
+    public void testXmlStreamStopsAtUrl()
+            throws ShortcutReadException,
+                   IOException {
+        // The rest of the stream is left alone (apart from what the parser buffers).
+        EndlessXml stream = new EndlessXml("https://www.google.com/");
+        assertEquals("https://www.google.com/", reader.readUrlString(stream));
+        assertTrue("Read " + stream.count + " bytes", stream.count < 64 * 1024);
+        
+        // The same applies to files.
+        File file = folder.newFile("Long.webloc");
+        stream = new EndlessXml("https://www.google.org/");
+        byte[] contents = new byte[(int)ShortcutReadLimits.DEFAULT_MAX_BYTES];
+        for(int i = 0; i < contents.length - 100; i++) {
+            contents[i] = (byte)stream.read();
+        }
+        Arrays.fill(contents, contents.length - 100, contents.length, (byte)' ');
+        Files.write(file.toPath(), contents);
+        assertEquals("https://www.google.org/", reader.readUrlString(file));
+        assertEquals("https://www.google.org/", reader.readResult(ByteBuffer.wrap(contents)).getUrlString());
+    }
 }
@@ -26,6 +26,8 @@ import java.io.FileNotFoundException;
 import java.io.IOException;
 import org.junit.*;
 
+import static org.junit.Assert.*;
+
 import com.abcodeworks.webshortcututil.read.ShortcutReadException;
 import com.abcodeworks.webshortcututil.read.ShortcutReader;
 import com.abcodeworks.webshortcututil.read.WebsiteShortcutReader;
@@ -87,4 +89,24 @@ public class WebsiteShortcutReaderTest {
         // Website tests: IE10
         testHelperNonAscii(WEBSITE_IE10_PATH);
     }
+    
+    @Test
+    public void testFirstAuthoritativeUrlSameAsReadAll()
+                  throws IOException
+    {
+        ShortcutReader firstUrlReader = new WebsiteShortcutReader(ShortcutReadLimits.DEFAULT, UrlShortcutReader.Mode.FIRST_AUTHORITATIVE_URL);
+        UrlShortcutReaderTest.testFirstAuthoritativeUrl(reader, firstUrlReader, WEBSITE_IE9_PATH);
+        UrlShortcutReaderTest.testFirstAuthoritativeUrl(reader, firstUrlReader, WEBSITE_IE10_PATH);
+    }
+    
+    @Test
+    public void testFirstAuthoritativeUrlSkipsProperties()
+                  throws ShortcutReadException,
+                         IOException
+    {
+        // The property sections after the URL are not read
+        ShortcutReader firstUrlReader = new WebsiteShortcutReader(ShortcutReadLimits.DEFAULT, UrlShortcutReader.Mode.FIRST_AUTHORITATIVE_URL);
+        String contents = "[{9F4C2855-9F79-4B39-A8D0-E1D42DE1D5F3}]\r\nProp12=19,2\r\n[InternetShortcut]\r\nIDList=\r\nURL=https://www.google.com/\r\n";
+        assertEquals("https://www.google.com/", firstUrlReader.readUrlString(UrlShortcutReaderTest.failAfter(contents)));
+    }
 }
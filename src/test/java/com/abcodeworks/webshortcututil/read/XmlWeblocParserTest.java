@@ -0,0 +1,191 @@
+/**
+ * Copyright 2014 by Andre Beckus
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+
+ *   http://www.apache.org/licenses/LICENSE-2.0
+
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.abcodeworks.webshortcututil.read;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+
+import com.dd.plist.NSDictionary;
+import com.dd.plist.PropertyListParser;
+
+public class XmlWeblocParserTest
+{
+    @Rule
+    public ExpectedException thrown= ExpectedException.none();
+    
+    static final String PROLOG = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n"
+            + "<!DOCTYPE plist PUBLIC \"-//Apple//DTD PLIST 1.0//EN\" \"http://www.apple.com/DTDs/PropertyList-1.0.dtd\">\n";
+    
+    static String parse(String contents)
+            throws IOException,
+                   ShortcutReadException {
+        return XmlWeblocParser.readResult(new ByteArrayInputStream(contents.getBytes("UTF-8"))).getUrlStringOrThrow();
+    }
+    
+    void testSamples(Path folder)
+            throws Exception {
+        DirectoryStream<Path> stream = Files.newDirectoryStream(folder, "*.webloc");
+        try {
+            for(Path file : stream) {
+                byte[] bytes = Files.readAllBytes(file);
+                String expected = ((NSDictionary)PropertyListParser.parse(bytes)).objectForKey("URL").toString();
+                assertTrue(XmlWeblocParser.isXml(ByteBuffer.wrap(bytes)));
+                assertEquals(file.toString(), expected, XmlWeblocParser.readResult(new ByteArrayInputStream(bytes)).getUrlString());
+            }
+        } finally {
+            stream.close();
+        }
+    }
+    
+    @Test
+    public void testSamples()
+                  throws Exception
+    {
+        String xmlPath = File.separator + "samples" + File.separator + "real" + File.separator + "webloc" + File.separator + "xml";
+        Path folder = Paths.get(getClass().getResource(xmlPath).toURI());
+        testSamples(folder);
+        testSamples(folder.resolve("percent_encoded"));
+    }
+    
+    @Test
+    public void testSkipsOtherKeys()
+                  throws IOException,
+                         ShortcutReadException
+    {
+        assertEquals("http://www.google.com/?a=1&b=2 <x>", parse(PROLOG
+                + "<plist version=\"1.0\">\n"
+                + "<dict>\n"
+                + "  <!-- A comment -->\n"
+                + "  <key>Nested</key>\n"
+                + "  <dict><key>URL</key><string>http://nested/</string></dict>\n"
+                + "  <key>Data</key>\n"
+                + "  <data>AAAA</data>\n"
+                + "  <key>Array</key>\n"
+                + "  <array><string>URL</string><string>http://array/</string></array>\n"
+                + "  <key>Empty</key>\n"
+                + "  <string/>\n"
+                + "  <key>URL</key>\n"
+                + "  <string>http://www.google.com/?a=1&amp;b=2<![CDATA[ <x>]]></string>\n"
+                + "</dict>\n"
+                + "</plist>\n"));
+    }
+    
+    @Test
+    public void testStopsAtUrl()
+                  throws IOException,
+                         ShortcutReadException
+    {
+        // Nothing after the URL is read, so a truncated file still works.
+        assertEquals("https://www.google.com/", parse(PROLOG
+                + "<plist version=\"1.0\">\n"
+                + "<dict>\n"
+                + "  <key>URL</key>\n"
+                + "  <string>https://www.google.com/</string>\n"
+                + "  <key>Truncat"));
+    }
+    
+    @Test
+    public void testNestedUrlOnly()
+                  throws IOException,
+                         ShortcutReadException
+    {
+        thrown.expect(ShortcutReadException.class);
+        thrown.expectMessage("URL not found");
+        parse("<plist><dict><key>Nested</key><dict><key>URL</key><string>http://nested/</string></dict></dict></plist>");
+    }
+    
+    @Test
+    public void testUrlNotString()
+                  throws IOException,
+                         ShortcutReadException
+    {
+        thrown.expect(ShortcutReadException.class);
+        thrown.expectMessage("Error reading URL");
+        parse("<plist><dict><key>URL</key><data>AAAA</data></dict></plist>");
+    }
+    
+    @Test
+    public void testNotPlist()
+                  throws IOException,
+                         ShortcutReadException
+    {
+        thrown.expect(ShortcutReadException.class);
+        thrown.expectMessage("Error reading URL");
+        parse("<dict><key>URL</key><string>https://www.google.com/</string></dict>");
+    }
+    
+    @Test
+    public void testRejectInternalEntity()
+                  throws IOException,
+                         ShortcutReadException
+    {
+        thrown.expect(ShortcutReadException.class);
+        thrown.expectMessage("Error reading URL");
+        parse("<?xml version=\"1.0\"?>\n"
+                + "<!DOCTYPE plist [<!ENTITY x \"http://expanded/\">]>\n"
+                + "<plist><dict><key>URL</key><string>&x;</string></dict></plist>");
+    }
+    
+    @Test
+    public void testRejectExternalEntity()
+                  throws IOException,
+                         ShortcutReadException
+    {
+        thrown.expect(ShortcutReadException.class);
+        thrown.expectMessage("Error reading URL");
+        parse("<?xml version=\"1.0\"?>\n"
+                + "<!DOCTYPE plist [<!ENTITY x SYSTEM \"file:///etc/passwd\">]>\n"
+                + "<plist><dict><key>URL</key><string>&x;</string></dict></plist>");
+    }
+    
+    @Test
+    public void testRejectUndeclaredEntity()
+                  throws IOException,
+                         ShortcutReadException
+    {
+        thrown.expect(ShortcutReadException.class);
+        thrown.expectMessage("Error reading URL");
+        parse(PROLOG + "<plist><dict><key>URL</key><string>&x;</string></dict></plist>");
+    }
+    
+    @Test
+    public void testIsXml()
+                  throws IOException
+    {
+        assertTrue(XmlWeblocParser.isXml(ByteBuffer.wrap("\uFEFF \r\n<plist>".getBytes("UTF-8"))));
+        assertFalse(XmlWeblocParser.isXml(ByteBuffer.wrap("bplist00".getBytes("UTF-8"))));
+        assertFalse(XmlWeblocParser.isXml(ByteBuffer.wrap("{ URL = \"x\"; }".getBytes("UTF-8"))));
+        assertFalse(XmlWeblocParser.isXml(ByteBuffer.wrap(new byte[0])));
+    }
+}
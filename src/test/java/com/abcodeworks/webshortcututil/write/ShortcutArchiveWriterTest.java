@@ -0,0 +1,113 @@
+/**
+ * Copyright 2014 by Andre Beckus
+ * 
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+
+ *   http://www.apache.org/licenses/LICENSE-2.0
+
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.abcodeworks.webshortcututil.write;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Map;
+
+import org.junit.Test;
+
+import com.abcodeworks.webshortcututil.read.ShortcutArchiveReader;
+import com.abcodeworks.webshortcututil.read.ShortcutContents;
+
+public class ShortcutArchiveWriterTest {
+    /* Records whether the stream has been closed. */
+    static class TrackingOutputStream extends ByteArrayOutputStream {
+        boolean closed = false;
+        
+        @Override
+        public void close()
+                throws IOException {
+            closed = true;
+            super.close();
+        }
+    }
+    
+    @Test
+    public void testWriteWithoutClosing()
+                  throws IOException,
+                         ShortcutWriteException
+    {
+        ShortcutWriter[] writers = { new UrlShortcutWriter(), new DesktopShortcutWriter(),
+                                     new WeblocBinaryShortcutWriter(), new WeblocXmlShortcutWriter() };
+        for(ShortcutWriter writer : writers) {
+            ByteArrayOutputStream expected = new ByteArrayOutputStream();
+            writer.write(expected, "Google", "https://www.google.com/");
+            
+            TrackingOutputStream stream = new TrackingOutputStream();
+            writer.writeWithoutClosing(stream, "Google", "https://www.google.com/");
+            assertFalse(stream.closed);
+            assertArrayEquals(expected.toByteArray(), stream.toByteArray());
+        }
+    }
+    
+    @Test
+    public void testWriteArchive()
+                  throws IOException,
+                         ShortcutWriteException
+    {
+        TrackingOutputStream stream = new TrackingOutputStream();
+        ShortcutArchiveWriter archive = new ShortcutArchiveWriter(stream, "Bookmarks");
+        assertEquals("Bookmarks/Google.url", archive.write(new UrlShortcutWriter(), "Google", "https://www.google.com/"));
+        assertEquals("Bookmarks/google (2).url", archive.write(new UrlShortcutWriter(), "google", "https://www.google.org/"));
+        assertEquals("Bookmarks/Google (3).url", archive.write(new UrlShortcutWriter(), "Google?", "https://www.google.de/"));
+        assertEquals("Bookmarks/Google.desktop", archive.write(new DesktopShortcutWriter(), "Google", "https://www.google.com/"));
+        assertEquals("Bookmarks/导航.中国.webloc", archive.write(new WeblocBinaryShortcutWriter(), "导航.中国", "http://导航.中国/"));
+        assertEquals("Bookmarks/导航.中国 (2).webloc", archive.write(new WeblocXmlShortcutWriter(), "导航.中国", "http://导航.中国/"));
+        assertFalse(stream.closed);
+        archive.close();
+        assertTrue(stream.closed);
+        
+        Map<String, ShortcutContents> contents = new ShortcutArchiveReader().read(new ByteArrayInputStream(stream.toByteArray()));
+        assertEquals(6, contents.size());
+        assertEquals("https://www.google.com/", contents.get("Bookmarks/Google.url").getUrlString());
+        assertEquals("https://www.google.org/", contents.get("Bookmarks/google (2).url").getUrlString());
+        assertEquals("google (2)", contents.get("Bookmarks/google (2).url").getName());
+        assertEquals("https://www.google.de/", contents.get("Bookmarks/Google (3).url").getUrlString());
+        assertEquals("https://www.google.com/", contents.get("Bookmarks/Google.desktop").getUrlString());
+        assertEquals("http://导航.中国/", contents.get("Bookmarks/导航.中国.webloc").getUrlString());
+        assertEquals("http://导航.中国/", contents.get("Bookmarks/导航.中国 (2).webloc").getUrlString());
+    }
+    
+    @Test
+    public void testUniqueFilenameLength()
+    {
+        ShortcutWriter writer = new UrlShortcutWriter();
+        StringBuilder name = new StringBuilder();
+        for(int i = 0; i < 200; i++) {
+            name.append('x');
+        }
+        
+        ShortcutArchiveWriter archive = new ShortcutArchiveWriter(new ByteArrayOutputStream());
+        String first = archive.createUniqueFilename(writer, name.toString());
+        assertEquals(writer.createFullFilename(name.toString()), first);
+        for(int n = 2; n < 20; n++) {
+            String filename = archive.createUniqueFilename(writer, name.toString());
+            assertTrue(filename, filename.endsWith(" (" + n + ").url"));
+            assertTrue(filename.length() <= writer.DEFAULT_MAX_FILENAME_LENGTH);
+        }
+    }
+}
@@ -0,0 +1,183 @@
+/**
+ * Copyright 2014 by Andre Beckus
+ * 
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+
+ *   http://www.apache.org/licenses/LICENSE-2.0
+
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.abcodeworks.webshortcututil.write;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+import org.junit.rules.TemporaryFolder;
+
+import com.abcodeworks.webshortcututil.read.ShortcutContents;
+import com.abcodeworks.webshortcututil.read.ShortcutReadException;
+import com.abcodeworks.webshortcututil.read.UrlShortcutReader;
+
+public class ShortcutBulkWriterTest {
+    @Rule
+    public TemporaryFolder tempFolder = new TemporaryFolder();
+    
+    @Rule
+    public ExpectedException thrown = ExpectedException.none();
+    
+    /* Collects the outcomes, keyed by URL. */
+    static class CollectingListener
+            implements ShortcutWriteListener {
+        final Map<String, Path> written = new ConcurrentHashMap<String, Path>();
+        final Map<String, ShortcutWriteException> failed = new ConcurrentHashMap<String, ShortcutWriteException>();
+        
+        public void shortcutWritten(ShortcutContents record, Path file) {
+            assertNull(written.put(record.getUrlString(), file));
+        }
+        
+        public void shortcutFailed(ShortcutContents record, ShortcutWriteException e) {
+            assertNull(failed.put(record.getUrlString(), e));
+        }
+    }
+    
+    static List<ShortcutContents> records(String... namesAndUrls) {
+        List<ShortcutContents> records = new ArrayList<ShortcutContents>();
+        for(int i = 0; i < namesAndUrls.length; i += 2) {
+            records.add(new ShortcutContents(namesAndUrls[i], namesAndUrls[i + 1]));
+        }
+        return records;
+    }
+    
+    @Test
+    public void testUniqueNames()
+                  throws IOException,
+                         ShortcutReadException
+    {
+        File folder = tempFolder.newFolder("bulk");
+        // Already there, and must not be overwritten
+        Files.write(new File(folder, "Yahoo!.url").toPath(), new byte[] { 'x' });
+        
+        List<ShortcutContents> records = records(
+                "Google", "https://www.google.com/",
+                "google", "https://www.google.org/",
+                "Google?", "https://www.google.de/",
+                "Yahoo!", "http://www.yahoo.com/",
+                "导航.中国", "http://导航.中国/");
+        CollectingListener listener = new CollectingListener();
+        new ShortcutBulkWriter(2).write(folder.toPath(), new UrlShortcutWriter(), records, listener);
+        
+        assertTrue(listener.failed.isEmpty());
+        assertEquals("Google.url", listener.written.get("https://www.google.com/").getFileName().toString());
+        assertEquals("google (2).url", listener.written.get("https://www.google.org/").getFileName().toString());
+        assertEquals("Google (3).url", listener.written.get("https://www.google.de/").getFileName().toString());
+        assertEquals("Yahoo! (2).url", listener.written.get("http://www.yahoo.com/").getFileName().toString());
+        assertEquals("导航.中国.url", listener.written.get("http://导航.中国/").getFileName().toString());
+        
+        for(ShortcutContents record : records) {
+            Path file = listener.written.get(record.getUrlString());
+            assertEquals(record.getUrlString(), new UrlShortcutReader().readUrlString(file.toFile()));
+        }
+        assertArrayEquals(new byte[] { 'x' }, Files.readAllBytes(new File(folder, "Yahoo!.url").toPath()));
+        assertEquals(6, folder.list().length);
+    }
+    
+    @Test
+    public void testManyRecords()
+                  throws IOException,
+                         ShortcutReadException
+    {
+        File folder = tempFolder.newFolder("many");
+        // Lots of records with the same name, on a shared executor with only a few in flight
+        List<ShortcutContents> records = new ArrayList<ShortcutContents>();
+        for(int i = 0; i < 200; i++) {
+            records.add(new ShortcutContents((i % 2 == 0) ? "Same" : "Same:", "http://www.example.com/" + i));
+        }
+        
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        CollectingListener listener = new CollectingListener();
+        try {
+            new ShortcutBulkWriter(executor, 3).write(folder.toPath(), new DesktopShortcutWriter(), records.iterator(), listener);
+        } finally {
+            executor.shutdown();
+        }
+        
+        assertTrue(listener.failed.isEmpty());
+        assertEquals(200, listener.written.size());
+        assertEquals(200, folder.list().length);
+        assertEquals("Same.desktop", listener.written.get("http://www.example.com/0").getFileName().toString());
+        assertEquals("Same (200).desktop", listener.written.get("http://www.example.com/199").getFileName().toString());
+    }
+    
+    @Test
+    public void testFailure()
+                  throws IOException
+    {
+        // Fails part way through writing one of the shortcuts
+        ShortcutWriter writer = new UrlShortcutWriter() {
+            @Override
+            public void write(OutputStream stream, String name, String url)
+                    throws ShortcutWriteException {
+                if(url.contains("fail")) {
+                    try {
+                        stream.write('x');
+                        stream.close();
+                    } catch (IOException e) {
+                        fail(e.toString());
+                    }
+                    throw new ShortcutWriteException();
+                }
+                super.write(stream, name, url);
+            }
+        };
+        
+        File folder = tempFolder.newFolder("failure");
+        CollectingListener listener = new CollectingListener();
+        new ShortcutBulkWriter(1).write(folder.toPath(), writer,
+                                        records("Good", "http://good/", "Bad", "http://fail/", "Good", "http://good2/"),
+                                        listener);
+        
+        assertEquals(2, listener.written.size());
+        assertEquals(1, listener.failed.size());
+        assertNotNull(listener.failed.get("http://fail/"));
+        List<String> names = Arrays.asList(folder.list());
+        assertEquals(2, names.size());
+        assertTrue(names.contains("Good.url"));
+        assertTrue(names.contains("Good (2).url"));
+    }
+    
+    @Test
+    public void testMissingDirectory()
+                  throws IOException
+    {
+        thrown.expect(IOException.class);
+        new ShortcutBulkWriter().write(new File(tempFolder.getRoot(), "missing").toPath(), new UrlShortcutWriter(),
+                                       records("Google", "https://www.google.com/"), new CollectingListener());
+    }
+}
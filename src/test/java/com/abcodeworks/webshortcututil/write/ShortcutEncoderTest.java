@@ -0,0 +1,158 @@
+/**
+ * Copyright 2014 by Andre Beckus
+ * 
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+
+ *   http://www.apache.org/licenses/LICENSE-2.0
+
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.abcodeworks.webshortcututil.write;
+
+import static org.junit.Assert.*;
+
+import java.io.BufferedWriter;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class ShortcutEncoderTest {
+    static final String[] PIECES = { "http://www.google.com/", "a", "?", "=", " ", "\r\n", "é", "ö", "ß", "中国", "导航",
+                                     "😀", "\uD800", "\uDC00", "\u0080", "߿", "ࠀ", "￿" };
+    
+    static String randomString(Random random) {
+        StringBuilder str = new StringBuilder();
+        int count = random.nextInt(8);
+        for(int i = 0; i < count; i++) {
+            str.append(PIECES[random.nextInt(PIECES.length)]);
+        }
+        return str.toString();
+    }
+    
+    /* The original UrlShortcutWriter implementation.  It used the platform charset, which only
+     * mattered for characters outside the BMP (they were not replaced by the pattern).  These are
+     * now always written as '?', which is what the original did on e.g. a Windows-1252 platform. */
+    static byte[] referenceUrl(String url)
+            throws IOException {
+        ByteArrayOutputStream stream = new ByteArrayOutputStream();
+        BufferedWriter writer = new BufferedWriter(new OutputStreamWriter(stream, "US-ASCII"));
+        if(Charset.forName("US-ASCII").newEncoder().canEncode(url)) {
+            writer.write("[InternetShortcut]\r\nURL=" + url + "\r\n");
+        } else {
+            String ascii_url = url.replaceAll("[\u0080-￿]", "?");
+            writer.write("[InternetShortcut]\r\nURL=" + ascii_url + "\r\n");
+            writer.write("[InternetShortcut.A]\r\nURL=" + ascii_url + "\r\n");
+            writer.write("[InternetShortcut.W]\r\nURL=" + new String(url.getBytes("UTF-7"), "US-ASCII") + "\r\n");
+        }
+        writer.close();
+        return stream.toByteArray();
+    }
+    
+    /* The original DesktopShortcutWriter implementation. */
+    static byte[] referenceDesktop(String name, String url)
+            throws IOException {
+        ByteArrayOutputStream stream = new ByteArrayOutputStream();
+        BufferedWriter writer = new BufferedWriter(new OutputStreamWriter(stream, "UTF-8"));
+        writer.write("[Desktop Entry]\nEncoding=UTF-8\nURL=" + url + "\nName=" + name + "\nType=Link\nURL=" + url + "\n");
+        writer.close();
+        return stream.toByteArray();
+    }
+    
+    @Test
+    public void testUtf8()
+                  throws IOException
+    {
+        Random random = new Random(42);
+        for(int i = 0; i < 2000; i++) {
+            String str = randomString(random);
+            byte[] expected = str.getBytes("UTF-8");
+            assertEquals(str, expected.length, ShortcutEncoder.utf8Length(str));
+            
+            byte[] bytes = new byte[expected.length + 2];
+            assertEquals(expected.length + 1, ShortcutEncoder.putUtf8(bytes, 1, str));
+            assertArrayEquals(str, expected, Arrays.copyOfRange(bytes, 1, expected.length + 1));
+        }
+    }
+    
+    @Test
+    public void testUtf7()
+                  throws IOException
+    {
+        // Characters which are written directly, in base64 or need special handling
+        String chars = "az09+-/.!~ \r\u00E9\u00F6\u4E2D\u56FD\uFFFF\uD83D\uDE00";
+        Random random = new Random(42);
+        for(int i = 0; i < 5000; i++) {
+            StringBuilder str = new StringBuilder();
+            int count = random.nextInt(12);
+            for(int j = 0; j < count; j++) {
+                str.append(chars.charAt(random.nextInt(chars.length())));
+            }
+            
+            byte[] expected = str.toString().getBytes("UTF-7");
+            assertEquals(str.toString(), expected.length, ShortcutEncoder.utf7Length(str.toString()));
+            
+            byte[] bytes = new byte[expected.length + 2];
+            assertEquals(expected.length + 1, ShortcutEncoder.putUtf7(bytes, 1, str.toString()));
+            assertArrayEquals(str.toString(), expected, Arrays.copyOfRange(bytes, 1, expected.length + 1));
+        }
+    }
+    
+    @Test
+    public void testSameAsOriginalWriters()
+                  throws IOException,
+                         ShortcutWriteException
+    {
+        ShortcutWriter urlWriter = new UrlShortcutWriter(),
+                       desktopWriter = new DesktopShortcutWriter();
+        Random random = new Random(42);
+        for(int i = 0; i < 2000; i++) {
+            String name = randomString(random),
+                   url = randomString(random);
+            
+            ByteArrayOutputStream stream = new ByteArrayOutputStream();
+            urlWriter.write(stream, name, url);
+            assertArrayEquals(url, referenceUrl(url), stream.toByteArray());
+            
+            stream = new ByteArrayOutputStream();
+            desktopWriter.write(stream, name, url);
+            assertArrayEquals(name + " " + url, referenceDesktop(name, url), stream.toByteArray());
+        }
+    }
+    
+    @Test
+    public void testLargeShortcut()
+                  throws IOException,
+                         ShortcutWriteException
+    {
+        // Larger than the buffer which is kept for reuse
+        StringBuilder url = new StringBuilder("http://www.google.com/");
+        while(url.length() <= ShortcutEncoder.MAX_CACHED_BUFFER_SIZE) {
+            url.append("中国");
+        }
+        
+        ByteArrayOutputStream stream = new ByteArrayOutputStream();
+        new UrlShortcutWriter().write(stream, "Large", url.toString());
+        assertArrayEquals(referenceUrl(url.toString()), stream.toByteArray());
+        
+        stream = new ByteArrayOutputStream();
+        new DesktopShortcutWriter().write(stream, "Large", url.toString());
+        assertArrayEquals(referenceDesktop("Large", url.toString()), stream.toByteArray());
+    }
+}
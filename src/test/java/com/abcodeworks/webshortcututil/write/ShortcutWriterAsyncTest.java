@@ -0,0 +1,205 @@
+/**
+ * Copyright 2014 by Andre Beckus
+ * 
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+
+ *   http://www.apache.org/licenses/LICENSE-2.0
+
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.abcodeworks.webshortcututil.write;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.abcodeworks.webshortcututil.read.ShortcutContents;
+import com.abcodeworks.webshortcututil.read.ShortcutReadException;
+import com.abcodeworks.webshortcututil.read.UrlShortcutReader;
+
+public class ShortcutWriterAsyncTest
+{
+    @Rule
+    public TemporaryFolder tempFolder = new TemporaryFolder();
+    
+    ExecutorService executor = Executors.newFixedThreadPool(4);
+    
+    @After
+    public void tearDown() {
+        executor.shutdownNow();
+    }
+    
+    /* Returns the exception a future failed with. */
+    static Throwable getFailure(CompletableFuture<Path> future)
+            throws InterruptedException {
+        try {
+            future.get();
+            fail("The write did not fail");
+            return null;
+        } catch (ExecutionException e) {
+            return e.getCause();
+        }
+    }
+    
+    @Test
+    public void testWriteAsync()
+            throws IOException,
+                   InterruptedException,
+                   ExecutionException,
+                   ShortcutReadException,
+                   ShortcutWriteException {
+        Path file = tempFolder.getRoot().toPath().resolve("Google.url");
+        assertEquals(file, new UrlShortcutWriter().writeAsync(file, "Google", "https://www.google.com/").get());
+        assertEquals("https://www.google.com/", new UrlShortcutReader().readUrlString(file.toFile()));
+        
+        Path other = tempFolder.getRoot().toPath().resolve("Google.desktop");
+        assertEquals(other, new DesktopShortcutWriter().writeAsync(other, "Google", "https://www.google.com/", executor).get());
+        ByteArrayOutputStream expected = new ByteArrayOutputStream();
+        new DesktopShortcutWriter().write(expected, "Google", "https://www.google.com/");
+        assertArrayEquals(expected.toByteArray(), Files.readAllBytes(other));
+    }
+    
+    @Test
+    public void testFileExists()
+            throws IOException,
+                   InterruptedException {
+        Path file = tempFolder.getRoot().toPath().resolve("Google.url");
+        Files.write(file, new byte[] { 'x' });
+        
+        Throwable e = getFailure(new UrlShortcutWriter().writeAsync(file, "Google", "https://www.google.com/", executor));
+        assertTrue(e.toString(), e instanceof FileAlreadyExistsException);
+        assertArrayEquals(new byte[] { 'x' }, Files.readAllBytes(file));
+    }
+    
+    @Test
+    public void testFailure()
+            throws InterruptedException {
+        ShortcutWriter writer = new UrlShortcutWriter() {
+            @Override
+            public void write(OutputStream stream, String name, String url)
+                    throws ShortcutWriteException {
+                throw new ShortcutWriteException();
+            }
+        };
+        Path file = tempFolder.getRoot().toPath().resolve("Bad.url");
+        
+        Throwable e = getFailure(writer.writeAsync(file, "Bad", "http://fail/", executor));
+        assertTrue(e.toString(), e instanceof ShortcutWriteException);
+        assertFalse(Files.exists(file));
+        
+        // The directory does not exist
+        Path missing = tempFolder.getRoot().toPath().resolve("missing").resolve("Good.url");
+        e = getFailure(new UrlShortcutWriter().writeAsync(missing, "Good", "http://good/", executor));
+        assertTrue(e.toString(), e instanceof ShortcutWriteException);
+    }
+    
+    @Test
+    public void testWriteAllAsync()
+            throws IOException,
+                   InterruptedException,
+                   ExecutionException,
+                   ShortcutReadException {
+        Path folder = tempFolder.newFolder("all").toPath();
+        // Already there, and must not be overwritten
+        Files.write(folder.resolve("Yahoo!.url"), new byte[] { 'x' });
+        
+        List<ShortcutContents> records = new ArrayList<ShortcutContents>();
+        for(int i = 0; i < 200; i++) {
+            records.add(new ShortcutContents((i % 2 == 0) ? "Same" : "same:", "http://www.example.com/" + i));
+        }
+        records.add(new ShortcutContents("Yahoo!", "http://www.yahoo.com/"));
+        
+        List<CompletableFuture<Path>> futures = new UrlShortcutWriter().writeAllAsync(folder, records, executor, 3);
+        assertEquals(201, futures.size());
+        
+        assertEquals("Same.url", futures.get(0).get().getFileName().toString());
+        assertEquals("same (2).url", futures.get(1).get().getFileName().toString());
+        assertEquals("same (200).url", futures.get(199).get().getFileName().toString());
+        for(int i = 0; i < 200; i++) {
+            assertEquals("http://www.example.com/" + i, new UrlShortcutReader().readUrlString(futures.get(i).get().toFile()));
+        }
+        
+        Throwable e = getFailure(futures.get(200));
+        assertTrue(e.toString(), e instanceof FileAlreadyExistsException);
+        assertArrayEquals(new byte[] { 'x' }, Files.readAllBytes(folder.resolve("Yahoo!.url")));
+        assertEquals(201, folder.toFile().list().length);
+    }
+    
+    @Test
+    public void testMaxOutstanding()
+            throws IOException,
+                   InterruptedException,
+                   ExecutionException {
+        Path folder = tempFolder.newFolder("outstanding").toPath();
+        
+        // An executor which only runs the encoding when the test says so
+        final BlockingQueue<Runnable> tasks = new LinkedBlockingQueue<Runnable>();
+        Executor queued = new Executor() {
+            public void execute(Runnable task) {
+                tasks.add(task);
+            }
+        };
+        List<ShortcutContents> records = new ArrayList<ShortcutContents>();
+        for(int i = 0; i < 10; i++) {
+            records.add(new ShortcutContents("Shortcut" + i, "http://www.example.com/" + i));
+        }
+        List<CompletableFuture<Path>> futures = new UrlShortcutWriter().writeAllAsync(folder, records, queued, 3);
+        
+        for(int i = 0; i < records.size(); i++) {
+            // Wait for a write to reach the executor, and give any others time to arrive.
+            // No more than 3 writes may be outstanding.
+            Runnable task = tasks.poll(10, TimeUnit.SECONDS);
+            assertNotNull(task);
+            Thread.sleep(20);
+            assertTrue("More than 3 writes outstanding", tasks.size() <= 2);
+            task.run();
+        }
+        
+        for(int i = 0; i < records.size(); i++) {
+            assertEquals("Shortcut" + i + ".url", futures.get(i).get().getFileName().toString());
+        }
+        assertEquals(10, folder.toFile().list().length);
+    }
+    
+    @Test
+    public void testBadArguments() {
+        List<ShortcutContents> none = new ArrayList<ShortcutContents>();
+        try {
+            new UrlShortcutWriter().writeAllAsync(tempFolder.getRoot().toPath(), none, executor, 0);
+            fail("maxOutstanding of 0 was accepted");
+        } catch (IllegalArgumentException e) {
+            // Expected
+        }
+    }
+}
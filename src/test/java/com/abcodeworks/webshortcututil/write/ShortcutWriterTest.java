@@ -22,8 +22,13 @@
 package com.abcodeworks.webshortcututil.write;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
 import java.io.FileNotFoundException;
 import java.io.IOException;
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+import java.util.regex.Pattern;
 
 import org.junit.Rule;
 import org.junit.Test;
@@ -96,6 +101,59 @@ public class ShortcutWriterTest {
         testCreateFilename(desktopWriter, " !#$&'()+,-.09;=@AZ[]_`az{}~中", "desktop", " !\"#$%&'()*+,-./09:;<=>?@AZ[\\]^_`az{|}~中");
     }
     
+    /* The original implementation, which used a regular expression. */
+    static String createBaseFilenameWithPattern(ShortcutWriter writer, String name, int maxLength) {
+        String cleanName = (name == null) ? "_" : Pattern.compile("[^ !#\\$&'\\(\\)+,\\-\\.,0-9;=\\@A-Z\\[\\]_`a-z\\{\\}~\u0080-\uFFFF]").matcher(name).replaceAll("");
+        if(cleanName.equals("")) {
+            cleanName = "_";
+        }
+        return cleanName.substring(0, Math.min(maxLength - writer.defaultExtension().length() - 1, cleanName.length()));
+    }
+    
+    @Test
+    public void testCreateFilenameSameAsPattern()
+    {
+        ShortcutWriter writer = new UrlShortcutWriter();
+        
+        // Every BMP character (including unpaired surrogates)
+        for(int c = 0; c <= 0xFFFF; c++) {
+            String name = "a" + (char)c + "b";
+            assertEquals(name, createBaseFilenameWithPattern(writer, name, 100), writer.createBaseFilename(name));
+        }
+        
+        // Random names, with truncation
+        String chars = "aZ9 !\"#$%&'()*+,-./:;<=>?@[\\]^_`{|}~\t\u0000\u007F\u0080\u00E9\u4E2D\uFFFF";
+        Random random = new Random(42);
+        for(int i = 0; i < 10000; i++) {
+            StringBuilder name = new StringBuilder();
+            int length = random.nextInt(20);
+            for(int j = 0; j < length; j++) {
+                name.append(chars.charAt(random.nextInt(chars.length())));
+            }
+            int maxLength = 5 + random.nextInt(20);
+            assertEquals(name.toString(), createBaseFilenameWithPattern(writer, name.toString(), maxLength),
+                         writer.createBaseFilename(name.toString(), maxLength));
+        }
+    }
+    
+    @Test
+    public void testCreateFilenameSurrogatePairs()
+    {
+        ShortcutWriter desktopWriter = new DesktopShortcutWriter();
+        
+        // Characters outside the BMP are kept
+        testCreateFilename(desktopWriter, "a\uD83D\uDE00b", "desktop", "a\uD83D\uDE00b");
+        
+        // ... but not split when truncating (the base name can be 3 characters long here)
+        testCreateFilename(desktopWriter, "ab", "desktop", "ab\uD83D\uDE00cd", 11);
+        testCreateFilename(desktopWriter, "abc", "desktop", "abc\uD83D\uDE00", 11);
+        testCreateFilename(desktopWriter, "ab", "desktop", "a?b\uD83D\uDE00", 11);
+        testCreateFilename(desktopWriter, "ab", "desktop", "ab\uD83D?\uDE00", 11);
+        testCreateFilename(desktopWriter, "a\uD83D\uDE00", "desktop", "a\uD83D?\uDE00b", 11);
+        testCreateFilename(desktopWriter, "\uD83D\uDE00", "desktop", "\uD83D\uDE00", 10);
+        testCreateFilename(desktopWriter, "_", "desktop", "\uD83D\uDE00", 9);
+    }
+    
     @Test
     public void testCreateBaseFilenameTooShort()
             throws FileNotFoundException,
@@ -115,4 +173,18 @@ public class ShortcutWriterTest {
         thrown.expectMessage("maxLength must be greater than or equal to 9");
         (new DesktopShortcutWriter()).createFullFilename("file", 8);
     }
+    
+    @Test
+    public void testReserveNumberedFilename()
+    {
+        ShortcutWriter writer = new UrlShortcutWriter();
+        Set<String> used = new HashSet<String>();
+        assertEquals(1, writer.reserveNumberedFilename("Google", 1, used));
+        assertEquals(2, writer.reserveNumberedFilename("google", 1, used));
+        assertEquals(3, writer.reserveNumberedFilename("Google?", 1, used));
+        assertEquals(5, writer.reserveNumberedFilename("Google", 5, used));
+        assertEquals(4, writer.reserveNumberedFilename("GOOGLE", 2, used));
+        assertEquals(6, writer.reserveNumberedFilename("Google", 4, used));
+        assertTrue(used.contains("google (6).url"));
+    }
 }
@@ -21,6 +21,7 @@
 
 package com.abcodeworks.webshortcututil.write;
 
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.IOException;
@@ -31,12 +32,18 @@ import org.junit.Test;
 import org.junit.rules.TemporaryFolder;
 
 import com.abcodeworks.webshortcututil.read.ShortcutReadException;
+import com.abcodeworks.webshortcututil.read.WeblocShortcutReader;
 import com.abcodeworks.webshortcututil.write.FileAlreadyExistsException;
 import com.abcodeworks.webshortcututil.write.ShortcutWriteException;
 import com.abcodeworks.webshortcututil.write.ShortcutWriter;
 import com.abcodeworks.webshortcututil.write.WeblocBinaryShortcutWriter;
 
+import com.dd.plist.NSDictionary;
+import com.dd.plist.PropertyListParser;
+
+import static com.abcodeworks.webshortcututil.ShortcutTestHelper.readTestBytes;
 import static com.abcodeworks.webshortcututil.ShortcutTestHelper.testWriteShortcut;
+import static org.junit.Assert.*;
 
 public class WeblocBinaryShortcutWriterTest {
     ShortcutWriter writer = null;
@@ -73,4 +80,48 @@ public class WeblocBinaryShortcutWriterTest {
         File folder = tempFolder.newFolder("weblocbin_nonascii");
         testWriteShortcut(writer, folder, "导航.中国", "http://导航.中国/");
     }
+    
+    byte[] write(String url)
+            throws ShortcutWriteException {
+        ByteArrayOutputStream stream = new ByteArrayOutputStream();
+        writer.write(stream, "Name", url);
+        return stream.toByteArray();
+    }
+    
+    @Test
+    public void testSameAsOsx()
+                  throws IOException,
+                         ShortcutReadException,
+                         ShortcutWriteException
+    {
+        // These were written by OSX
+        String path = "samples" + File.separator + "real" + File.separator + "webloc" + File.separator + "binary";
+        String[] filenames = { "Google.webloc", "Yahoo!.webloc", "导航.中国.webloc", "sverige - Sök på Google.webloc",
+                               "percent_encoded" + File.separator + "导航.中国.webloc" };
+        for(String filename : filenames) {
+            byte[] expected = readTestBytes(path, filename);
+            String url = new WeblocShortcutReader().readUrlString(expected, 0, expected.length);
+            assertArrayEquals(filename, expected, write(url));
+        }
+    }
+    
+    @Test
+    public void testReadByPlistLibrary()
+                  throws Exception
+    {
+        // Lengths which need the different sizes of integers and offsets
+        int[] lengths = { 0, 1, 14, 15, 200, 255, 256, 300, 65535, 65536, 70000 };
+        for(int length : lengths) {
+            for(char c : new char[] { 'a', '中' }) {
+                StringBuilder url = new StringBuilder();
+                for(int i = 0; i < length; i++) {
+                    url.append(c);
+                }
+                
+                NSDictionary root = (NSDictionary)PropertyListParser.parse(write(url.toString()));
+                assertEquals(1, root.count());
+                assertEquals(url.toString(), root.objectForKey("URL").toString());
+            }
+        }
+    }
 }
@@ -21,6 +21,7 @@
 
 package com.abcodeworks.webshortcututil.write;
 
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.IOException;
@@ -36,7 +37,11 @@ import com.abcodeworks.webshortcututil.write.ShortcutWriteException;
 import com.abcodeworks.webshortcututil.write.ShortcutWriter;
 import com.abcodeworks.webshortcututil.write.WeblocXmlShortcutWriter;
 
+import com.dd.plist.NSDictionary;
+import com.dd.plist.PropertyListParser;
+
 import static com.abcodeworks.webshortcututil.ShortcutTestHelper.testWriteShortcut;
+import static org.junit.Assert.*;
 
 public class WeblocXmlShortcutWriterTest {
     ShortcutWriter writer = null;
@@ -73,4 +78,26 @@ public class WeblocXmlShortcutWriterTest {
         File folder = tempFolder.newFolder("weblocxml_nonascii");
         testWriteShortcut(writer, folder, "导航.中国", "http://导航.中国/");
     }
+    
+    @Test
+    public void testSameAsPlistLibrary()
+                  throws Exception
+    {
+        String[] urls = { "", "http://www.google.com", "http://导航.中国/", "http://a.com/?a=1&b=<2>",
+                          "http://a.com/]]>]]]>]]", "😀" };
+        for(String url : urls) {
+            ByteArrayOutputStream stream = new ByteArrayOutputStream();
+            writer.write(stream, "Name", url);
+            byte[] bytes = stream.toByteArray();
+            
+            // The library uses the platform line separator
+            NSDictionary root = new NSDictionary();
+            root.put("URL", url);
+            String expected = root.toXMLPropertyList().replace(System.getProperty("line.separator"), "\n");
+            assertEquals(url, expected, new String(bytes, "UTF-8"));
+            
+            root = (NSDictionary)PropertyListParser.parse(bytes);
+            assertEquals(url, root.objectForKey("URL").toString());
+        }
+    }
 }